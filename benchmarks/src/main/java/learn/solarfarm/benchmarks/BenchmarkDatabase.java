@@ -0,0 +1,67 @@
+package learn.solarfarm.benchmarks;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import learn.solarfarm.models.Material;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * An in-process H2 database (MySQL mode) seeded with a predictable farm, so
+ * benchmark numbers don't depend on a MySQL server or its contents.
+ */
+public class BenchmarkDatabase {
+    public static final int ROWS_PER_SECTION = 50;
+    public static final int COLUMNS_PER_ROW = 20;
+
+    private BenchmarkDatabase() {
+    }
+
+    public static String newUrl() {
+        return "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+    }
+
+    public static HikariDataSource create(int sections) throws SQLException {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(newUrl());
+        config.setUsername("sa");
+        HikariDataSource dataSource = new HikariDataSource(config);
+
+        load(dataSource, sections);
+        return dataSource;
+    }
+
+    public static void load(javax.sql.DataSource dataSource, int sections) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            ScriptUtils.executeSqlScript(connection, new ClassPathResource("schema-h2.sql"));
+        }
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        Material[] materials = Material.values();
+        for (int section = 0; section < sections; section++) {
+            List<Object[]> batchArgs = new ArrayList<>(ROWS_PER_SECTION * COLUMNS_PER_ROW);
+            for (int row = 1; row <= ROWS_PER_SECTION; row++) {
+                for (int column = 1; column <= COLUMNS_PER_ROW; column++) {
+                    batchArgs.add(new Object[]{sectionName(section), row, column,
+                            2000 + (row + column) % 20,
+                            materials[(row * column) % materials.length].getValue(),
+                            column % 2 == 0});
+                }
+            }
+            jdbcTemplate.batchUpdate("insert into solar_panel " +
+                    "(section, `row`, `column`, year_installed, material_id, is_tracking) " +
+                    "values (?, ?, ?, ?, ?, ?);", batchArgs);
+        }
+    }
+
+    public static String sectionName(int section) {
+        return "Section " + section;
+    }
+}
@@ -0,0 +1,98 @@
+package learn.solarfarm.benchmarks;
+
+import learn.solarfarm.App;
+import learn.solarfarm.controllers.SolarPanelImportReport;
+import learn.solarfarm.controllers.SolarPanelImporter;
+import learn.solarfarm.data.DataAccessException;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * POST /solarpanels/import's work without HTTP: parsing a CSV upload,
+ * validating it a chunk at a time, and inserting it. Each operation is one
+ * row, so the score is rows per second. Every invocation imports a new
+ * section, so every row is a real insert.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImportBenchmark {
+    private static final int ROWS = 10_000;
+    private static final int COLUMNS = 100;
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType(SolarPanelImporter.TEXT_CSV_VALUE);
+
+    // H2 answers jdbc-template's `(section, row, column) in (...)` duplicate
+    // check with a table scan, where MySQL uses the unique key, so its score
+    // falls as the table grows. `memory` checks keys in memory and shows the
+    // rest of the pipeline.
+    @Param({"jdbc-template", "memory"})
+    public String profile;
+
+    @Param({"1000"})
+    public int chunkSize;
+
+    private ConfigurableApplicationContext context;
+    private SolarPanelImporter importer;
+    private int next;
+    private byte[] csv;
+
+    @Setup
+    public void setup() throws SQLException {
+        // The memory repository reads the table at startup, so it's loaded first.
+        String url = BenchmarkDatabase.newUrl();
+        BenchmarkDatabase.load(new DriverManagerDataSource(url, "sa", ""), 1);
+        context = new SpringApplicationBuilder(App.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=" + url,
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.profiles.active=" + profile,
+                        "--solarfarm.stats.reconcile.enabled=false",
+                        "--solarfarm.import.chunk-size=" + chunkSize,
+                        "--logging.level.root=warn");
+        importer = context.getBean(SolarPanelImporter.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void nextUpload() {
+        StringBuilder upload = new StringBuilder("section,row,column,yearInstalled,material,tracking\n");
+        String section = "Import " + next++;
+        for (int i = 0; i < ROWS; i++) {
+            upload.append(section).append(',')
+                    .append(i / COLUMNS + 1).append(',')
+                    .append(i % COLUMNS + 1).append(',')
+                    .append(2000 + i % 20).append(',')
+                    .append(i % 2 == 0 ? "poly-Si" : "CdTe").append(',')
+                    .append(i % 3 == 0).append('\n');
+        }
+        csv = upload.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public SolarPanelImportReport importCsv() throws IOException, DataAccessException {
+        SolarPanelImportReport report = importer.importAll(new ByteArrayInputStream(csv), TEXT_CSV);
+        if (report.getImported() != ROWS) {
+            throw new IllegalStateException("Imported " + report.getImported() + " of " + ROWS + " rows.");
+        }
+        return report;
+    }
+}
@@ -0,0 +1,101 @@
+package learn.solarfarm.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import learn.solarfarm.controllers.CompactSolarPanels;
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A GET /solarpanels response body, with the ObjectMapper configuration
+ * Spring MVC uses. Each operation is one panel, so scores are ns per panel.
+ *
+ * `bean` is Jackson's reflective bean (de)serializer, as before
+ * SolarPanelSerializer, so the `key` is written too. `custom` is
+ * SolarPanelSerializer and SolarPanelDeserializer, and `compact` is
+ * `?format=compact`, which is never read, so its deserializeList does nothing.
+ * `cbor` and `smile` are the custom (de)serializers writing
+ * `Accept: application/cbor` and `application/x-jackson-smile` bodies.
+ * Bytes per panel are printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+    private static final int PANELS = 10_000;
+
+    @Param({"bean", "custom", "compact", "cbor", "smile"})
+    public String encoding;
+
+    private ObjectMapper mapper;
+    private Object body;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() throws IOException {
+        switch (encoding) {
+            case "bean":
+                mapper = Jackson2ObjectMapperBuilder.json().annotationIntrospector(new BeanIntrospector()).build();
+                break;
+            case "cbor":
+                mapper = Jackson2ObjectMapperBuilder.cbor().build();
+                break;
+            case "smile":
+                mapper = Jackson2ObjectMapperBuilder.smile().build();
+                break;
+            default:
+                mapper = Jackson2ObjectMapperBuilder.json().build();
+        }
+
+        Material[] materials = Material.values();
+        List<SolarPanel> solarPanels = new ArrayList<>(PANELS);
+        for (int i = 0; i < PANELS; i++) {
+            solarPanels.add(new SolarPanel(i + 1, "Section " + i / 1000, i / 20 % 50 + 1, i % 20 + 1,
+                    2000 + i % 20, materials[i % materials.length], i % 2 == 0));
+        }
+        body = "compact".equals(encoding) ? new CompactSolarPanels(solarPanels) : solarPanels;
+        bytes = mapper.writeValueAsBytes(body);
+
+        System.out.printf("%n%s: %.1f bytes per panel%n", encoding, (double) bytes.length / PANELS);
+    }
+
+    // Ignores SolarPanel's @JsonSerialize and @JsonDeserialize.
+    private static class BeanIntrospector extends JacksonAnnotationIntrospector {
+        @Override
+        public Object findSerializer(Annotated annotated) {
+            return annotated.getRawType() == SolarPanel.class ? null : super.findSerializer(annotated);
+        }
+
+        @Override
+        public Object findDeserializer(Annotated annotated) {
+            return annotated.getRawType() == SolarPanel.class ? null : super.findDeserializer(annotated);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PANELS)
+    public byte[] serializeList() throws IOException {
+        return mapper.writeValueAsBytes(body);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PANELS)
+    public SolarPanel[] deserializeList() throws IOException {
+        if ("compact".equals(encoding)) {
+            // There's no compact request body to read.
+            return null;
+        }
+        return mapper.readValue(bytes, SolarPanel[].class);
+    }
+}
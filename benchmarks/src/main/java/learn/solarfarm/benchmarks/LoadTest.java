@@ -0,0 +1,194 @@
+package learn.solarfarm.benchmarks;
+
+import learn.solarfarm.App;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop HTTP load against the app running in this JVM, for comparing
+ * the default thread pools with `solarfarm.virtual-threads.enabled=true`.
+ * Each simulated user fetches a random solar panel by key, waits for the
+ * response, and fetches the next.
+ *
+ * H2 answers in microseconds, so every borrowed connection is held for
+ * `latency-ms` first, standing in for a real database's round trip.
+ *
+ * Arguments: `platform|virtual concurrency seconds latency-ms`, then any
+ * `--property=value` for the app. The virtual mode needs Java 21 or later.
+ */
+public class LoadTest {
+    private static final int SECTIONS = 5;
+    private static final int WARMUP_SECONDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.err.println("Usage: LoadTest platform|virtual <concurrency> <seconds> <latency-ms> [--property=value ...]");
+            System.exit(1);
+        }
+        boolean virtual = "virtual".equals(args[0]);
+        int concurrency = Integer.parseInt(args[1]);
+        int seconds = Integer.parseInt(args[2]);
+        long latencyMillis = Long.parseLong(args[3]);
+
+        List<String> appArgs = new ArrayList<>(List.of(
+                "--spring.datasource.url=" + BenchmarkDatabase.newUrl(),
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.profiles.active=jdbc-template",
+                "--server.port=0",
+                "--solarfarm.stats.reconcile.enabled=false",
+                // Compare how each mode waits, not how soon it turns requests away.
+                "--solarfarm.db-executor.queue-capacity=" + concurrency,
+                "--solarfarm.virtual-threads.enabled=" + virtual,
+                "--logging.level.root=warn"));
+        appArgs.addAll(Arrays.asList(args).subList(4, args.length));
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(App.class)
+                .initializers(ctx -> ctx.getBeanFactory().addBeanPostProcessor(new SlowConnections(latencyMillis)))
+                .run(appArgs.toArray(new String[0]));
+        try {
+            BenchmarkDatabase.load(context.getBean(DataSource.class), SECTIONS);
+            String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port")
+                    + "/solarpanels/";
+
+            System.out.printf("mode=%s concurrency=%d seconds=%d latency-ms=%d java=%s%n",
+                    args[0], concurrency, seconds, latencyMillis, Runtime.version());
+            run(baseUrl, concurrency, WARMUP_SECONDS);
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            threads.resetPeakThreadCount();
+            Stats stats = run(baseUrl, concurrency, seconds);
+            stats.print(seconds, threads.getPeakThreadCount());
+        } finally {
+            context.close();
+        }
+    }
+
+    private static Stats run(String baseUrl, int concurrency, int seconds) {
+        // A few client threads, so the peak thread count is mostly the server's.
+        ExecutorService clientThreads = Executors.newFixedThreadPool(4);
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(clientThreads)
+                .build();
+        Stats stats = new Stats();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        CompletableFuture<?>[] users = new CompletableFuture<?>[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            users[i] = next(client, baseUrl, deadline, stats);
+        }
+        CompletableFuture.allOf(users).join();
+        clientThreads.shutdown();
+        return stats;
+    }
+
+    private static CompletableFuture<Void> next(HttpClient client, String baseUrl, long deadline, Stats stats) {
+        if (System.nanoTime() >= deadline) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String section = URLEncoder.encode(BenchmarkDatabase.sectionName(random.nextInt(SECTIONS)),
+                StandardCharsets.UTF_8).replace("+", "%20");
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + section + "/"
+                        + (random.nextInt(BenchmarkDatabase.ROWS_PER_SECTION) + 1) + "/"
+                        + (random.nextInt(BenchmarkDatabase.COLUMNS_PER_ROW) + 1)))
+                .timeout(Duration.ofSeconds(30))
+                .build();
+
+        long start = System.nanoTime();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, ex) -> {
+                    stats.record(response == null ? -1 : response.statusCode(), System.nanoTime() - start);
+                    return null;
+                })
+                .thenCompose(ignored -> next(client, baseUrl, deadline, stats));
+    }
+
+    private static class Stats {
+        private final ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        private final AtomicLong busy = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+
+        void record(int status, long nanos) {
+            if (status == 200) {
+                latencies.add(nanos);
+            } else if (status == 503) {
+                busy.incrementAndGet();
+            } else {
+                errors.incrementAndGet();
+            }
+        }
+
+        void print(int seconds, int peakThreads) {
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+            System.out.printf("ok=%d (%.0f/s) 503=%d errors=%d%n",
+                    sorted.length, (double) sorted.length / seconds, busy.get(), errors.get());
+            if (sorted.length > 0) {
+                System.out.printf("latency ms: p50=%.1f p99=%.1f max=%.1f%n",
+                        percentile(sorted, 0.50), percentile(sorted, 0.99), sorted[sorted.length - 1] / 1e6);
+            }
+            // Platform threads only; virtual threads aren't counted.
+            System.out.printf("peak platform threads (client and server): %d%n", peakThreads);
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            return sorted[(int) Math.min(sorted.length - 1, Math.round(p * (sorted.length - 1)))] / 1e6;
+        }
+    }
+
+    private static class SlowConnections implements BeanPostProcessor {
+        private final long latencyMillis;
+
+        SlowConnections(long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+            if (!(bean instanceof DataSource) || latencyMillis <= 0) {
+                return bean;
+            }
+            return new DelegatingDataSource((DataSource) bean) {
+                @Override
+                public Connection getConnection() throws SQLException {
+                    // Holds the pooled connection for the round trip, like a real query would.
+                    Connection connection = super.getConnection();
+                    try {
+                        Thread.sleep(latencyMillis);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return connection;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package learn.solarfarm.benchmarks;
+
+import com.zaxxer.hikari.HikariDataSource;
+import learn.solarfarm.data.DataAccessException;
+import learn.solarfarm.data.SolarPanelJdbcRepository;
+import learn.solarfarm.data.SolarPanelJdbcTemplateRepository;
+import learn.solarfarm.data.SolarPanelMemoryRepository;
+import learn.solarfarm.data.SolarPanelRepository;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The read paths of the repository implementations over the same pooled
+ * H2 database. `memory` loads the whole table once in setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+    private static final int SECTIONS = 20;
+
+    @Param({"jdbc", "jdbc-template", "memory"})
+    public String profile;
+
+    private HikariDataSource dataSource;
+    private SolarPanelRepository repository;
+
+    @Setup
+    public void setup() throws SQLException, DataAccessException {
+        dataSource = BenchmarkDatabase.create(SECTIONS);
+        if (profile.equals("jdbc")) {
+            repository = new SolarPanelJdbcRepository(dataSource);
+        } else if (profile.equals("memory")) {
+            SolarPanelMemoryRepository memory = new SolarPanelMemoryRepository(new JdbcTemplate(dataSource));
+            memory.reload();
+            repository = memory;
+        } else {
+            repository = new SolarPanelJdbcTemplateRepository(new JdbcTemplate(dataSource));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<SolarPanel> findAll() throws DataAccessException {
+        return repository.findAll();
+    }
+
+    @Benchmark
+    public List<SolarPanel> findBySection() throws DataAccessException {
+        int section = ThreadLocalRandom.current().nextInt(SECTIONS);
+        return repository.findBySection(BenchmarkDatabase.sectionName(section));
+    }
+
+    // A 10 x 10 rectangle somewhere in a section.
+    @Benchmark
+    public List<SolarPanel> findByGridRange() throws DataAccessException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int minRow = random.nextInt(BenchmarkDatabase.ROWS_PER_SECTION - 9) + 1;
+        int minColumn = random.nextInt(BenchmarkDatabase.COLUMNS_PER_ROW - 9) + 1;
+        return repository.findByGridRange(BenchmarkDatabase.sectionName(random.nextInt(SECTIONS)),
+                minRow, minRow + 9, minColumn, minColumn + 9);
+    }
+
+    @Benchmark
+    public SolarPanel findByKey() throws DataAccessException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        SolarPanelKey key = new SolarPanelKey(
+                BenchmarkDatabase.sectionName(random.nextInt(SECTIONS)),
+                random.nextInt(BenchmarkDatabase.ROWS_PER_SECTION) + 1,
+                random.nextInt(BenchmarkDatabase.COLUMNS_PER_ROW) + 1);
+        return repository.findByKey(key);
+    }
+}
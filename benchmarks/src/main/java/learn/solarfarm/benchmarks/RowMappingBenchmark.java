@@ -0,0 +1,105 @@
+package learn.solarfarm.benchmarks;
+
+import com.zaxxer.hikari.HikariDataSource;
+import learn.solarfarm.data.SolarPanelMapper;
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning one result set row into a SolarPanel. The query is re-run
+ * for every invocation, so compare mappers against each other rather than
+ * reading the absolute numbers. Run with `-prof gc` to see bytes allocated per row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowMappingBenchmark {
+    private static final int SECTIONS = 10;
+    private static final String SQL = "select solar_panel_id, section, `row`, `column`, " +
+            "year_installed, material_id, is_tracking from solar_panel;";
+
+    private HikariDataSource dataSource;
+    private Connection connection;
+    private final SolarPanelMapper mapper = SolarPanelMapper.INSTANCE;
+
+    @Setup
+    public void setup() throws SQLException {
+        dataSource = BenchmarkDatabase.create(SECTIONS);
+        connection = dataSource.getConnection();
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+        dataSource.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SECTIONS * BenchmarkDatabase.ROWS_PER_SECTION * BenchmarkDatabase.COLUMNS_PER_ROW)
+    public void solarPanelMapper(Blackhole blackhole) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(SQL)) {
+            int i = 0;
+            while (rs.next()) {
+                SolarPanel sp = mapper.mapRow(rs, i++);
+                blackhole.consume(sp);
+            }
+        }
+    }
+
+    // How rows were mapped before SolarPanelMapper went positional: columns by
+    // name, and each of setSection/setRow/setColumn allocates a SolarPanelKey.
+    @Benchmark
+    @OperationsPerInvocation(SECTIONS * BenchmarkDatabase.ROWS_PER_SECTION * BenchmarkDatabase.COLUMNS_PER_ROW)
+    public void nameBasedSetters(Blackhole blackhole) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(SQL)) {
+            while (rs.next()) {
+                SolarPanel sp = new SolarPanel();
+                sp.setId(rs.getInt("solar_panel_id"));
+                sp.setSection(rs.getString("section"));
+                sp.setRow(rs.getInt("row"));
+                sp.setColumn(rs.getInt("column"));
+                sp.setYearInstalled(rs.getInt("year_installed"));
+                sp.setMaterial(findByValueLinear(rs.getInt("material_id")));
+                sp.setTracking(rs.getBoolean("is_tracking"));
+                blackhole.consume(sp);
+            }
+        }
+    }
+
+    // The baseline: reading the same columns without building a SolarPanel.
+    @Benchmark
+    @OperationsPerInvocation(SECTIONS * BenchmarkDatabase.ROWS_PER_SECTION * BenchmarkDatabase.COLUMNS_PER_ROW)
+    public void readColumnsOnly(Blackhole blackhole) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(SQL)) {
+            while (rs.next()) {
+                blackhole.consume(rs.getInt(1));
+                blackhole.consume(rs.getString(2));
+                blackhole.consume(rs.getInt(3));
+                blackhole.consume(rs.getInt(4));
+                blackhole.consume(rs.getInt(5));
+                blackhole.consume(rs.getInt(6));
+                blackhole.consume(rs.getBoolean(7));
+            }
+        }
+    }
+
+    private static Material findByValueLinear(int value) {
+        for (Material material : Material.values()) {
+            if (material.getValue() == value) {
+                return material;
+            }
+        }
+        throw new RuntimeException(String.format("No Material with value: %s.", value));
+    }
+}
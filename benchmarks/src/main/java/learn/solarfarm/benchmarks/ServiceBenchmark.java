@@ -0,0 +1,69 @@
+package learn.solarfarm.benchmarks;
+
+import learn.solarfarm.App;
+import learn.solarfarm.data.DataAccessException;
+import learn.solarfarm.domain.Result;
+import learn.solarfarm.domain.SolarPanelService;
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SolarPanelService.create as wired by Spring, so validation runs through the
+ * real Validator. `createInvalid` stops at validation and shows its share of the cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceBenchmark {
+    private static final int SECTIONS = 5;
+    private static final int MAX = 250;
+
+    private ConfigurableApplicationContext context;
+    private SolarPanelService service;
+    private int next;
+
+    @Setup
+    public void setup() throws SQLException {
+        // Command line arguments outrank the application.properties packaged with the app.
+        context = new SpringApplicationBuilder(App.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=" + BenchmarkDatabase.newUrl(),
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.profiles.active=jdbc-template",
+                        "--logging.level.root=warn");
+        BenchmarkDatabase.load(context.getBean(DataSource.class), SECTIONS);
+        service = context.getBean(SolarPanelService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Result<SolarPanel> create() throws DataAccessException {
+        // Walk a fresh section a cell at a time so every key is unique.
+        int n = next++;
+        SolarPanel solarPanel = new SolarPanel(0, "Benchmark " + n / (MAX * MAX),
+                n / MAX % MAX + 1, n % MAX + 1, 2020, Material.MONO_SI, true);
+        return service.create(solarPanel);
+    }
+
+    @Benchmark
+    public Result<SolarPanel> createInvalid() throws DataAccessException {
+        SolarPanel solarPanel = new SolarPanel(0, "", MAX + 1, 1, 2020, Material.MONO_SI, true);
+        return service.create(solarPanel);
+    }
+}
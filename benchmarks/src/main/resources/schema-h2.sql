@@ -0,0 +1,30 @@
+-- database/schema-data.sql translated for H2 in MySQL mode.
+
+create table material (
+    material_id int primary key auto_increment,
+    `name` varchar(100) not null unique,
+    abbreviation varchar(10) not null unique
+);
+
+create table solar_panel (
+    solar_panel_id int primary key auto_increment,
+    section varchar(50) not null,
+    `row` int not null,
+    `column` int not null,
+    year_installed int not null,
+    material_id int not null,
+    is_tracking bit not null,
+    constraint fk_solar_panel_material_id
+        foreign key (material_id)
+        references material(material_id),
+    constraint uq_solar_panel_section_row_column
+        unique (section, `row`, `column`)
+);
+
+insert into material (material_id, `name`, abbreviation)
+    values
+    (1, 'Multicrystalline Silicon', 'poly-Si'),
+    (2, 'Monocrystalline Silicon', 'mono-Si'),
+    (3, 'Amorphous Silicon', 'a-Si'),
+    (4, 'Cadmium Telluride', 'CdTe'),
+    (5, 'Copper Indium Gallium Selenide', 'CIGS');
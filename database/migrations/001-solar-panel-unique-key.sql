@@ -0,0 +1,14 @@
+-- Enforces the solar panel natural key in the database so writes no longer
+-- need to read before they insert or update.
+
+use solar_farm;
+
+-- Any rows returned here must be fixed before the constraint can be added.
+select section, `row`, `column`, count(*)
+from solar_panel
+group by section, `row`, `column`
+having count(*) > 1;
+
+alter table solar_panel
+    add constraint uq_solar_panel_section_row_column
+        unique (section, `row`, `column`);
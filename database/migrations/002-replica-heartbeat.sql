@@ -0,0 +1,12 @@
+-- One row per app instance in the `replicas` profile, which writes the time to
+-- its row on the primary and reads it back from each replica, to measure how
+-- far behind each replica is. Each instance keeps to its own row, so clock
+-- skew between instances can't make a replica look further along than it is.
+-- Run it on the primary; replication carries it to the replicas.
+
+use solar_farm;
+
+create table replica_heartbeat (
+    instance_id char(36) primary key,
+    beat bigint not null
+);
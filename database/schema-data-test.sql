@@ -20,7 +20,15 @@ create table solar_panel (
     is_tracking bit not null,
     constraint fk_solar_panel_material_id
         foreign key (material_id)
-        references material(material_id)
+        references material(material_id),
+    constraint uq_solar_panel_section_row_column
+        unique (section, `row`, `column`)
+);
+
+-- The `replicas` profile's heartbeats, one row per app instance, for measuring replica lag.
+create table replica_heartbeat (
+    instance_id char(36) primary key,
+    beat bigint not null
 );
 
 insert into material (material_id, `name`, abbreviation)
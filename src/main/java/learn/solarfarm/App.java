@@ -2,8 +2,11 @@ package learn.solarfarm;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
 
-@SpringBootApplication
+// The `r2dbc` profile's repository makes its own pool; an auto-configured
+// ConnectionFactory would switch off the JDBC DataSource.
+@SpringBootApplication(exclude = R2dbcAutoConfiguration.class)
 public class App {
     public static void main(String[] args) {
         SpringApplication.run(App.class, args);
@@ -0,0 +1,61 @@
+package learn.solarfarm;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import learn.solarfarm.data.ReplicaRoutingDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Add `replicas` to the active profiles to send the controller's plain reads
+ * to MySQL read replicas; see ReplicaRoutingDataSource. The primary is still
+ * `spring.datasource.*`, pooled as before. Each of `solarfarm.replicas.urls`
+ * gets a pool of its own with the same `spring.datasource.hikari.*` settings
+ * and credentials, named after the primary's with `-replica-1`, `-replica-2`,
+ * and so on.
+ *
+ * Every database in play needs the `replica_heartbeat` table (migration 002).
+ * Locally, two MySQL instances will do, the second replicating from the
+ * first, or two Connector/J URLs on the same server for a replica with no lag.
+ */
+@Configuration
+@Profile("replicas")
+public class ReplicaConfig {
+
+    @Bean
+    public ReplicaRoutingDataSource dataSource(DataSourceProperties properties, Environment environment,
+                                               MeterRegistry registry,
+                                               @Value("${solarfarm.replicas.urls}") List<String> urls,
+                                               @Value("${solarfarm.replicas.max-lag-ms:1000}") long maxLagMillis,
+                                               @Value("${solarfarm.replicas.probe-interval-ms:250}") long probeIntervalMillis) {
+        // What Spring Boot would have built as the only DataSource.
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        primary.setMetricRegistry(registry);
+
+        Map<String, HikariDataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < urls.size(); i++) {
+            HikariConfig config = new HikariConfig();
+            primary.copyStateTo(config);
+            config.setJdbcUrl(urls.get(i).trim());
+            config.setPoolName(primary.getPoolName() + "-replica-" + (i + 1));
+            config.setReadOnly(true);
+            // A replica that's down at startup is just skipped until it passes a probe.
+            config.setInitializationFailTimeout(-1);
+            replicas.put(config.getPoolName(), new HikariDataSource(config));
+        }
+
+        return new ReplicaRoutingDataSource(primary, replicas, maxLagMillis, probeIntervalMillis, registry);
+    }
+}
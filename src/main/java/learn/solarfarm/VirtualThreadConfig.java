@@ -0,0 +1,50 @@
+package learn.solarfarm;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Opt-in virtual thread mode: `solarfarm.virtual-threads.enabled=true` on
+ * Java 21 or later. Tomcat runs each request on its own virtual thread, and
+ * DatabaseExecutor runs each database call on one, behind a semaphore sized
+ * to the connection pool.
+ *
+ * The project still compiles for Java 11, so virtual threads are created
+ * reflectively. Connector/J pins its carrier thread while it waits on the
+ * socket, so run with `-Djdk.virtualThreadScheduler.parallelism` above
+ * `spring.datasource.hikari.maximum-pool-size`, or slow queries can occupy
+ * every carrier.
+ */
+@Configuration
+@ConditionalOnProperty(name = "solarfarm.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(newVirtualThreadExecutor());
+    }
+
+    /**
+     * Returns an executor that starts a virtual thread per task.
+     * @throws IllegalStateException if this JVM doesn't have virtual threads.
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException ex) {
+            throw new IllegalStateException(String.format(
+                    "Virtual threads need Java 21 or later; this is Java %s.", Runtime.version().feature()), ex);
+        } catch (InvocationTargetException ex) {
+            // Java 19 and 20 have them only as a preview feature.
+            throw new IllegalStateException("Virtual threads aren't available: " + ex.getCause().getMessage(), ex);
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException("Virtual threads aren't available.", ex);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package learn.solarfarm.controllers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelSerializer;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The `?format=compact` body: the field names once, then one array of values
+ * per solar panel, in the same order.
+ *
+ * {"columns":["id","section",...],"rows":[[1,"The Ridge",...],...]}
+ */
+@JsonSerialize(using = CompactSolarPanels.Serializer.class)
+public class CompactSolarPanels {
+    static final String[] COLUMNS = {"id", "section", "row", "column", "yearInstalled", "material", "tracking"};
+
+    private final List<SolarPanel> solarPanels;
+
+    public CompactSolarPanels(List<SolarPanel> solarPanels) {
+        this.solarPanels = solarPanels;
+    }
+
+    public List<SolarPanel> getSolarPanels() {
+        return solarPanels;
+    }
+
+    public static class Serializer extends StdSerializer<CompactSolarPanels> {
+        public Serializer() {
+            super(CompactSolarPanels.class);
+        }
+
+        @Override
+        public void serialize(CompactSolarPanels value, JsonGenerator generator, SerializerProvider provider)
+                throws IOException {
+            generator.writeStartObject(value);
+            generator.writeFieldName("columns");
+            generator.writeArray(COLUMNS, 0, COLUMNS.length);
+            generator.writeFieldName("rows");
+            generator.writeStartArray();
+            for (SolarPanel solarPanel : value.solarPanels) {
+                generator.writeStartArray();
+                generator.writeNumber(solarPanel.getId());
+                generator.writeString(solarPanel.getSection());
+                generator.writeNumber(solarPanel.getRow());
+                generator.writeNumber(solarPanel.getColumn());
+                generator.writeNumber(solarPanel.getYearInstalled());
+                SolarPanelSerializer.writeMaterial(solarPanel.getMaterial(), generator);
+                generator.writeBoolean(solarPanel.isTracking());
+                generator.writeEndArray();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package learn.solarfarm.controllers;
+
+/**
+ * Thrown when the database executor's queue is full. Answered with a 503 and
+ * a Retry-After header rather than queueing the request behind everyone else.
+ */
+public class DatabaseBusyException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public DatabaseBusyException(long retryAfterSeconds) {
+        super("The database executor's queue is full.");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
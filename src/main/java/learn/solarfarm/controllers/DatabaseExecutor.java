@@ -0,0 +1,155 @@
+package learn.solarfarm.controllers;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import learn.solarfarm.VirtualThreadConfig;
+import learn.solarfarm.data.DataAccessException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the controller's service calls off the Tomcat worker threads, so a slow
+ * database holds up these threads instead of every request.
+ *
+ * There's one thread per pooled connection, less one per hedge when ReadHedger
+ * is on, since more threads would only wait on the pool. Calls beyond that wait
+ * in a bounded queue; once it's full, calls fail right away with a
+ * DatabaseBusyException. Published as the `executor.*` meters tagged
+ * `name=solarfarm.db`, plus `solarfarm.db.rejected`.
+ *
+ * In virtual thread mode every call gets its own virtual thread instead. A
+ * semaphore with one permit per pooled connection does the fixed thread
+ * count's job, and a count of admitted calls does the queue's, so the limits
+ * and the 503s are the same in both modes.
+ */
+@Component
+public class DatabaseExecutor {
+    @FunctionalInterface
+    public interface DataAccessCall<T> {
+        T call() throws DataAccessException;
+    }
+
+    private final ExecutorService pool;
+    private final ExecutorService executor;
+    private final Counter rejected;
+    private final long retryAfterSeconds;
+
+    // Virtual thread mode only; null otherwise.
+    private final Semaphore connections;
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final int maxAdmitted;
+
+    @Autowired
+    public DatabaseExecutor(MeterRegistry registry,
+                            @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+                            @Value("${solarfarm.db-executor.queue-capacity:100}") int queueCapacity,
+                            @Value("${solarfarm.db-executor.retry-after-seconds:1}") long retryAfterSeconds,
+                            @Value("${solarfarm.virtual-threads.enabled:false}") boolean virtualThreads,
+                            @Value("${solarfarm.hedging.enabled:false}") boolean hedging,
+                            @Value("${solarfarm.hedging.max-in-flight:2}") int maxHedges) {
+        // Leaves a connection free for every hedge ReadHedger may run, so a hedge
+        // never waits for the pool behind these threads.
+        this(registry, hedging ? Math.max(1, poolSize - maxHedges) : poolSize,
+                queueCapacity, retryAfterSeconds, virtualThreads);
+    }
+
+    public DatabaseExecutor(MeterRegistry registry, int threads, int queueCapacity,
+                            long retryAfterSeconds, boolean virtualThreads) {
+        if (virtualThreads) {
+            this.pool = VirtualThreadConfig.newVirtualThreadExecutor();
+            this.connections = new Semaphore(threads);
+            Gauge.builder("solarfarm.db.admitted", admitted, AtomicInteger::get)
+                    .description("Calls running or waiting for a connection permit")
+                    .register(registry);
+        } else {
+            AtomicInteger threadCount = new AtomicInteger();
+            this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "db-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.AbortPolicy());
+            this.connections = null;
+        }
+        this.maxAdmitted = threads + queueCapacity;
+        this.executor = ExecutorServiceMetrics.monitor(registry, pool, "solarfarm.db");
+        this.rejected = Counter.builder("solarfarm.db.rejected")
+                .description("Calls turned away because the database executor's queue was full")
+                .register(registry);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Queues a call.
+     * @return A future completed with the call's result, or with the exception it threw.
+     * @throws DatabaseBusyException if the queue is full.
+     */
+    public <T> CompletableFuture<T> submit(DataAccessCall<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable task = () -> {
+            try {
+                future.complete(call.call());
+            } catch (Exception ex) {
+                future.completeExceptionally(ex);
+            }
+        };
+        try {
+            if (connections == null) {
+                executor.execute(task);
+            } else {
+                executeAdmitted(task);
+            }
+        } catch (RejectedExecutionException ex) {
+            rejected.increment();
+            throw new DatabaseBusyException(retryAfterSeconds);
+        }
+        return future;
+    }
+
+    @PreDestroy
+    public void close() {
+        pool.shutdown();
+    }
+
+    private void executeAdmitted(Runnable task) {
+        Runnable admittedTask = admit(task);
+        try {
+            executor.execute(admittedTask);
+        } catch (RuntimeException ex) {
+            // The task never runs, so it can't give its place back itself.
+            admitted.decrementAndGet();
+            throw ex;
+        }
+    }
+
+    private Runnable admit(Runnable task) {
+        if (admitted.incrementAndGet() > maxAdmitted) {
+            admitted.decrementAndGet();
+            throw new RejectedExecutionException();
+        }
+        return () -> {
+            connections.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                connections.release();
+                admitted.decrementAndGet();
+            }
+        };
+    }
+}
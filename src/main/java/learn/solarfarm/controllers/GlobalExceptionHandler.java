@@ -1,7 +1,10 @@
 package learn.solarfarm.controllers;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
@@ -10,6 +13,8 @@ import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
+import javax.servlet.http.HttpServletResponse;
+
 /*
 
 controller "try"
@@ -27,13 +32,42 @@ try {
 
 @ControllerAdvice
 public class GlobalExceptionHandler {
+    private static final Logger logger = LoggerFactory.getLogger(GlobalExceptionHandler.class);
 
     // DataAccessException is the super class of many Spring database exceptions
     // including BadSqlGrammarException.
     @ExceptionHandler(DataAccessException.class)
     public ResponseEntity<ErrorResponse> handleException(DataAccessException ex) {
 
-        // TODO Log the exception?
+        logger.error("Database error.", ex);
+
+        return new ResponseEntity<>(
+                new ErrorResponse("We can't show you the details, but something went wrong in our database. Sorry :("),
+                HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    // The database executor's queue is full. Not logged: under overload this
+    // fires constantly, and `solarfarm.db.rejected` already counts it.
+    @ExceptionHandler(DatabaseBusyException.class)
+    public ResponseEntity<ErrorResponse> handleException(DatabaseBusyException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(ex.getRetryAfterSeconds()))
+                .body(new ErrorResponse("We're busy right now. Please try again shortly."));
+    }
+
+    // A streamed response failed part way. Once some of it has been sent, the
+    // exception is rethrown so the container aborts the response instead of
+    // ending it; otherwise it's a plain database error.
+    @ExceptionHandler(StreamAbortedException.class)
+    public ResponseEntity<ErrorResponse> handleException(StreamAbortedException ex,
+                                                         HttpServletResponse response) throws StreamAbortedException {
+        if (response.isCommitted()) {
+            logger.error("Streamed response aborted.", ex);
+            throw ex;
+        }
+        response.resetBuffer();
+
+        logger.error("Database error.", ex);
 
         return new ResponseEntity<>(
                 new ErrorResponse("We can't show you the details, but something went wrong in our database. Sorry :("),
@@ -45,7 +79,7 @@ public class GlobalExceptionHandler {
     @ExceptionHandler(IllegalArgumentException.class)
     public ResponseEntity<ErrorResponse> handleException(IllegalArgumentException ex) {
 
-        // TODO Log the exception?
+        logger.error("Illegal argument.", ex);
 
         return new ResponseEntity<>(
                 new ErrorResponse(ex.getMessage()),
@@ -63,7 +97,7 @@ public class GlobalExceptionHandler {
 //        if (AnnotationUtils.findAnnotation(ex.getClass(), ResponseStatus.class) != null)
 //            throw ex;
 
-        // TODO Log the exception?
+        logger.error("Unhandled exception.", ex);
 
         return new ResponseEntity<>(
                 new ErrorResponse("Something went wrong on our end. Your request failed. :("),
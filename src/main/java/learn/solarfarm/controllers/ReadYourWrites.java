@@ -0,0 +1,71 @@
+package learn.solarfarm.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Read-your-writes for clients under the `replicas` profile. A successful
+ * write answers with a cookie holding the time it finished, and the client's
+ * reads carry it back, so they skip replicas that haven't caught up to it,
+ * even when the next request lands on another app instance.
+ *
+ * Without the `replicas` profile no cookie is set.
+ */
+@Component
+public class ReadYourWrites {
+    public static final String COOKIE = "solarfarm-written-at";
+    // Far longer than any replica should stay usable while lagging behind.
+    private static final Duration MAX_AGE = Duration.ofMinutes(5);
+
+    private final boolean enabled;
+    private final LongSupplier clock;
+
+    @Autowired
+    public ReadYourWrites(Environment environment) {
+        this(environment.acceptsProfiles(Profiles.of("replicas")), System::currentTimeMillis);
+    }
+
+    ReadYourWrites(boolean enabled, LongSupplier clock) {
+        this.enabled = enabled;
+        this.clock = clock;
+    }
+
+    /**
+     * @return A Set-Cookie header for a client that has just written, or null
+     * without replicas.
+     */
+    public String setCookie() {
+        if (!enabled) {
+            return null;
+        }
+        return ResponseCookie.from(COOKIE, Long.toString(clock.getAsLong()))
+                .path("/")
+                .maxAge(MAX_AGE)
+                .httpOnly(true)
+                .sameSite("Lax")
+                .build()
+                .toString();
+    }
+
+    /**
+     * @param cookie The cookie's value, or null.
+     * @return The client's last write time in epoch milliseconds, or 0 if it
+     * hasn't written or the cookie isn't ours.
+     */
+    public long getWrittenAt(String cookie) {
+        if (cookie == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(cookie));
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+}
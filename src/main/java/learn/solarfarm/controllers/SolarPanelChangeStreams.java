@@ -0,0 +1,227 @@
+package learn.solarfarm.controllers;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import learn.solarfarm.domain.SolarPanelChangeLog;
+import learn.solarfarm.models.SolarPanelChange;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends the change log to server-sent event subscribers.
+ *
+ * A subscriber is only a position in the log, and it sends one batch at a
+ * time on a thread of its own, so it costs no memory while idle and a client
+ * that stops reading only holds up itself. A batch still being sent after
+ * `send-timeout-ms` means the client has stopped reading; it's dropped and
+ * counted as `solarfarm.changes.stalled`, and its blocked write fails once
+ * the container's write timeout passes. Once a subscriber falls out of the
+ * log it's sent a `reset` event carrying the latest sequence and
+ * disconnected; it should reload, then subscribe after that sequence.
+ */
+@Component
+public class SolarPanelChangeStreams {
+    private static final int BATCH_SIZE = 100;
+
+    private final SolarPanelChangeLog changeLog;
+    private final Semaphore slots;
+    private final long timeoutMillis;
+    private final long sendTimeoutNanos;
+    // A thread per subscriber with a batch to send; idle threads end after a minute.
+    private final ExecutorService sender;
+    private final ScheduledExecutorService watchdog;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Runnable listener = this::wakeAll;
+    private final Counter resets;
+    private final Counter stalled;
+
+    public SolarPanelChangeStreams(SolarPanelChangeLog changeLog, MeterRegistry registry,
+                                   @Value("${solarfarm.changes.max-subscribers:100}") int maxSubscribers,
+                                   @Value("${solarfarm.changes.send-timeout-ms:10000}") long sendTimeoutMillis,
+                                   @Value("${solarfarm.changes.timeout-ms:1800000}") long timeoutMillis) {
+        this.changeLog = changeLog;
+        this.slots = new Semaphore(maxSubscribers);
+        this.timeoutMillis = timeoutMillis;
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis);
+
+        this.sender = Executors.newCachedThreadPool(daemon("change-feed"));
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(daemon("change-feed-watchdog"));
+        long checkMillis = Math.max(1, Math.min(1000, sendTimeoutMillis / 2));
+        watchdog.scheduleWithFixedDelay(this::dropStalled, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+
+        Gauge.builder("solarfarm.changes.subscribers", subscribers, Set::size)
+                .description("Open change feed subscriptions")
+                .register(registry);
+        this.resets = Counter.builder("solarfarm.changes.resets")
+                .description("Subscribers disconnected for falling out of the change log")
+                .register(registry);
+        this.stalled = Counter.builder("solarfarm.changes.stalled")
+                .description("Subscribers disconnected for not reading within send-timeout-ms")
+                .register(registry);
+
+        changeLog.addListener(listener);
+    }
+
+    /**
+     * Opens a subscription.
+     * @param after The last sequence the subscriber has seen, or null for only new changes.
+     * @return The emitter, or null if there are already `max-subscribers`.
+     */
+    public SseEmitter subscribe(Long after) {
+        if (!slots.tryAcquire()) {
+            return null;
+        }
+
+        SseEmitter emitter = newEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter, after == null ? changeLog.getLatestSequence() : after);
+        subscribers.add(subscriber);
+        emitter.onCompletion(subscriber::drop);
+        emitter.onTimeout(emitter::complete);
+
+        // Catches up on anything already after its position.
+        subscriber.wake();
+        return emitter;
+    }
+
+    @PreDestroy
+    public void close() {
+        changeLog.removeListener(listener);
+        watchdog.shutdownNow();
+        sender.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+    }
+
+    // Overridden by tests to stand in for a client.
+    SseEmitter newEmitter(long timeoutMillis) {
+        return new SseEmitter(timeoutMillis);
+    }
+
+    private void wakeAll() {
+        subscribers.forEach(Subscriber::wake);
+    }
+
+    private void dropStalled() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.sending && now - subscriber.sendStarted > sendTimeoutNanos && subscriber.drop()) {
+                stalled.increment();
+            }
+        }
+    }
+
+    private class Subscriber {
+        private final SseEmitter emitter;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean dropped = new AtomicBoolean();
+        // Set around each batch, for the watchdog.
+        private volatile boolean sending;
+        private volatile long sendStarted;
+        // Only touched by the one sender task that holds `scheduled`.
+        private long position;
+
+        Subscriber(SseEmitter emitter, long position) {
+            this.emitter = emitter;
+            this.position = position;
+        }
+
+        void wake() {
+            if (!dropped.get() && scheduled.compareAndSet(false, true)) {
+                try {
+                    sender.execute(this::sendBatch);
+                } catch (RejectedExecutionException ex) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        /**
+         * Stops sending to this subscriber and frees its slot.
+         * @return Whether this call dropped it.
+         */
+        boolean drop() {
+            if (!dropped.compareAndSet(false, true)) {
+                return false;
+            }
+            subscribers.remove(this);
+            slots.release();
+            return true;
+        }
+
+        private void sendBatch() {
+            List<SolarPanelChange> changes = changeLog.readAfter(position, BATCH_SIZE);
+            sendStarted = System.nanoTime();
+            sending = true;
+            try {
+                if (changes == null) {
+                    resets.increment();
+                    emitter.send(SseEmitter.event()
+                            .name("reset")
+                            .data(changeLog.getLatestSequence()));
+                    drop();
+                    emitter.complete();
+                    return;
+                }
+
+                for (SolarPanelChange change : changes) {
+                    if (dropped.get()) {
+                        break;
+                    }
+                    emitter.send(SseEmitter.event()
+                            .id(Long.toString(change.getSequence()))
+                            .name("change")
+                            .data(change, MediaType.APPLICATION_JSON));
+                    position = change.getSequence();
+                }
+            } catch (IOException ex) {
+                // The client is gone; this releases its request.
+                drop();
+                emitter.completeWithError(ex);
+                return;
+            } catch (IllegalStateException ex) {
+                // The emitter already completed.
+                drop();
+                return;
+            } finally {
+                sending = false;
+            }
+
+            if (dropped.get()) {
+                // Stalled past the deadline, then caught up.
+                emitter.complete();
+                return;
+            }
+            scheduled.set(false);
+            // A change published after the read above found `scheduled` still set.
+            if (changeLog.getLatestSequence() > position) {
+                wake();
+            }
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
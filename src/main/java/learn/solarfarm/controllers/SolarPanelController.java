@@ -1,51 +1,289 @@
 package learn.solarfarm.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import learn.solarfarm.data.DataAccessException;
+import learn.solarfarm.data.ReadRouting;
 import learn.solarfarm.domain.Result;
 import learn.solarfarm.domain.ResultType;
 import learn.solarfarm.domain.SolarPanelService;
 import learn.solarfarm.models.SolarPanel;
 import learn.solarfarm.models.SolarPanelKey;
+import learn.solarfarm.models.SolarPanelStats;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @CrossOrigin(origins = {"localhost:3000"})
 @RequestMapping("/solarpanels")
 public class SolarPanelController {
+    // Spring 5.2 has a constant for CBOR but not for Smile.
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+    private static final MediaType APPLICATION_SMILE = MediaType.parseMediaType(APPLICATION_SMILE_VALUE);
+    private static final String COMPACT = "compact";
+    private static final String GZIP = "gzip";
+    private static final String JSON = "json";
+    private static final String CBOR = "cbor";
+    private static final String SMILE = "smile";
+
     private final SolarPanelService service;
+    private final ObjectMapper jsonMapper;
+    private final SolarPanelChangeStreams changeStreams;
+    private final DatabaseExecutor database;
+    private final SolarPanelImporter importer;
+    private final SolarPanelResponseCache responseCache;
+    private final ReadYourWrites readYourWrites;
 
-    public SolarPanelController(SolarPanelService service) {
+    public SolarPanelController(SolarPanelService service, ObjectMapper jsonMapper,
+                                SolarPanelChangeStreams changeStreams, DatabaseExecutor database,
+                                SolarPanelImporter importer, SolarPanelResponseCache responseCache,
+                                ReadYourWrites readYourWrites) {
         this.service = service;
+        this.jsonMapper = jsonMapper;
+        this.changeStreams = changeStreams;
+        this.database = database;
+        this.importer = importer;
+        this.responseCache = responseCache;
+        this.readYourWrites = readYourWrites;
     }
 
+    // Handlers that reach the database hand the call to the DatabaseExecutor
+    // and return a future, so the Tomcat worker thread is freed right away.
+    // When the executor's queue is full they answer 503 with Retry-After.
+
+    // Under the `replicas` profile, findAll, findBySection, and findByKey may be
+    // answered by a read replica. Writes set a cookie so the client's later
+    // reads only use replicas that have caught up; see ReadYourWrites.
+
+    // Every GET answers with a strong ETag from the table or section version.
+    // A matching If-None-Match gets a 304 before the repository is touched.
+    // The version is read before the data, so a tag is never newer than its data.
+    // `format=compact` bodies get their own tags, since they're different bytes,
+    // and so do CBOR and Smile bodies, and the gzipped copies of cached JSON.
+
+    // Every handler also reads and writes CBOR (`application/cbor`) and Smile
+    // (`application/x-jackson-smile`) with the same field names as JSON, by
+    // Content-Type and Accept; `stream=true` and `/import` stay text. Every
+    // response varies by Accept; see VaryByAcceptAdvice.
+
+    // JSON answers to the two most common GETs come from the response cache,
+    // which writes the stored bytes itself on a hit.
+
     @GetMapping
-    public List<SolarPanel> findAll() throws DataAccessException {
-        return service.findAll();
+    public CompletableFuture<?> findAll(
+            @CookieValue(name = ReadYourWrites.COOKIE, required = false) String writtenAtCookie,
+            WebRequest request, HttpServletResponse response) throws IOException {
+        long version = service.getVersion();
+        long writtenAt = readYourWrites.getWrittenAt(writtenAtCookie);
+        String encoding = encoding(request);
+        boolean gzip = JSON.equals(encoding)
+                && SolarPanelResponseCache.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        if (request.checkNotModified(eTag(version, gzip ? GZIP : "", encoding))) {
+            return null;
+        }
+        if (!JSON.equals(encoding)) {
+            return database.submit(() -> ReadRouting.fromReplica(writtenAt, service::findAll));
+        }
+        SolarPanelResponseCache.Body body = responseCache.getAll(version);
+        if (body != null) {
+            body.writeTo(response, gzip);
+            return null;
+        }
+        return database.submit(() -> responseCache.putAll(version,
+                ReadRouting.fromReplica(writtenAt, service::findAll)))
+                .thenApply(read -> read.toResponseEntity(gzip));
+    }
+
+    // Field names once, then an array of values per panel; see CompactSolarPanels.
+    @GetMapping(params = "format=compact")
+    public CompletableFuture<CompactSolarPanels> findAllCompact(WebRequest request) {
+        if (request.checkNotModified(eTag(service.getVersion(), request, COMPACT))) {
+            return null;
+        }
+        return database.submit(() -> new CompactSolarPanels(service.findAll()));
+    }
+
+    // Keyset pagination: the client passes back the `next` key from the previous page.
+    @GetMapping(params = "limit")
+    public CompletableFuture<SolarPanelPage> findPage(
+            @RequestParam int limit,
+            @RequestParam(required = false) String afterSection,
+            @RequestParam(defaultValue = "0") int afterRow,
+            @RequestParam(defaultValue = "0") int afterColumn,
+            WebRequest request) {
+        if (request.checkNotModified(eTag(service.getVersion(), request))) {
+            return null;
+        }
+        SolarPanelKey after = afterSection == null
+                ? null
+                : new SolarPanelKey(afterSection, afterRow, afterColumn);
+        return database.submit(() -> {
+            List<SolarPanel> solarPanels = service.findPage(after, limit);
+            return new SolarPanelPage(solarPanels, SolarPanelService.getPageSize(limit));
+        });
+    }
+
+    // Writes each row to the response as it's read so the table is never held in memory.
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamAll(WebRequest request) {
+        if (request.checkNotModified(eTag(service.getVersion()))) {
+            return null;
+        }
+        StreamingResponseBody body = out -> {
+            // Flushed as the buffer fills rather than after every row, so a query
+            // that fails early still gets a plain error response.
+            SequenceWriter writer = jsonMapper.writer()
+                    .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                    .writeValuesAsArray(out);
+            try {
+                service.streamAll(solarPanel -> {
+                    try {
+                        writer.write(solarPanel);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+            } catch (DataAccessException ex) {
+                // The writer isn't closed, so the array is never ended.
+                throw new StreamAbortedException(ex);
+            }
+            // Ends the array, only once every row is written.
+            writer.close();
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    // Counts by section, material, tracking, and install year, so dashboards
+    // don't have to download every panel to count them. Spring prefers this
+    // literal path over `/{section}`, so a section named `stats` is shadowed.
+    @GetMapping("/stats")
+    public CompletableFuture<SolarPanelStats> getStats(WebRequest request) {
+        if (request.checkNotModified(eTag(service.getVersion(), request))) {
+            return null;
+        }
+        return database.submit(service::getStats);
+    }
+
+    // Server-sent events for every write after `after`, or after the
+    // Last-Event-ID a reconnecting EventSource sends; without either, only new
+    // writes. Shadows a section named `changes`, like `/stats`.
+    @GetMapping(path = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamChanges(
+            @RequestParam(required = false) Long after,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        SseEmitter emitter = changeStreams.subscribe(lastEventId != null ? lastEventId : after);
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .build();
+        }
+        return ResponseEntity.ok(emitter);
     }
 
     @GetMapping("/{section}")
-    public List<SolarPanel> findBySection(@PathVariable String section) throws DataAccessException {
-        return service.findBySection(section);
+    public CompletableFuture<?> findBySection(
+            @PathVariable String section,
+            @CookieValue(name = ReadYourWrites.COOKIE, required = false) String writtenAtCookie,
+            WebRequest request, HttpServletResponse response) throws IOException {
+        long version = service.getSectionVersion(section);
+        long writtenAt = readYourWrites.getWrittenAt(writtenAtCookie);
+        String encoding = encoding(request);
+        boolean gzip = JSON.equals(encoding)
+                && SolarPanelResponseCache.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        if (request.checkNotModified(eTag(version, gzip ? GZIP : "", encoding))) {
+            return null;
+        }
+        if (!JSON.equals(encoding)) {
+            return database.submit(() -> ReadRouting.fromReplica(writtenAt, () -> service.findBySection(section)));
+        }
+        SolarPanelResponseCache.Body body = responseCache.getSection(section, version);
+        if (body != null) {
+            body.writeTo(response, gzip);
+            return null;
+        }
+        return database.submit(() -> responseCache.putSection(section, version,
+                ReadRouting.fromReplica(writtenAt, () -> service.findBySection(section))))
+                .thenApply(read -> read.toResponseEntity(gzip));
+    }
+
+    @GetMapping(path = "/{section}", params = "format=compact")
+    public CompletableFuture<CompactSolarPanels> findBySectionCompact(@PathVariable String section,
+                                                                      WebRequest request) {
+        if (request.checkNotModified(eTag(service.getSectionVersion(section), request, COMPACT))) {
+            return null;
+        }
+        return database.submit(() -> new CompactSolarPanels(service.findBySection(section)));
+    }
+
+    // `rows` and `cols` are inclusive ranges like `10-40`, or a single number.
+    @GetMapping("/{section}/grid")
+    public CompletableFuture<ResponseEntity<?>> findByGridRange(
+            @PathVariable String section,
+            @RequestParam(defaultValue = "1-" + SolarPanelService.MAX_ROW_COLUMN) String rows,
+            @RequestParam(defaultValue = "1-" + SolarPanelService.MAX_ROW_COLUMN) String cols,
+            WebRequest request) {
+        if (request.checkNotModified(eTag(service.getSectionVersion(section), request))) {
+            return null;
+        }
+        int[] rowRange = parseRange(rows);
+        int[] columnRange = parseRange(cols);
+        if (rowRange == null || columnRange == null) {
+            ValidationErrorResult validationErrorResult = new ValidationErrorResult();
+            validationErrorResult.addMessage("Grid `rows` and `cols` must be a number or a range like `10-40`.");
+            return CompletableFuture.completedFuture(new ResponseEntity<>(validationErrorResult, HttpStatus.BAD_REQUEST));
+        }
+
+        return database.submit(() -> {
+            Result<List<SolarPanel>> result = service.findByGridRange(section,
+                    rowRange[0], rowRange[1], columnRange[0], columnRange[1]);
+            if (result.getType() == ResultType.INVALID) {
+                ValidationErrorResult validationErrorResult = new ValidationErrorResult();
+                result.getMessages().forEach(validationErrorResult::addMessage);
+                return new ResponseEntity<>(validationErrorResult, HttpStatus.BAD_REQUEST);
+            }
+            return new ResponseEntity<>(result.getPayload(), HttpStatus.OK);
+        });
     }
 
     @GetMapping("/{section}/{row}/{column}")
-    public ResponseEntity<SolarPanel> findByKey(
+    public CompletableFuture<ResponseEntity<SolarPanel>> findByKey(
             @PathVariable String section,
             @PathVariable int row,
-            @PathVariable int column) throws DataAccessException {
-        SolarPanelKey key = new SolarPanelKey(section, row, column);
-        SolarPanel solarPanel = service.findByKey(key);
-        if (solarPanel != null) {
-            return new ResponseEntity<>(solarPanel, HttpStatus.OK);
-        } else {
-            return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+            @PathVariable int column,
+            @CookieValue(name = ReadYourWrites.COOKIE, required = false) String writtenAtCookie,
+            WebRequest request) {
+        if (request.checkNotModified(eTag(service.getSectionVersion(section), request))) {
+            return null;
         }
+        SolarPanelKey key = new SolarPanelKey(section, row, column);
+        long writtenAt = readYourWrites.getWrittenAt(writtenAtCookie);
+        return database.submit(() -> {
+            SolarPanel solarPanel = ReadRouting.fromReplica(writtenAt, () -> service.findByKey(key));
+            if (solarPanel != null) {
+                return new ResponseEntity<>(solarPanel, HttpStatus.OK);
+            } else {
+                return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+            }
+        });
     }
 
     // Spring automatic validation...
@@ -68,14 +306,16 @@ public class SolarPanelController {
     // Validation in the service...
 
     @PostMapping
-    public ResponseEntity<?> create(@RequestBody(required = false) SolarPanel solarPanel) throws DataAccessException {
-        Result<SolarPanel> result = service.create(solarPanel);
-        if (result.getType() == ResultType.INVALID) {
-            ValidationErrorResult validationErrorResult = new ValidationErrorResult();
-            result.getMessages().forEach(validationErrorResult::addMessage);
-            return new ResponseEntity<>(validationErrorResult, HttpStatus.BAD_REQUEST);
-        }
-        return new ResponseEntity<>(result.getPayload(), HttpStatus.CREATED);
+    public CompletableFuture<ResponseEntity<?>> create(@RequestBody(required = false) SolarPanel solarPanel) {
+        return database.submit(() -> {
+            Result<SolarPanel> result = service.create(solarPanel);
+            if (result.getType() == ResultType.INVALID) {
+                ValidationErrorResult validationErrorResult = new ValidationErrorResult();
+                result.getMessages().forEach(validationErrorResult::addMessage);
+                return new ResponseEntity<>(validationErrorResult, HttpStatus.BAD_REQUEST);
+            }
+            return written(HttpStatus.CREATED, result.getPayload());
+        });
     }
 
     // Validation in the service but no messages returned to the client...
@@ -90,32 +330,154 @@ public class SolarPanelController {
 //    }
 
     @PutMapping("/{solarPanelId}")
-    public ResponseEntity<Void> update(
+    public CompletableFuture<ResponseEntity<Void>> update(
             @PathVariable int solarPanelId,
-            @RequestBody SolarPanel solarPanel) throws DataAccessException {
+            @RequestBody SolarPanel solarPanel) {
         if (solarPanelId != solarPanel.getId()) {
-            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
         }
 
-        Result<SolarPanel> result = service.update(solarPanel);
-        if (result.getType() == ResultType.INVALID) {
-            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
-        } else if (result.getType() == ResultType.NOT_FOUND) {
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        return database.submit(() -> {
+            Result<SolarPanel> result = service.update(solarPanel);
+            if (result.getType() == ResultType.INVALID) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            } else if (result.getType() == ResultType.NOT_FOUND) {
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            return written(HttpStatus.NO_CONTENT, null);
+        });
+    }
+
+    // Batch endpoints always answer 200 with one Result per item, in request order.
+
+    @PostMapping("/batch")
+    public CompletableFuture<ResponseEntity<List<Result<SolarPanel>>>> createAll(
+            @RequestBody List<SolarPanel> solarPanels) {
+        return database.submit(() -> written(HttpStatus.OK, service.createAll(solarPanels)));
+    }
+
+    @PutMapping("/batch")
+    public CompletableFuture<ResponseEntity<List<Result<SolarPanel>>>> updateAll(
+            @RequestBody List<SolarPanel> solarPanels) {
+        return database.submit(() -> written(HttpStatus.OK, service.updateAll(solarPanels)));
+    }
+
+    @DeleteMapping("/batch")
+    public CompletableFuture<ResponseEntity<List<Result<SolarPanel>>>> deleteAll(
+            @RequestBody List<SolarPanelKey> keys) {
+        return database.submit(() -> written(HttpStatus.OK, service.deleteAll(keys)));
+    }
+
+    // Streams a CSV or NDJSON inventory into the table a chunk at a time and
+    // answers 200 with a per-row error report. Like `stream=true`, it runs on
+    // the request thread for as long as the upload lasts.
+    @PostMapping(path = "/import",
+            consumes = {SolarPanelImporter.TEXT_CSV_VALUE, SolarPanelNdjsonController.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<?> importAll(
+            InputStream body,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType) throws IOException, DataAccessException {
+        try {
+            return written(HttpStatus.OK, importer.importAll(body, contentType));
+        } catch (IllegalArgumentException ex) {
+            ValidationErrorResult validationErrorResult = new ValidationErrorResult();
+            validationErrorResult.addMessage(ex.getMessage());
+            return new ResponseEntity<>(validationErrorResult, HttpStatus.BAD_REQUEST);
         }
-        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
 
     @DeleteMapping("/{section}/{row}/{column}")
-    public ResponseEntity<Void> delete(
+    public CompletableFuture<ResponseEntity<Void>> delete(
             @PathVariable String section,
             @PathVariable int row,
-            @PathVariable int column) throws DataAccessException {
+            @PathVariable int column) {
         SolarPanelKey key = new SolarPanelKey(section, row, column);
-        Result<SolarPanel> result = service.deleteByKey(key);
-        if (result.isSuccess()) {
-            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        return database.submit(() -> {
+            Result<SolarPanel> result = service.deleteByKey(key);
+            if (result.isSuccess()) {
+                return written(HttpStatus.NO_CONTENT, null);
+            }
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        });
+    }
+
+    // A successful write's response: under the `replicas` profile, it tells the
+    // client's later reads to skip replicas that haven't caught up to it.
+    private <T> ResponseEntity<T> written(HttpStatus status, T body) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(status);
+        String cookie = readYourWrites.setCookie();
+        if (cookie != null) {
+            builder.header(HttpHeaders.SET_COOKIE, cookie);
+        }
+        return builder.body(body);
+    }
+
+    private static String eTag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    private static String eTag(long version, WebRequest request) {
+        return eTag(version, "", encoding(request));
+    }
+
+    private static String eTag(long version, WebRequest request, String format) {
+        return eTag(version, format, encoding(request));
+    }
+
+    // The format or gzip and a binary encoding are suffixes, like "12-compact-cbor" or "12-gzip".
+    private static String eTag(long version, String format, String encoding) {
+        if (format.isEmpty() && (encoding == null || encoding.equals(JSON))) {
+            return eTag(version);
+        }
+        StringBuilder tag = new StringBuilder().append('"').append(version);
+        if (!format.isEmpty()) {
+            tag.append('-').append(format);
+        }
+        if (encoding != null && !encoding.equals(JSON)) {
+            tag.append('-').append(encoding);
+        }
+        return tag.append('"').toString();
+    }
+
+    // The encoding Spring will answer in for this Accept header: JSON, CBOR,
+    // or SMILE, or null if it accepts none of them. Matches its negotiation:
+    // most specific, then highest q.
+    private static String encoding(WebRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        if (accept == null || accept.equals(MediaType.ALL_VALUE)) {
+            return JSON;
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException ex) {
+            return null;
+        }
+        MediaType.sortBySpecificityAndQuality(accepted);
+        for (MediaType type : accepted) {
+            if (type.equalsTypeAndSubtype(MediaType.APPLICATION_CBOR)) {
+                return CBOR;
+            } else if (type.equalsTypeAndSubtype(APPLICATION_SMILE)) {
+                return SMILE;
+            } else if (type.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                return JSON;
+            }
+        }
+        return accepted.isEmpty() ? JSON : null;
+    }
+
+    // Parses `first-last` or a single number into {first, last}, or returns null.
+    private static int[] parseRange(String range) {
+        String[] parts = range.trim().split("-", -1);
+        try {
+            if (parts.length == 1) {
+                int value = Integer.parseInt(parts[0].trim());
+                return new int[]{value, value};
+            } else if (parts.length == 2) {
+                return new int[]{Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim())};
+            }
+        } catch (NumberFormatException ex) {
+            // Falls through to null.
         }
-        return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        return null;
     }
 }
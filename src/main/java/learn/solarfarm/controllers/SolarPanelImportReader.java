@@ -0,0 +1,229 @@
+package learn.solarfarm.controllers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads an inventory upload one row at a time, so the body is never held in
+ * memory. A row that can't be parsed comes back with its errors instead of a
+ * solar panel, and reading carries on with the next row.
+ *
+ * CSV needs a header row naming the columns `section`, `row`, `column`,
+ * `yearInstalled`, `material`, and `tracking`, in any order. Fields can be
+ * quoted, with `""` for a quote inside one. A material is its JSON name
+ * (`POLY_SI`), its abbreviation, or its full name. NDJSON is one solar panel
+ * per line, as GET returns it.
+ */
+class SolarPanelImportReader implements Closeable {
+    enum Format {
+        CSV, NDJSON
+    }
+
+    static class Row {
+        private final int line;
+        private final SolarPanel solarPanel;
+        private final List<String> errors;
+
+        Row(int line, SolarPanel solarPanel, List<String> errors) {
+            this.line = line;
+            this.solarPanel = solarPanel;
+            this.errors = errors;
+        }
+
+        int getLine() {
+            return line;
+        }
+
+        // Null when the row couldn't be parsed.
+        SolarPanel getSolarPanel() {
+            return solarPanel;
+        }
+
+        List<String> getErrors() {
+            return errors;
+        }
+    }
+
+    private static final String[] CSV_COLUMNS = {"section", "row", "column", "yearInstalled", "material", "tracking"};
+
+    private final Format format;
+    private final BufferedReader reader;
+    private final ObjectReader jsonReader;
+    // For CSV, the position of each of CSV_COLUMNS in a record.
+    private final int[] positions = new int[CSV_COLUMNS.length];
+    private int headerSize;
+    private int line;
+
+    /**
+     * @throws IllegalArgumentException if the CSV header is missing a column.
+     */
+    SolarPanelImportReader(Format format, Reader reader, ObjectReader jsonReader) throws IOException {
+        this.format = format;
+        this.reader = new BufferedReader(reader);
+        this.jsonReader = jsonReader.forType(SolarPanel.class);
+        if (format == Format.CSV) {
+            readHeader();
+        }
+    }
+
+    /**
+     * @return The next row, or null at the end of the body.
+     */
+    Row read() throws IOException {
+        return format == Format.CSV ? readCsvRow() : readJsonRow();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void readHeader() throws IOException {
+        List<String> header = readRecord();
+        if (header == null) {
+            throw new IllegalArgumentException("CSV needs a header row.");
+        }
+        headerSize = header.size();
+        for (int i = 0; i < CSV_COLUMNS.length; i++) {
+            positions[i] = -1;
+            for (int j = 0; j < header.size(); j++) {
+                if (header.get(j).trim().equalsIgnoreCase(CSV_COLUMNS[i])) {
+                    positions[i] = j;
+                }
+            }
+            if (positions[i] < 0) {
+                throw new IllegalArgumentException(String.format("CSV header is missing `%s`.", CSV_COLUMNS[i]));
+            }
+        }
+    }
+
+    private Row readCsvRow() throws IOException {
+        List<String> record;
+        int first;
+        do {
+            first = line + 1;
+            record = readRecord();
+            if (record == null) {
+                return null;
+            }
+        } while (record.size() == 1 && record.get(0).isBlank());
+
+        List<String> errors = new ArrayList<>();
+        if (record.size() != headerSize) {
+            errors.add(String.format("Row has %s fields; the header has %s.", record.size(), headerSize));
+            return new Row(first, null, errors);
+        }
+
+        String section = record.get(positions[0]).trim();
+        int row = parseInt(record.get(positions[1]), "row", errors);
+        int column = parseInt(record.get(positions[2]), "column", errors);
+        int yearInstalled = parseInt(record.get(positions[3]), "yearInstalled", errors);
+        Material material = parseMaterial(record.get(positions[4]), errors);
+        boolean tracking = parseBoolean(record.get(positions[5]), errors);
+
+        if (!errors.isEmpty()) {
+            return new Row(first, null, errors);
+        }
+        return new Row(first, new SolarPanel(0, section, row, column, yearInstalled, material, tracking), errors);
+    }
+
+    private Row readJsonRow() throws IOException {
+        String text;
+        do {
+            text = reader.readLine();
+            if (text == null) {
+                return null;
+            }
+            line++;
+        } while (text.isBlank());
+
+        try {
+            return new Row(line, jsonReader.readValue(text), List.of());
+        } catch (JsonProcessingException ex) {
+            return new Row(line, null, List.of("Line isn't a solar panel: " + ex.getOriginalMessage()));
+        }
+    }
+
+    // Reads one CSV record, which can span lines inside quotes, or returns null at the end.
+    private List<String> readRecord() throws IOException {
+        int c = reader.read();
+        if (c < 0) {
+            return null;
+        }
+        line++;
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (c >= 0) {
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    if (reader.read() == '"') {
+                        field.append('"');
+                    } else {
+                        reader.reset();
+                        quoted = false;
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static int parseInt(String value, String name, List<String> errors) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            errors.add(String.format("SolarPanel `%s` must be a whole number.", name));
+            return 0;
+        }
+    }
+
+    private static Material parseMaterial(String value, List<String> errors) {
+        String text = value.trim();
+        for (Material material : Material.values()) {
+            if (material.name().equalsIgnoreCase(text)
+                    || material.getAbbreviation().equalsIgnoreCase(text)
+                    || material.getName().equalsIgnoreCase(text)) {
+                return material;
+            }
+        }
+        errors.add("SolarPanel `material` isn't a known material.");
+        return null;
+    }
+
+    private static boolean parseBoolean(String value, List<String> errors) {
+        String text = value.trim().toLowerCase(Locale.ROOT);
+        if (!text.equals("true") && !text.equals("false")) {
+            errors.add("SolarPanel `tracking` must be `true` or `false`.");
+        }
+        return text.equals("true");
+    }
+}
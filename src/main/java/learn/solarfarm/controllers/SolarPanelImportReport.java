@@ -0,0 +1,80 @@
+package learn.solarfarm.controllers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SolarPanelImportReport {
+    // Past this many, rejected rows are only counted.
+    static final int MAX_ERRORS = 1000;
+
+    public static class RowError {
+        private final int line;
+        private final List<String> messages;
+
+        public RowError(int line, List<String> messages) {
+            this.line = line;
+            this.messages = messages;
+        }
+
+        // The row's first line in the upload, counting the CSV header as line 1.
+        public int getLine() {
+            return line;
+        }
+
+        public List<String> getMessages() {
+            return messages;
+        }
+    }
+
+    private int rows;
+    private int imported;
+    private int rejected;
+    private final ArrayList<RowError> errors = new ArrayList<>();
+    private long elapsedMillis;
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getImported() {
+        return imported;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    public List<RowError> getErrors() {
+        return new ArrayList<>(errors);
+    }
+
+    // Rejected rows left out of `errors`.
+    public int getErrorsOmitted() {
+        return rejected - errors.size();
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public long getRowsPerSecond() {
+        return elapsedMillis == 0 ? rows : rows * 1000L / elapsedMillis;
+    }
+
+    void imported() {
+        rows++;
+        imported++;
+    }
+
+    void rejected(int line, List<String> messages) {
+        rows++;
+        rejected++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(new RowError(line, messages));
+        }
+    }
+
+    void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+}
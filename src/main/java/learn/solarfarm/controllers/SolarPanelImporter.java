@@ -0,0 +1,120 @@
+package learn.solarfarm.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import learn.solarfarm.data.DataAccessException;
+import learn.solarfarm.domain.Result;
+import learn.solarfarm.domain.SolarPanelService;
+import learn.solarfarm.models.SolarPanel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Imports an inventory upload a chunk of rows at a time. Each chunk goes
+ * through SolarPanelService.createAll, so it's validated with the same rules
+ * as any create and written as one batched multi-row insert. Rows already
+ * imported stay imported if a later chunk fails.
+ *
+ * Rows are counted as `solarfarm.import.rows`, tagged `result=imported` or
+ * `result=rejected`, so a dashboard can chart rows per second.
+ */
+@Component
+public class SolarPanelImporter {
+    public static final String TEXT_CSV_VALUE = "text/csv";
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType(TEXT_CSV_VALUE);
+
+    private final SolarPanelService service;
+    private final ObjectReader jsonReader;
+    private final int chunkSize;
+    private final Counter importedRows;
+    private final Counter rejectedRows;
+
+    public SolarPanelImporter(SolarPanelService service, ObjectMapper jsonMapper, MeterRegistry registry,
+                              @Value("${solarfarm.import.chunk-size:1000}") int chunkSize) {
+        this.service = service;
+        this.jsonReader = jsonMapper.reader();
+        this.chunkSize = chunkSize;
+        this.importedRows = Counter.builder("solarfarm.import.rows")
+                .description("Uploaded inventory rows")
+                .tag("result", "imported")
+                .register(registry);
+        this.rejectedRows = Counter.builder("solarfarm.import.rows")
+                .description("Uploaded inventory rows")
+                .tag("result", "rejected")
+                .register(registry);
+    }
+
+    /**
+     * Reads and imports every row of an upload.
+     * @param contentType `text/csv` or `application/x-ndjson`, with an optional charset (UTF-8 by default).
+     * @throws IllegalArgumentException if a CSV header is missing or incomplete.
+     */
+    public SolarPanelImportReport importAll(InputStream body, MediaType contentType)
+            throws IOException, DataAccessException {
+        SolarPanelImportReader.Format format = contentType.isCompatibleWith(TEXT_CSV)
+                ? SolarPanelImportReader.Format.CSV
+                : SolarPanelImportReader.Format.NDJSON;
+        Charset charset = contentType.getCharset() == null ? StandardCharsets.UTF_8 : contentType.getCharset();
+
+        long start = System.nanoTime();
+        SolarPanelImportReport report = new SolarPanelImportReport();
+        List<SolarPanelImportReader.Row> chunk = new ArrayList<>(chunkSize);
+
+        try (SolarPanelImportReader reader = new SolarPanelImportReader(format,
+                new InputStreamReader(body, charset), jsonReader)) {
+            SolarPanelImportReader.Row row;
+            while ((row = reader.read()) != null) {
+                chunk.add(row);
+                if (chunk.size() == chunkSize) {
+                    importChunk(chunk, report);
+                    chunk.clear();
+                }
+            }
+            importChunk(chunk, report);
+        } finally {
+            report.setElapsedMillis((System.nanoTime() - start) / 1_000_000);
+        }
+        return report;
+    }
+
+    // Rows that didn't parse are reported in place, so errors stay in line order.
+    private void importChunk(List<SolarPanelImportReader.Row> chunk, SolarPanelImportReport report)
+            throws DataAccessException {
+        List<SolarPanel> solarPanels = new ArrayList<>(chunk.size());
+        for (SolarPanelImportReader.Row row : chunk) {
+            if (row.getSolarPanel() != null) {
+                solarPanels.add(row.getSolarPanel());
+            }
+        }
+
+        List<Result<SolarPanel>> results = solarPanels.isEmpty() ? List.of() : service.createAll(solarPanels);
+
+        int next = 0;
+        for (SolarPanelImportReader.Row row : chunk) {
+            if (row.getSolarPanel() == null) {
+                report.rejected(row.getLine(), row.getErrors());
+                rejectedRows.increment();
+                continue;
+            }
+            Result<SolarPanel> result = results.get(next++);
+            if (result.isSuccess()) {
+                report.imported();
+                importedRows.increment();
+            } else {
+                report.rejected(row.getLine(), result.getMessages());
+                rejectedRows.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package learn.solarfarm.controllers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import learn.solarfarm.data.DataAccessException;
+import learn.solarfarm.data.SolarPanelReactiveRepository;
+import learn.solarfarm.domain.SolarPanelService;
+import learn.solarfarm.models.SolarPanel;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Newline-delimited JSON for clients that ask for `application/x-ndjson`,
+ * read through the `r2dbc` profile's reactive repository. Other clients
+ * still get SolarPanelController's JSON arrays from the same paths.
+ *
+ * Each response is written by one of Spring MVC's async threads
+ * (`spring.task.execution.pool.*`), which asks the driver for `PREFETCH`
+ * rows at a time and only asks for more as they're written. So a slow
+ * client holds back the query instead of filling memory.
+ */
+@RestController
+@CrossOrigin(origins = {"localhost:3000"})
+@Profile("r2dbc")
+@RequestMapping(path = "/solarpanels", produces = SolarPanelNdjsonController.APPLICATION_NDJSON_VALUE)
+public class SolarPanelNdjsonController {
+    // Spring 5.2 has no constant for it.
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    private static final int PREFETCH = 256;
+
+    private final SolarPanelReactiveRepository repository;
+    private final SolarPanelService service;
+    private final ObjectWriter writer;
+
+    public SolarPanelNdjsonController(SolarPanelReactiveRepository repository, SolarPanelService service,
+                                      ObjectMapper jsonMapper) {
+        this.repository = repository;
+        this.service = service;
+        // The response is flushed as its buffer fills, not after every row.
+        this.writer = jsonMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    // SolarPanelController's ETags with an `-ndjson` suffix, since these are different bytes.
+
+    @GetMapping
+    public ResponseEntity<StreamingResponseBody> findAll(WebRequest request) {
+        if (request.checkNotModified(eTag(service.getVersion()))) {
+            return null;
+        }
+        return ndjson(repository.findAll());
+    }
+
+    @GetMapping("/{section}")
+    public ResponseEntity<StreamingResponseBody> findBySection(@PathVariable String section, WebRequest request) {
+        if (request.checkNotModified(eTag(service.getSectionVersion(section)))) {
+            return null;
+        }
+        return ndjson(repository.findBySection(section));
+    }
+
+    private ResponseEntity<StreamingResponseBody> ndjson(Flux<SolarPanel> solarPanels) {
+        StreamingResponseBody body = out -> {
+            JsonGenerator generator = writer.getFactory().createGenerator(out);
+            // Rows are separated by the newlines below, not Jackson's default space.
+            generator.setRootValueSeparator(null);
+            // Closing the stream cancels the query if the client went away part way.
+            try (Stream<SolarPanel> rows = solarPanels.toStream(PREFETCH)) {
+                Iterator<SolarPanel> iterator = rows.iterator();
+                while (iterator.hasNext()) {
+                    writer.writeValue(generator, iterator.next());
+                    generator.writeRaw('\n');
+                }
+            } catch (RuntimeException ex) {
+                Throwable cause = Exceptions.unwrap(ex);
+                if (cause instanceof DataAccessException) {
+                    // The generator isn't closed, so the response isn't ended as if
+                    // the last row sent were the last row.
+                    throw new StreamAbortedException(cause);
+                }
+                throw ex;
+            }
+            generator.close();
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+                .body(body);
+    }
+
+    private static String eTag(long version) {
+        return "\"" + version + "-ndjson\"";
+    }
+}
@@ -0,0 +1,28 @@
+package learn.solarfarm.controllers;
+
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+
+import java.util.List;
+
+public class SolarPanelPage {
+    private final List<SolarPanel> solarPanels;
+    private final SolarPanelKey next;
+
+    public List<SolarPanel> getSolarPanels() {
+        return solarPanels;
+    }
+
+    // The key to pass back as `afterSection`, `afterRow`, and `afterColumn`
+    // to fetch the following page. Null when this is the last page.
+    public SolarPanelKey getNext() {
+        return next;
+    }
+
+    public SolarPanelPage(List<SolarPanel> solarPanels, int limit) {
+        this.solarPanels = solarPanels;
+        this.next = solarPanels.size() < limit
+                ? null
+                : solarPanels.get(solarPanels.size() - 1).getKey();
+    }
+}
@@ -0,0 +1,207 @@
+package learn.solarfarm.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import learn.solarfarm.domain.SolarPanelService;
+import learn.solarfarm.models.SolarPanel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialized JSON bodies for GET /solarpanels and GET /solarpanels/{section},
+ * each with a gzip-compressed copy, kept with the version they were read at.
+ * A body is only served while the service's version still matches, so every
+ * write through the service retires the bodies it touched. The next GET reads
+ * the section again and replaces it.
+ *
+ * A hit writes the cached bytes straight to the response, with no query,
+ * mapping, serialization, or compression. At most `max-sections` sections are
+ * kept besides the full list; when it's full, retired bodies are dropped, and
+ * if none are, a new section isn't cached. Lookups are counted as
+ * `solarfarm.response-cache.requests`, tagged `result=hit` or `result=miss`.
+ */
+@Component
+public class SolarPanelResponseCache {
+    // One response body, as JSON and gzipped JSON.
+    static class Body {
+        private final long version;
+        private final byte[] json;
+        private final byte[] gzip;
+
+        private Body(long version, byte[] json, byte[] gzip) {
+            this.version = version;
+            this.json = json;
+            this.gzip = gzip;
+        }
+
+        void writeTo(HttpServletResponse response, boolean gzipped) throws IOException {
+            byte[] bytes = gzipped ? gzip : json;
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setContentLength(bytes.length);
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (gzipped) {
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+            response.getOutputStream().write(bytes);
+        }
+
+        ResponseEntity<byte[]> toResponseEntity(boolean gzipped) {
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (gzipped) {
+                builder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+            return builder.body(gzipped ? gzip : json);
+        }
+    }
+
+    private final SolarPanelService service;
+    private final ObjectWriter writer;
+    private final int maxSections;
+    private final Counter hits;
+    private final Counter misses;
+
+    // Keyed by lower-case section, since sections match case-insensitively.
+    private final ConcurrentHashMap<String, Body> sections = new ConcurrentHashMap<>();
+    private volatile Body all;
+
+    public SolarPanelResponseCache(SolarPanelService service, ObjectMapper jsonMapper, MeterRegistry registry,
+                                   @Value("${solarfarm.response-cache.max-sections:1000}") int maxSections) {
+        this.service = service;
+        this.writer = jsonMapper.writer();
+        this.maxSections = maxSections;
+        this.hits = Counter.builder("solarfarm.response-cache.requests")
+                .description("GETs answered from or missing the response cache")
+                .tag("result", "hit")
+                .register(registry);
+        this.misses = Counter.builder("solarfarm.response-cache.requests")
+                .description("GETs answered from or missing the response cache")
+                .tag("result", "miss")
+                .register(registry);
+        Gauge.builder("solarfarm.response-cache.sections", sections, ConcurrentHashMap::size)
+                .description("Sections with a cached response body")
+                .register(registry);
+    }
+
+    /**
+     * @return The full list's body if it was read at `version`, or null.
+     */
+    Body getAll(long version) {
+        return count(matching(all, version));
+    }
+
+    /**
+     * @return The section's body if it was read at `version`, or null.
+     */
+    Body getSection(String section, long version) {
+        return count(matching(sections.get(normalize(section)), version));
+    }
+
+    /**
+     * Serializes and caches the full list.
+     * @param version The table version, read before the list was.
+     */
+    Body putAll(long version, List<SolarPanel> solarPanels) {
+        Body body = serialize(version, solarPanels);
+        synchronized (this) {
+            // A slower read of an older version mustn't replace a newer one.
+            if (all == null || all.version <= version) {
+                all = body;
+            }
+        }
+        return body;
+    }
+
+    /**
+     * Serializes and caches one section.
+     * @param version The section's version, read before its solar panels were.
+     */
+    Body putSection(String section, long version, List<SolarPanel> solarPanels) {
+        Body body = serialize(version, solarPanels);
+        String key = normalize(section);
+        if (!sections.containsKey(key) && sections.size() >= maxSections) {
+            sections.entrySet().removeIf(entry ->
+                    entry.getValue().version != service.getSectionVersion(entry.getKey()));
+            if (sections.size() >= maxSections) {
+                return body;
+            }
+        }
+        sections.merge(key, body, (cached, read) -> cached.version <= read.version ? read : cached);
+        return body;
+    }
+
+    void clear() {
+        all = null;
+        sections.clear();
+    }
+
+    /**
+     * @param acceptEncoding An Accept-Encoding header, or null.
+     * @return Whether it lists gzip without `q=0`.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            if (!parts[0].trim().equalsIgnoreCase("gzip")) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(parameter.substring(2)) > 0;
+                    } catch (NumberFormatException ex) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private Body count(Body body) {
+        (body == null ? misses : hits).increment();
+        return body;
+    }
+
+    private Body serialize(long version, List<SolarPanel> solarPanels) {
+        try {
+            byte[] json = writer.writeValueAsBytes(solarPanels);
+            ByteArrayOutputStream gzip = new ByteArrayOutputStream(json.length / 4 + 64);
+            try (GZIPOutputStream out = new GZIPOutputStream(gzip)) {
+                out.write(json);
+            }
+            return new Body(version, json, gzip.toByteArray());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static Body matching(Body body, long version) {
+        return body != null && body.version == version ? body : null;
+    }
+
+    private static String normalize(String section) {
+        return section == null ? "" : section.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,14 @@
+package learn.solarfarm.controllers;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a streamed response fails part way. If any of the body has been
+ * sent, the response is aborted rather than ended, so the client sees a broken
+ * transfer instead of a body that looks complete.
+ */
+public class StreamAbortedException extends IOException {
+    public StreamAbortedException(Throwable cause) {
+        super("The response failed part way through.", cause);
+    }
+}
@@ -0,0 +1,19 @@
+package learn.solarfarm.controllers;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ModelAttribute;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Both controllers answer the same paths in several media types, chosen by
+ * the Accept header, so every response says so for shared caches.
+ */
+@ControllerAdvice(assignableTypes = {SolarPanelController.class, SolarPanelNdjsonController.class})
+public class VaryByAcceptAdvice {
+    @ModelAttribute
+    public void varyByAccept(HttpServletResponse response) {
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+    }
+}
@@ -0,0 +1,26 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.SolarPanelKey;
+
+/**
+ * Thrown when a write would give two solar panels the same section, row, and column.
+ * The unique index on solar_panel is what detects it, so there's no read before the write.
+ */
+public class DuplicateSolarPanelKeyException extends DataAccessException {
+    private final SolarPanelKey key;
+
+    public DuplicateSolarPanelKeyException(SolarPanelKey key, Throwable cause) {
+        super(String.format("SolarPanel %s already exists.", key), cause);
+        this.key = key;
+    }
+
+    public DuplicateSolarPanelKeyException(String message, Throwable cause) {
+        super(message, cause);
+        this.key = null;
+    }
+
+    // Null when the conflict came from a batch and the offending row isn't known.
+    public SolarPanelKey getKey() {
+        return key;
+    }
+}
@@ -0,0 +1,367 @@
+package learn.solarfarm.data;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hedged reads, on with `solarfarm.hedging.enabled=true`. A read that's still
+ * running after the `percentile`th percentile of its operation's recent reads
+ * gets a duplicate on another pooled connection, or under the `replicas`
+ * profile on the next-fastest replica. The first answer wins and the other
+ * query is cancelled with Statement.cancel.
+ *
+ * Hedges are paid for out of a budget that each read adds `budget-percent`
+ * of a hedge to, so they stay that share of reads however slow the database
+ * gets, and at most `max-in-flight` run at once. DatabaseExecutor keeps
+ * `max-in-flight` connections of `maximum-pool-size` free for them, so a
+ * hedge gets a connection at once rather than waiting behind queued requests.
+ *
+ * Metrics, tagged by operation: `solarfarm.hedging.reads`, `.hedges` tagged
+ * `outcome=won` when the hedge answered first and `lost` otherwise, `.skipped`
+ * for hedges the budget or `max-in-flight` turned down, and `.threshold`.
+ */
+@Component
+public class ReadHedger {
+    @FunctionalInterface
+    interface Query<T> {
+        T run(Attempt attempt) throws DataAccessException;
+    }
+
+    /**
+     * One of a read's queries. The query reports its statement through
+     * started, so the losing query can be cancelled.
+     */
+    static class Attempt {
+        // For reads that aren't hedged.
+        static final Attempt UNTRACKED = new Attempt() {
+            @Override
+            void started(Statement statement) {
+            }
+        };
+
+        // Both guarded by this, so a cancel can't reach a statement after its query is done.
+        private Statement statement;
+        private boolean finished;
+
+        /**
+         * @throws SQLException if the attempt was cancelled before its query started.
+         */
+        synchronized void started(Statement statement) throws SQLException {
+            if (finished) {
+                throw new SQLException("The read was answered by its other query.");
+            }
+            this.statement = statement;
+        }
+
+        synchronized void finish() {
+            finished = true;
+            statement = null;
+        }
+
+        synchronized void cancel() {
+            if (!finished && statement != null) {
+                try {
+                    statement.cancel();
+                } catch (SQLException ignored) {
+                    // The query's finishing anyway; it'll be ignored.
+                }
+            }
+            finish();
+        }
+    }
+
+    // A read doesn't hedge until its operation has this many samples.
+    static final int MIN_SAMPLES = 64;
+    private static final int WINDOW = 1024;
+    // In thousandths of a hedge. The budget starts full, at this many hedges.
+    private static final long MAX_TOKENS = 10_000;
+    private static final long HEDGE_COST = 1_000;
+
+    private final boolean enabled;
+    private final double percentile;
+    private final long tokensPerRead;
+    private final MeterRegistry registry;
+    private final AtomicLong tokens = new AtomicLong(MAX_TOKENS);
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+
+    // Null when disabled.
+    private final ScheduledThreadPoolExecutor timer;
+    private final ExecutorService hedges;
+    private final ExecutorService cancels;
+
+    @Autowired
+    public ReadHedger(MeterRegistry registry,
+                      @Value("${solarfarm.hedging.enabled:false}") boolean enabled,
+                      @Value("${solarfarm.hedging.percentile:95}") double percentile,
+                      @Value("${solarfarm.hedging.budget-percent:5}") double budgetPercent,
+                      @Value("${solarfarm.hedging.max-in-flight:2}") int maxInFlight) {
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.tokensPerRead = Math.round(budgetPercent * HEDGE_COST / 100);
+        this.registry = registry;
+        if (!enabled) {
+            this.timer = null;
+            this.hedges = null;
+            this.cancels = null;
+            return;
+        }
+
+        this.timer = new ScheduledThreadPoolExecutor(1, daemon("solarfarm-hedge-timer"));
+        this.timer.setRemoveOnCancelPolicy(true);
+        this.hedges = new ThreadPoolExecutor(0, maxInFlight, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), daemon("solarfarm-hedge"), new ThreadPoolExecutor.AbortPolicy());
+        // Connector/J cancels over a connection of its own, so it's kept off the other threads.
+        this.cancels = Executors.newSingleThreadExecutor(daemon("solarfarm-hedge-cancel"));
+    }
+
+    /**
+     * @return A hedger that runs every read as it is.
+     */
+    static ReadHedger disabled() {
+        return new ReadHedger(null, false, 0, 0, 0);
+    }
+
+    /**
+     * Runs a read, hedging it if it's slow.
+     * @param operation Names the read for its latencies and metrics.
+     * @param query Runs once on the calling thread, and may run again for a hedge on another.
+     */
+    <T> T read(String operation, Query<T> query) throws DataAccessException {
+        if (!enabled) {
+            return query.run(Attempt.UNTRACKED);
+        }
+
+        Operation op = operations.computeIfAbsent(operation, Operation::new);
+        op.reads.increment();
+        tokens.accumulateAndGet(tokensPerRead, (current, added) -> Math.min(MAX_TOKENS, current + added));
+
+        Race<T> race = new Race<>(op, query, ReadRouting.getWrittenAt());
+        long threshold = op.thresholdNanos;
+        ScheduledFuture<?> hedge = threshold < 0 ? null
+                : timer.schedule(race::hedge, threshold, TimeUnit.NANOSECONDS);
+
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = query.run(race.first);
+        } catch (DataAccessException | RuntimeException ex) {
+            race.first.finish();
+            op.record(System.nanoTime() - start);
+            if (race.finish(hedge) || !race.awaitHedge()) {
+                throw ex;
+            }
+            return race.hedged.join();
+        }
+        race.first.finish();
+        op.record(System.nanoTime() - start);
+
+        if (race.finish(hedge)) {
+            return result;
+        }
+        if (race.winner.complete(result)) {
+            op.lost.increment();
+            cancels.execute(race.second::cancel);
+            return result;
+        }
+        // The hedge won; both have the same answer.
+        return race.winner.join();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (enabled) {
+            timer.shutdownNow();
+            hedges.shutdownNow();
+            cancels.shutdown();
+        }
+    }
+
+    private class Race<T> {
+        private static final int RACING = 0;
+        private static final int HEDGING = 1;
+        private static final int DONE = 2;
+
+        private final Operation op;
+        private final Query<T> query;
+        private final long writtenAt;
+        private final AtomicInteger state = new AtomicInteger(RACING);
+        private final Attempt first = new Attempt();
+        private final Attempt second = new Attempt();
+        private final CompletableFuture<T> winner = new CompletableFuture<>();
+        // The hedge's own answer or failure, whichever query won.
+        private final CompletableFuture<T> hedged = new CompletableFuture<>();
+
+        Race(Operation op, Query<T> query, long writtenAt) {
+            this.op = op;
+            this.query = query;
+            this.writtenAt = writtenAt;
+        }
+
+        // On the timer thread.
+        void hedge() {
+            if (state.get() != RACING) {
+                return;
+            }
+            if (!spend()) {
+                op.skipped.increment();
+                return;
+            }
+            try {
+                hedges.execute(this::runHedge);
+            } catch (RejectedExecutionException ex) {
+                refund();
+                op.skipped.increment();
+            }
+        }
+
+        private void runHedge() {
+            if (!state.compareAndSet(RACING, HEDGING)) {
+                // The first query finished while this was being handed over.
+                refund();
+                return;
+            }
+            try {
+                T result = ReadRouting.hedge(writtenAt, () -> query.run(second));
+                second.finish();
+                if (winner.complete(result)) {
+                    op.won.increment();
+                    cancels.execute(first::cancel);
+                }
+                hedged.complete(result);
+            } catch (DataAccessException | RuntimeException ex) {
+                second.finish();
+                hedged.completeExceptionally(ex);
+            }
+        }
+
+        /**
+         * Called once the first query is done.
+         * @return Whether no hedge was started, so the first query's outcome stands.
+         */
+        boolean finish(ScheduledFuture<?> timer) {
+            if (state.compareAndSet(RACING, DONE)) {
+                if (timer != null) {
+                    timer.cancel(false);
+                }
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Waits for the hedge after the first query failed, maybe because the
+         * hedge won and cancelled it.
+         * @return Whether the hedge has an answer.
+         */
+        boolean awaitHedge() {
+            try {
+                hedged.get();
+                return true;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                cancels.execute(second::cancel);
+            } catch (ExecutionException ex) {
+                op.lost.increment();
+            }
+            return false;
+        }
+    }
+
+    private final class Operation {
+        private final Counter reads;
+        private final Counter won;
+        private final Counter lost;
+        private final Counter skipped;
+
+        // Nanoseconds, or -1 until there are enough samples.
+        private volatile long thresholdNanos = -1;
+        // Guarded by this.
+        private final long[] samples = new long[WINDOW];
+        private long count;
+
+        Operation(String name) {
+            this.reads = Counter.builder("solarfarm.hedging.reads")
+                    .description("Reads that could be hedged")
+                    .tag("operation", name)
+                    .register(registry);
+            this.won = Counter.builder("solarfarm.hedging.hedges")
+                    .description("Hedged reads")
+                    .tag("operation", name)
+                    .tag("outcome", "won")
+                    .register(registry);
+            this.lost = Counter.builder("solarfarm.hedging.hedges")
+                    .description("Hedged reads")
+                    .tag("operation", name)
+                    .tag("outcome", "lost")
+                    .register(registry);
+            this.skipped = Counter.builder("solarfarm.hedging.skipped")
+                    .description("Hedges not started because of the budget or max-in-flight")
+                    .tag("operation", name)
+                    .register(registry);
+            Gauge.builder("solarfarm.hedging.threshold", this,
+                    op -> op.thresholdNanos < 0 ? Double.NaN : op.thresholdNanos / 1e6)
+                    .description("How long a read runs before it's hedged")
+                    .baseUnit("milliseconds")
+                    .tag("operation", name)
+                    .register(registry);
+        }
+
+        synchronized void record(long nanos) {
+            samples[(int) (count++ % WINDOW)] = nanos;
+            if (count % MIN_SAMPLES == 0) {
+                long[] sorted = Arrays.copyOf(samples, (int) Math.min(count, WINDOW));
+                Arrays.sort(sorted);
+                int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+                thresholdNanos = sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+            }
+        }
+    }
+
+    private boolean spend() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < HEDGE_COST) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - HEDGE_COST));
+        return true;
+    }
+
+    private void refund() {
+        tokens.accumulateAndGet(HEDGE_COST, (current, added) -> Math.min(MAX_TOKENS, current + added));
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
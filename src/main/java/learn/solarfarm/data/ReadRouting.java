@@ -0,0 +1,72 @@
+package learn.solarfarm.data;
+
+/**
+ * Marks the reads that may be answered by a read replica under the `replicas`
+ * profile. Everything else, including reads made in the middle of a write,
+ * like duplicate-key and existence checks, goes to the primary.
+ *
+ * Without the `replicas` profile there's only the primary, and this does nothing.
+ */
+public final class ReadRouting {
+    @FunctionalInterface
+    public interface Read<T> {
+        T read() throws DataAccessException;
+    }
+
+    // The client's last write time for a replica read on this thread; unset for the primary.
+    private static final ThreadLocal<Long> WRITTEN_AT = new ThreadLocal<>();
+    // Set on a ReadHedger thread while it runs a duplicate of a slow read.
+    private static final ThreadLocal<Boolean> HEDGE = new ThreadLocal<>();
+
+    private ReadRouting() {
+    }
+
+    /**
+     * Runs a read that may go to a replica.
+     * @param writtenAt When the client last wrote, in epoch milliseconds, or 0.
+     *                  Only replicas that have caught up past it are used.
+     */
+    public static <T> T fromReplica(long writtenAt, Read<T> read) throws DataAccessException {
+        Long outer = WRITTEN_AT.get();
+        WRITTEN_AT.set(outer == null ? writtenAt : Math.max(outer, writtenAt));
+        try {
+            return read.read();
+        } finally {
+            if (outer == null) {
+                WRITTEN_AT.remove();
+            } else {
+                WRITTEN_AT.set(outer);
+            }
+        }
+    }
+
+    /**
+     * Runs a hedge of a read on another thread, routed like the read but
+     * preferring a different replica than the read's.
+     * @param writtenAt The read's getWrittenAt.
+     */
+    static <T> T hedge(long writtenAt, Read<T> read) throws DataAccessException {
+        if (writtenAt < 0) {
+            return read.read();
+        }
+        HEDGE.set(true);
+        try {
+            return fromReplica(writtenAt, read);
+        } finally {
+            HEDGE.remove();
+        }
+    }
+
+    /**
+     * @return The client's last write time if this thread is in a replica
+     * read, or -1 if it has to use the primary.
+     */
+    static long getWrittenAt() {
+        Long writtenAt = WRITTEN_AT.get();
+        return writtenAt == null ? -1 : writtenAt;
+    }
+
+    static boolean isHedge() {
+        return HEDGE.get() != null;
+    }
+}
@@ -0,0 +1,389 @@
+package learn.solarfarm.data;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * The `replicas` profile's DataSource. Reads inside ReadRouting.fromReplica go
+ * to the read replica with the lowest measured latency, among those that are
+ * within `maxLagMillis` of the primary and have caught up past both this
+ * app's last write and the client's. When none qualify, and for everything
+ * else, connections come from the primary.
+ *
+ * A ReadHedger duplicate of a slow read goes to the next fastest instead, or
+ * to the primary if there's no other.
+ *
+ * Lag is measured with a heartbeat. Every probe writes the current time to
+ * this instance's own `replica_heartbeat` row on the primary, then reads it
+ * back from each replica, timing the round trip. The row is keyed by an id
+ * picked at startup, so its times and `lastWrite` both come from this
+ * instance's clock: another instance's clock running ahead can't make a
+ * replica look caught up to a write it hasn't applied. A replica that has the heartbeat written at time T
+ * has every write committed before T, as long as it applies transactions in
+ * commit order (MySQL's `replica_preserve_commit_order`). So right after a
+ * write, reads stay on the primary until the next heartbeat reaches a replica.
+ * That's what keeps the service's versions, ETags, and caches honest: a read
+ * after a write never comes from a replica that hasn't seen the write yet.
+ *
+ * Client write times come from other app instances' clocks, so clock skew
+ * between instances loosens the client guarantee by that much.
+ *
+ * Reads are counted as `solarfarm.replicas.reads`, tagged with the pool that
+ * answered them. Each replica's lag and probe latency are published as
+ * `solarfarm.replicas.lag` and `solarfarm.replicas.latency`.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    static final String WRITE_HEARTBEAT_SQL =
+            "update replica_heartbeat set beat = ? where instance_id = ?;";
+    static final String INSERT_HEARTBEAT_SQL =
+            "insert into replica_heartbeat (instance_id, beat) values (?, ?);";
+    static final String READ_HEARTBEAT_SQL =
+            "select beat from replica_heartbeat where instance_id = ?;";
+    static final String DELETE_HEARTBEAT_SQL =
+            "delete from replica_heartbeat where instance_id = ?;";
+
+    static class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private final Counter reads;
+
+        // Written by the probe thread, read by every reader.
+        private volatile boolean probed;
+        private volatile boolean healthy;
+        // The newest heartbeat seen on the replica, in epoch milliseconds.
+        private volatile long caughtUpTo = -1;
+        private volatile long lagMillis = Long.MAX_VALUE;
+        // A moving average of probe round trips.
+        private volatile long latencyMicros = Long.MAX_VALUE;
+
+        Replica(String name, DataSource dataSource, MeterRegistry registry) {
+            this.name = name;
+            this.dataSource = dataSource;
+            this.reads = readCounter(registry, name);
+            Gauge.builder("solarfarm.replicas.lag", this, replica -> replica.healthy ? replica.lagMillis : Double.NaN)
+                    .description("How far the replica was behind the primary at the last probe")
+                    .baseUnit("milliseconds")
+                    .tag("pool", name)
+                    .register(registry);
+            Gauge.builder("solarfarm.replicas.latency", this, replica -> replica.healthy ? replica.latencyMicros : Double.NaN)
+                    .description("Moving average of heartbeat read round trips")
+                    .baseUnit("microseconds")
+                    .tag("pool", name)
+                    .register(registry);
+        }
+
+        String getName() {
+            return name;
+        }
+
+        void observe(long beat, long lagMillis, long latencyMicros) {
+            this.caughtUpTo = Math.max(caughtUpTo, beat);
+            this.lagMillis = lagMillis;
+            this.latencyMicros = this.latencyMicros == Long.MAX_VALUE
+                    ? latencyMicros
+                    : (this.latencyMicros * 7 + latencyMicros) / 8;
+            this.healthy = true;
+            this.probed = true;
+        }
+
+        /**
+         * @return Whether that's news: it was healthy or hadn't been probed yet.
+         */
+        boolean failed() {
+            boolean news = healthy || !probed;
+            this.healthy = false;
+            this.probed = true;
+            return news;
+        }
+    }
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final long maxLagMillis;
+    private final LongSupplier clock;
+    private final Counter primaryReads;
+    private final ScheduledExecutorService prober;
+    // This instance's heartbeat row. A fresh one each start, so no other
+    // instance, or earlier run with a clock since set back, shares it.
+    private final String instanceId = UUID.randomUUID().toString();
+
+    // When a connection this app wrote on last went back to the pool.
+    private final AtomicLong lastWrite;
+    // Only touched by the probe, to log each outage once.
+    private boolean heartbeatWritten = true;
+    // Also only touched by the probe: when the row was first written, or -1 before then.
+    private long firstBeat = -1;
+
+    /**
+     * @param replicas One pool per replica by name, in preference order for ties.
+     * @param probeIntervalMillis How often to write and read the heartbeat, or 0 to only probe on request.
+     */
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, ? extends DataSource> replicas,
+                                    long maxLagMillis, long probeIntervalMillis, MeterRegistry registry) {
+        this(primary, replicas, maxLagMillis, probeIntervalMillis, registry, System::currentTimeMillis);
+    }
+
+    ReplicaRoutingDataSource(DataSource primary, Map<String, ? extends DataSource> replicas,
+                             long maxLagMillis, long probeIntervalMillis, MeterRegistry registry, LongSupplier clock) {
+        this.primary = primary;
+        this.maxLagMillis = maxLagMillis;
+        this.clock = clock;
+        // Anything written before startup needs a heartbeat from after it.
+        this.lastWrite = new AtomicLong(clock.getAsLong());
+        this.primaryReads = readCounter(registry, "primary");
+
+        List<Replica> list = new ArrayList<>();
+        replicas.forEach((name, dataSource) -> list.add(new Replica(name, dataSource, registry)));
+        this.replicas = List.copyOf(list);
+
+        if (probeIntervalMillis > 0 && !replicas.isEmpty()) {
+            prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "solarfarm-replica-probe");
+                thread.setDaemon(true);
+                return thread;
+            });
+            prober.scheduleWithFixedDelay(this::probe, 0, probeIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            prober = null;
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long writtenAt = ReadRouting.getWrittenAt();
+        if (writtenAt >= 0) {
+            Replica replica = choose(writtenAt, ReadRouting.isHedge());
+            if (replica != null) {
+                replica.reads.increment();
+                return replica.dataSource.getConnection();
+            }
+            primaryReads.increment();
+            return primary.getConnection();
+        }
+        return trackWrites(primary.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return trackWrites(primary.getConnection(username, password));
+    }
+
+    /**
+     * Writes a heartbeat to the primary, then reads it back from every replica.
+     */
+    void probe() {
+        long beat = clock.getAsLong();
+        try (Connection connection = primary.getConnection()) {
+            writeHeartbeat(connection, beat);
+        } catch (SQLException ex) {
+            if (heartbeatWritten) {
+                logger.warn("Could not write the replica heartbeat; reads stay on the primary until it's written.", ex);
+            }
+            heartbeatWritten = false;
+            replicas.forEach(Replica::failed);
+            return;
+        }
+        heartbeatWritten = true;
+        if (firstBeat < 0) {
+            firstBeat = beat;
+        }
+
+        for (Replica replica : replicas) {
+            long start = System.nanoTime();
+            try (Connection connection = replica.dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(READ_HEARTBEAT_SQL)) {
+                statement.setString(1, instanceId);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    // Until the row itself replicates, the replica is behind every heartbeat.
+                    long seen = resultSet.next() ? resultSet.getLong(1) : -1;
+                    long latencyMicros = (System.nanoTime() - start) / 1000;
+                    long lagMillis = clock.getAsLong() - (seen < 0 ? firstBeat : seen);
+                    replica.observe(seen, Math.max(0, lagMillis), latencyMicros);
+                }
+            } catch (SQLException ex) {
+                if (replica.failed()) {
+                    logger.warn("Replica {} failed its probe and won't be read from until it passes one.",
+                            replica.name, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param hedge Whether this is a ReadHedger duplicate of a read that went to
+     *              the fastest, so it should go to the next fastest instead.
+     * @return The fastest replica that can answer a read for a client that
+     * last wrote at `writtenAt`, or null for the primary.
+     */
+    Replica choose(long writtenAt, boolean hedge) {
+        long required = Math.max(lastWrite.get(), writtenAt);
+        Replica best = null;
+        Replica next = null;
+        for (Replica replica : replicas) {
+            // Strictly after: a heartbeat from the same millisecond may predate the write.
+            if (!replica.healthy || replica.lagMillis > maxLagMillis || replica.caughtUpTo <= required) {
+                continue;
+            }
+            if (best == null || replica.latencyMicros < best.latencyMicros) {
+                next = best;
+                best = replica;
+            } else if (next == null || replica.latencyMicros < next.latencyMicros) {
+                next = replica;
+            }
+        }
+        // With only one replica to use, a hedge goes to the primary.
+        return hedge && best != null ? next : best;
+    }
+
+    List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    String getInstanceId() {
+        return instanceId;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (prober != null) {
+            prober.shutdownNow();
+        }
+        if (firstBeat >= 0) {
+            deleteHeartbeat();
+        }
+        for (Replica replica : replicas) {
+            close(replica.dataSource);
+        }
+        close(primary);
+    }
+
+    private void writeHeartbeat(Connection connection, long beat) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(WRITE_HEARTBEAT_SQL)) {
+            statement.setLong(1, beat);
+            statement.setString(2, instanceId);
+            if (statement.executeUpdate() > 0) {
+                return;
+            }
+        }
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_HEARTBEAT_SQL)) {
+            statement.setString(1, instanceId);
+            statement.setLong(2, beat);
+            statement.executeUpdate();
+        }
+    }
+
+    // Leaves no row behind for the instances that come after.
+    private void deleteHeartbeat() {
+        try (Connection connection = primary.getConnection();
+             PreparedStatement statement = connection.prepareStatement(DELETE_HEARTBEAT_SQL)) {
+            statement.setString(1, instanceId);
+            statement.executeUpdate();
+        } catch (SQLException ex) {
+            logger.warn("Could not delete replica heartbeat {}.", instanceId, ex);
+        }
+    }
+
+    private static void close(DataSource dataSource) throws IOException {
+        if (dataSource instanceof Closeable) {
+            ((Closeable) dataSource).close();
+        }
+    }
+
+    // Records when a primary connection that wrote goes back to the pool, which
+    // is after its writes have committed. Reads on the primary don't count, or
+    // steady unrouted traffic would keep every replica behind the watermark.
+    private Connection trackWrites(Connection connection) {
+        AtomicBoolean wrote = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "close":
+                            if (wrote.get()) {
+                                lastWrite.accumulateAndGet(clock.getAsLong(), Math::max);
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                    Object result = invoke(connection, method, args);
+                    if (result instanceof Statement && method.getReturnType().isInterface()) {
+                        return trackWrites((Statement) result, method.getReturnType(), wrote);
+                    }
+                    return result;
+                });
+    }
+
+    // Marks `wrote` when a statement runs an update, or anything that isn't a query.
+    private static Object trackWrites(Statement statement, Class<?> type, AtomicBoolean wrote) {
+        return Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "executeUpdate":
+                        case "executeLargeUpdate":
+                        case "executeBatch":
+                        case "executeLargeBatch":
+                            wrote.set(true);
+                            break;
+                        default:
+                            break;
+                    }
+                    Object result = invoke(statement, method, args);
+                    // execute is false when there's an update count instead of a result set.
+                    if (method.getName().equals("execute") && Boolean.FALSE.equals(result)) {
+                        wrote.set(true);
+                    }
+                    return result;
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private static Counter readCounter(MeterRegistry registry, String pool) {
+        return Counter.builder("solarfarm.replicas.reads")
+                .description("Reads that could go to a replica, by the pool that answered them")
+                .tag("pool", pool)
+                .register(registry);
+    }
+}
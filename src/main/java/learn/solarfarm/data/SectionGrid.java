@@ -0,0 +1,99 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.domain.SolarPanelService;
+
+import java.util.function.IntConsumer;
+
+/**
+ * One section laid out as a dense MAX_ROW_COLUMN x MAX_ROW_COLUMN grid: a
+ * bitset of occupied cells and the slot stored in each cell. A key lookup is
+ * a single array access, and a rectangle is scanned row by row, 64 cells per
+ * bitset word. About 250 KB per section. Not thread-safe.
+ */
+class SectionGrid {
+    static final int SIZE = SolarPanelService.MAX_ROW_COLUMN;
+
+    private final long[] occupied = new long[(SIZE * SIZE + 63) / 64];
+    // Only meaningful where the cell's bit is set.
+    private final int[] slots = new int[SIZE * SIZE];
+    private int count;
+
+    static boolean contains(int row, int column) {
+        return row >= 1 && row <= SIZE && column >= 1 && column <= SIZE;
+    }
+
+    int get(int row, int column) {
+        int cell = cell(row, column);
+        return isOccupied(cell) ? slots[cell] : LongIntHashMap.MISSING;
+    }
+
+    void put(int row, int column, int slot) {
+        int cell = cell(row, column);
+        if (!isOccupied(cell)) {
+            occupied[cell >>> 6] |= 1L << cell;
+            count++;
+        }
+        slots[cell] = slot;
+    }
+
+    void remove(int row, int column) {
+        int cell = cell(row, column);
+        if (isOccupied(cell)) {
+            occupied[cell >>> 6] &= ~(1L << cell);
+            count--;
+        }
+    }
+
+    int count() {
+        return count;
+    }
+
+    /**
+     * Passes the slot of every occupied cell in the rectangle, in row, column
+     * order. Bounds are inclusive and clamped to the grid.
+     */
+    void forEachInRange(int minRow, int maxRow, int minColumn, int maxColumn, IntConsumer consumer) {
+        minRow = Math.max(minRow, 1);
+        maxRow = Math.min(maxRow, SIZE);
+        minColumn = Math.max(minColumn, 1);
+        maxColumn = Math.min(maxColumn, SIZE);
+        if (minColumn > maxColumn) {
+            return;
+        }
+
+        for (int row = minRow; row <= maxRow; row++) {
+            int end = cell(row, maxColumn) + 1;
+            for (int cell = nextOccupied(cell(row, minColumn), end); cell >= 0; cell = nextOccupied(cell + 1, end)) {
+                consumer.accept(slots[cell]);
+            }
+        }
+    }
+
+    // The first occupied cell in [from, end), or -1.
+    private int nextOccupied(int from, int end) {
+        if (from >= end) {
+            return -1;
+        }
+
+        int wordIndex = from >>> 6;
+        long word = occupied[wordIndex] & (-1L << from);
+        while (word == 0) {
+            wordIndex++;
+            if (wordIndex << 6 >= end) {
+                return -1;
+            }
+            word = occupied[wordIndex];
+        }
+
+        int cell = (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+        return cell < end ? cell : -1;
+    }
+
+    private boolean isOccupied(int cell) {
+        return (occupied[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    private static int cell(int row, int column) {
+        return (row - 1) * SIZE + (column - 1);
+    }
+}
@@ -0,0 +1,303 @@
+package learn.solarfarm.data;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Read-through cache that sits in front of the active repository (enable it
+ * alongside the data profile, e.g. `jdbc-template,cache`).
+ *
+ * Single panels are cached by key and panel lists by section. Writes invalidate
+ * every entry they could have changed. A generation counter stops a read that
+ * started before a write from re-populating the cache with stale rows.
+ */
+@Repository
+@Primary
+@Profile("cache")
+public class SolarPanelCachingRepository implements SolarPanelRepository, MeterBinder {
+    private final SolarPanelRepository delegate;
+    private final LruCache<SolarPanelKey, SolarPanel> byKey;
+    private final LruCache<String, List<SolarPanel>> bySection;
+
+    private long generation;
+
+    // Spring excludes this bean from its own candidates, so `delegate` is the data profile's repository.
+    @Autowired
+    public SolarPanelCachingRepository(SolarPanelRepository delegate,
+                                       @Value("${solarfarm.cache.max-panels:10000}") int maxPanels,
+                                       @Value("${solarfarm.cache.max-sections:100}") int maxSections,
+                                       @Value("${solarfarm.cache.ttl-seconds:300}") long ttlSeconds) {
+        this(delegate,
+                new LruCache<>(maxPanels, ttlSeconds, TimeUnit.SECONDS),
+                new LruCache<>(maxSections, ttlSeconds, TimeUnit.SECONDS));
+    }
+
+    SolarPanelCachingRepository(SolarPanelRepository delegate,
+                                LruCache<SolarPanelKey, SolarPanel> byKey,
+                                LruCache<String, List<SolarPanel>> bySection) {
+        this.delegate = delegate;
+        this.byKey = byKey;
+        this.bySection = bySection;
+    }
+
+    @Override
+    public List<SolarPanel> findAll() throws DataAccessException {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<SolarPanel> findPage(SolarPanelKey after, int limit) throws DataAccessException {
+        return delegate.findPage(after, limit);
+    }
+
+    @Override
+    public void streamAll(Consumer<SolarPanel> consumer) throws DataAccessException {
+        delegate.streamAll(consumer);
+    }
+
+    @Override
+    public List<SolarPanel> findBySection(String section) throws DataAccessException {
+        if (section == null) {
+            return delegate.findBySection(null);
+        }
+
+        String sectionKey = toSectionKey(section);
+        List<SolarPanel> cached = bySection.get(sectionKey);
+        if (cached != null) {
+            return copyOf(cached);
+        }
+
+        long readGeneration = getGeneration();
+        List<SolarPanel> solarPanels = delegate.findBySection(section);
+        synchronized (this) {
+            if (readGeneration == generation) {
+                bySection.put(sectionKey, copyOf(solarPanels));
+            }
+        }
+        return solarPanels;
+    }
+
+    @Override
+    public List<SolarPanel> findByGridRange(String section, int minRow, int maxRow,
+                                            int minColumn, int maxColumn) throws DataAccessException {
+        return delegate.findByGridRange(section, minRow, maxRow, minColumn, maxColumn);
+    }
+
+    @Override
+    public SolarPanel findById(int id) throws DataAccessException {
+        return delegate.findById(id);
+    }
+
+    @Override
+    public SolarPanel findByKey(SolarPanelKey key) throws DataAccessException {
+        if (key == null || key.getSection() == null) {
+            return delegate.findByKey(key);
+        }
+
+        SolarPanel cached = byKey.get(key);
+        if (cached != null) {
+            return copyOf(cached);
+        }
+
+        long readGeneration = getGeneration();
+        SolarPanel solarPanel = delegate.findByKey(key);
+        if (solarPanel != null) {
+            synchronized (this) {
+                if (readGeneration == generation) {
+                    byKey.put(key, copyOf(solarPanel));
+                }
+            }
+        }
+        return solarPanel;
+    }
+
+    @Override
+    public List<SolarPanel> findByKeys(Collection<SolarPanelKey> keys) throws DataAccessException {
+        return delegate.findByKeys(keys);
+    }
+
+    @Override
+    public Map<String, Integer> countBySection() throws DataAccessException {
+        return delegate.countBySection();
+    }
+
+    @Override
+    public Map<Material, Integer> countByMaterial() throws DataAccessException {
+        return delegate.countByMaterial();
+    }
+
+    @Override
+    public Map<Boolean, Integer> countByTracking() throws DataAccessException {
+        return delegate.countByTracking();
+    }
+
+    @Override
+    public Map<Integer, Integer> countByYearInstalled() throws DataAccessException {
+        return delegate.countByYearInstalled();
+    }
+
+    @Override
+    public SolarPanel create(SolarPanel solarPanel) throws DataAccessException {
+        try {
+            return delegate.create(solarPanel);
+        } finally {
+            if (solarPanel != null) {
+                invalidate(solarPanel.getKey());
+            }
+        }
+    }
+
+    @Override
+    public SolarPanel update(SolarPanel solarPanel) throws DataAccessException {
+        try {
+            return delegate.update(solarPanel);
+        } finally {
+            if (solarPanel != null) {
+                invalidateUpdated(List.of(solarPanel));
+            }
+        }
+    }
+
+    @Override
+    public SolarPanel deleteByKey(SolarPanelKey key) throws DataAccessException {
+        try {
+            return delegate.deleteByKey(key);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public List<SolarPanel> createAll(List<SolarPanel> solarPanels) throws DataAccessException {
+        try {
+            return delegate.createAll(solarPanels);
+        } finally {
+            for (SolarPanel solarPanel : solarPanels) {
+                if (solarPanel != null) {
+                    invalidate(solarPanel.getKey());
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean[] updateAll(List<SolarPanel> solarPanels) throws DataAccessException {
+        try {
+            return delegate.updateAll(solarPanels);
+        } finally {
+            invalidateUpdated(solarPanels);
+        }
+    }
+
+    @Override
+    public boolean[] deleteAll(List<SolarPanelKey> keys) throws DataAccessException {
+        try {
+            return delegate.deleteAll(keys);
+        } finally {
+            for (SolarPanelKey key : keys) {
+                invalidate(key);
+            }
+        }
+    }
+
+    public long getHitCount() {
+        return byKey.getHitCount() + bySection.getHitCount();
+    }
+
+    public long getMissCount() {
+        return byKey.getMissCount() + bySection.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return byKey.getEvictionCount() + bySection.getEvictionCount();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bindTo(registry, "key", byKey);
+        bindTo(registry, "section", bySection);
+    }
+
+    private void bindTo(MeterRegistry registry, String cache, LruCache<?, ?> lruCache) {
+        FunctionCounter.builder("solarfarm.cache.hits", lruCache, LruCache::getHitCount)
+                .tag("cache", cache).register(registry);
+        FunctionCounter.builder("solarfarm.cache.misses", lruCache, LruCache::getMissCount)
+                .tag("cache", cache).register(registry);
+        FunctionCounter.builder("solarfarm.cache.evictions", lruCache, LruCache::getEvictionCount)
+                .tag("cache", cache).register(registry);
+        Gauge.builder("solarfarm.cache.size", lruCache, LruCache::size)
+                .tag("cache", cache).register(registry);
+    }
+
+    private synchronized long getGeneration() {
+        return generation;
+    }
+
+    private synchronized void invalidate(SolarPanelKey key) {
+        generation++;
+        if (key != null && key.getSection() != null) {
+            byKey.invalidate(key);
+            bySection.invalidate(toSectionKey(key.getSection()));
+        }
+    }
+
+    private synchronized void invalidateUpdated(List<SolarPanel> solarPanels) {
+        // The panels' old keys aren't known, so drop everything that holds their ids,
+        // in one pass over each cache however big the batch is.
+        Set<Integer> ids = new HashSet<>();
+        for (SolarPanel solarPanel : solarPanels) {
+            if (solarPanel != null) {
+                ids.add(solarPanel.getId());
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        byKey.invalidateIf((key, cached) -> ids.contains(cached.getId()));
+        bySection.invalidateIf((section, cached) ->
+                cached.stream().anyMatch(sp -> ids.contains(sp.getId())));
+        for (SolarPanel solarPanel : solarPanels) {
+            if (solarPanel != null) {
+                invalidate(solarPanel.getKey());
+            }
+        }
+    }
+
+    // Sections match case-insensitively, just like SolarPanelKey.
+    private static String toSectionKey(String section) {
+        return section.toLowerCase();
+    }
+
+    // Callers are free to mutate what they get back, so the cache never shares instances.
+    private static SolarPanel copyOf(SolarPanel sp) {
+        return new SolarPanel(sp.getId(), sp.getSection(), sp.getRow(), sp.getColumn(),
+                sp.getYearInstalled(), sp.getMaterial(), sp.isTracking());
+    }
+
+    private static List<SolarPanel> copyOf(List<SolarPanel> solarPanels) {
+        ArrayList<SolarPanel> result = new ArrayList<>(solarPanels.size());
+        for (SolarPanel sp : solarPanels) {
+            result.add(copyOf(sp));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,443 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Solar panels stored column by column in primitive arrays: about 20 bytes
+ * per panel plus a 250 KB grid per section. Not thread-safe.
+ *
+ * Each panel lives in a slot; removing a panel moves the last slot into the
+ * hole. Three indexes sit on top of the slots:
+ * - a SectionGrid per section maps (row, column) to a slot; the few keys
+ *   outside the grid go in `outsideGrid`, keyed by a packed long
+ * - `order` lists the slots sorted by key, so a section or a page is one
+ *   contiguous run found with a binary search
+ * - `slotsById` maps each id to its slot, for findById and updates
+ *
+ * Key order compares lower-cased sections by UTF-16 code unit, not by the
+ * table's collation (MySQL 8's default, utf8mb4_0900_ai_ci). The two agree
+ * for sections made of ASCII letters, digits and spaces. They disagree on
+ * accented letters, which MySQL sorts with their base letter, and on ASCII
+ * punctuation, which MySQL sorts before digits. For such sections, a
+ * findPage cursor from the `memory` profile can skip or repeat panels when
+ * used under `jdbc-template`, and the other way round.
+ */
+class SolarPanelColumns {
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Section names are interned twice: as stored, and lower-cased, because
+    // keys compare sections case-insensitively.
+    private final List<String> sectionNames = new ArrayList<>();
+    private final Map<String, Integer> sectionIds = new HashMap<>();
+    private final List<String> keySections = new ArrayList<>();
+    private final Map<String, Integer> keySectionIds = new HashMap<>();
+    // Indexed by key section id; created with the section's first panel.
+    private final List<SectionGrid> grids = new ArrayList<>();
+    private int[] keySectionIdBySectionId = new int[16];
+
+    private int size;
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private int[] sections = new int[INITIAL_CAPACITY];
+    private short[] rows = new short[INITIAL_CAPACITY];
+    private short[] columns = new short[INITIAL_CAPACITY];
+    private short[] years = new short[INITIAL_CAPACITY];
+    private byte[] materials = new byte[INITIAL_CAPACITY];
+    private boolean[] tracking = new boolean[INITIAL_CAPACITY];
+
+    private int[] order = new int[INITIAL_CAPACITY];
+    // Rows and columns are validated against the grid size, so this stays
+    // empty unless the table was written some other way.
+    private final LongIntHashMap outsideGrid = new LongIntHashMap(16);
+    private final LongIntHashMap slotsById = new LongIntHashMap(INITIAL_CAPACITY);
+
+    int size() {
+        return size;
+    }
+
+    SolarPanel findById(int id) {
+        int slot = findSlotById(id);
+        return slot == LongIntHashMap.MISSING ? null : get(slot);
+    }
+
+    SolarPanel findByKey(SolarPanelKey key) {
+        int slot = findSlot(key);
+        return slot == LongIntHashMap.MISSING ? null : get(slot);
+    }
+
+    List<SolarPanel> findBySection(String section) {
+        ArrayList<SolarPanel> result = new ArrayList<>();
+        Integer keySectionId = section == null ? null : keySectionIds.get(toKeySection(section));
+        if (keySectionId == null) {
+            return result;
+        }
+
+        for (int position = lowerBound(keySections.get(keySectionId), Integer.MIN_VALUE, Integer.MIN_VALUE);
+             position < size && keySectionOf(order[position]) == keySectionId;
+             position++) {
+            result.add(get(order[position]));
+        }
+        return result;
+    }
+
+    List<SolarPanel> findByGridRange(String section, int minRow, int maxRow, int minColumn, int maxColumn) {
+        ArrayList<SolarPanel> result = new ArrayList<>();
+        Integer keySectionId = section == null ? null : keySectionIds.get(toKeySection(section));
+        if (keySectionId == null || grids.get(keySectionId) == null) {
+            return result;
+        }
+
+        grids.get(keySectionId).forEachInRange(minRow, maxRow, minColumn, maxColumn,
+                slot -> result.add(get(slot)));
+        return result;
+    }
+
+    List<SolarPanel> findPage(SolarPanelKey after, int limit) {
+        int start = 0;
+        if (after != null) {
+            // The first key greater than `after`.
+            start = lowerBound(toKeySection(after.getSection()), after.getRow(), after.getColumn() + 1);
+        }
+
+        int end = (int) Math.min((long) start + limit, size);
+        ArrayList<SolarPanel> result = new ArrayList<>(Math.max(end - start, 0));
+        for (int position = start; position < end; position++) {
+            result.add(get(order[position]));
+        }
+        return result;
+    }
+
+    void forEach(Consumer<SolarPanel> consumer) {
+        for (int position = 0; position < size; position++) {
+            consumer.accept(get(order[position]));
+        }
+    }
+
+    // Sections are contiguous in `order`, so each count is the length of a run.
+    Map<String, Integer> countBySection() {
+        LinkedHashMap<String, Integer> result = new LinkedHashMap<>();
+        int position = 0;
+        while (position < size) {
+            int start = position;
+            int keySectionId = keySectionOf(order[start]);
+            while (position < size && keySectionOf(order[position]) == keySectionId) {
+                position++;
+            }
+            result.put(sectionNames.get(sections[order[start]]), position - start);
+        }
+        return result;
+    }
+
+    Map<Material, Integer> countByMaterial() {
+        int[] counts = new int[Byte.MAX_VALUE + 1];
+        for (int slot = 0; slot < size; slot++) {
+            counts[materials[slot]]++;
+        }
+
+        LinkedHashMap<Material, Integer> result = new LinkedHashMap<>();
+        for (int value = 0; value < counts.length; value++) {
+            if (counts[value] > 0) {
+                result.put(Material.findByValue(value), counts[value]);
+            }
+        }
+        return result;
+    }
+
+    Map<Boolean, Integer> countByTracking() {
+        int trackingCount = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (tracking[slot]) {
+                trackingCount++;
+            }
+        }
+
+        LinkedHashMap<Boolean, Integer> result = new LinkedHashMap<>();
+        if (trackingCount < size) {
+            result.put(false, size - trackingCount);
+        }
+        if (trackingCount > 0) {
+            result.put(true, trackingCount);
+        }
+        return result;
+    }
+
+    Map<Integer, Integer> countByYearInstalled() {
+        int[] counts = new int[Short.MAX_VALUE + 1];
+        for (int slot = 0; slot < size; slot++) {
+            counts[years[slot]]++;
+        }
+
+        LinkedHashMap<Integer, Integer> result = new LinkedHashMap<>();
+        for (int year = 0; year < counts.length; year++) {
+            if (counts[year] > 0) {
+                result.put(year, counts[year]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds the panel, or replaces the panel that already has its key.
+     */
+    void put(SolarPanel solarPanel) {
+        checkRange(solarPanel);
+
+        int existing = findSlot(solarPanel.getKey());
+        if (existing != LongIntHashMap.MISSING) {
+            replace(existing, solarPanel);
+            return;
+        }
+
+        ensureCapacity(size + 1);
+        int slot = size;
+        write(slot, solarPanel);
+        insertOrder(slot, size);
+        index(slot);
+        size++;
+    }
+
+    /**
+     * Replaces the panel with the same id, whatever its current key, and
+     * returns false if there isn't one.
+     */
+    boolean replaceById(SolarPanel solarPanel) {
+        checkRange(solarPanel);
+
+        int slot = findSlotById(solarPanel.getId());
+        if (slot == LongIntHashMap.MISSING) {
+            return false;
+        }
+        replace(slot, solarPanel);
+        return true;
+    }
+
+    boolean remove(SolarPanelKey key) {
+        int slot = findSlot(key);
+        if (slot == LongIntHashMap.MISSING) {
+            return false;
+        }
+
+        removeOrder(slot, size);
+        unindex(slot);
+        size--;
+
+        int last = size;
+        if (slot != last) {
+            // Fill the hole with the last slot.
+            int lastPosition = position(last, size);
+            copySlot(last, slot);
+            order[lastPosition] = slot;
+            index(slot);
+        }
+        return true;
+    }
+
+    private void replace(int slot, SolarPanel solarPanel) {
+        removeOrder(slot, size);
+        unindex(slot);
+        write(slot, solarPanel);
+        insertOrder(slot, size - 1);
+        index(slot);
+    }
+
+    private int findSlotById(int id) {
+        return slotsById.get(id);
+    }
+
+    private SolarPanel get(int slot) {
+        return new SolarPanel(ids[slot], sectionNames.get(sections[slot]), rows[slot], columns[slot],
+                years[slot], Material.findByValue(materials[slot]), tracking[slot]);
+    }
+
+    private int findSlot(SolarPanelKey key) {
+        if (key == null || key.getSection() == null) {
+            return LongIntHashMap.MISSING;
+        }
+        Integer keySectionId = keySectionIds.get(toKeySection(key.getSection()));
+        if (keySectionId == null) {
+            return LongIntHashMap.MISSING;
+        }
+
+        int row = key.getRow();
+        int column = key.getColumn();
+        if (SectionGrid.contains(row, column)) {
+            SectionGrid grid = grids.get(keySectionId);
+            return grid == null ? LongIntHashMap.MISSING : grid.get(row, column);
+        }
+        if (!fitsInShort(row) || !fitsInShort(column)) {
+            return LongIntHashMap.MISSING;
+        }
+        return outsideGrid.get(packKey(keySectionId, row, column));
+    }
+
+    private void index(int slot) {
+        slotsById.put(ids[slot], slot);
+        int keySectionId = keySectionOf(slot);
+        if (SectionGrid.contains(rows[slot], columns[slot])) {
+            SectionGrid grid = grids.get(keySectionId);
+            if (grid == null) {
+                grid = new SectionGrid();
+                grids.set(keySectionId, grid);
+            }
+            grid.put(rows[slot], columns[slot], slot);
+        } else {
+            outsideGrid.put(packKey(keySectionId, rows[slot], columns[slot]), slot);
+        }
+    }
+
+    private void unindex(int slot) {
+        if (slotsById.get(ids[slot]) == slot) {
+            slotsById.remove(ids[slot]);
+        }
+        if (SectionGrid.contains(rows[slot], columns[slot])) {
+            SectionGrid grid = grids.get(keySectionOf(slot));
+            grid.remove(rows[slot], columns[slot]);
+            if (grid.count() == 0) {
+                grids.set(keySectionOf(slot), null);
+            }
+        } else {
+            outsideGrid.remove(packKey(keySectionOf(slot), rows[slot], columns[slot]));
+        }
+    }
+
+    private void write(int slot, SolarPanel solarPanel) {
+        ids[slot] = solarPanel.getId();
+        sections[slot] = internSection(solarPanel.getSection());
+        rows[slot] = (short) solarPanel.getRow();
+        columns[slot] = (short) solarPanel.getColumn();
+        years[slot] = (short) solarPanel.getYearInstalled();
+        materials[slot] = (byte) solarPanel.getMaterial().getValue();
+        tracking[slot] = solarPanel.isTracking();
+    }
+
+    private void copySlot(int from, int to) {
+        ids[to] = ids[from];
+        sections[to] = sections[from];
+        rows[to] = rows[from];
+        columns[to] = columns[from];
+        years[to] = years[from];
+        materials[to] = materials[from];
+        tracking[to] = tracking[from];
+    }
+
+    // `count` is the number of slots currently listed in `order`.
+    private void insertOrder(int slot, int count) {
+        int position = lowerBound(keySections.get(keySectionOf(slot)), rows[slot], columns[slot], count);
+        System.arraycopy(order, position, order, position + 1, count - position);
+        order[position] = slot;
+    }
+
+    private void removeOrder(int slot, int count) {
+        int position = position(slot, count);
+        System.arraycopy(order, position + 1, order, position, count - position - 1);
+    }
+
+    private int position(int slot, int count) {
+        return lowerBound(keySections.get(keySectionOf(slot)), rows[slot], columns[slot], count);
+    }
+
+    private int lowerBound(String keySection, int row, int column) {
+        return lowerBound(keySection, row, column, size);
+    }
+
+    // The first position in `order` whose key is not less than the given key.
+    private int lowerBound(String keySection, int row, int column, int count) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(order[middle], keySection, row, column) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int compare(int slot, String keySection, int row, int column) {
+        int result = keySections.get(keySectionOf(slot)).compareTo(keySection);
+        if (result == 0) {
+            result = Integer.compare(rows[slot], row);
+        }
+        if (result == 0) {
+            result = Integer.compare(columns[slot], column);
+        }
+        return result;
+    }
+
+    private int keySectionOf(int slot) {
+        return keySectionIdBySectionId[sections[slot]];
+    }
+
+    private static long packKey(int keySectionId, int row, int column) {
+        return ((long) keySectionId << 32) | ((row & 0xFFFFL) << 16) | (column & 0xFFFFL);
+    }
+
+    private int internSection(String section) {
+        Integer sectionId = sectionIds.get(section);
+        if (sectionId != null) {
+            return sectionId;
+        }
+
+        String keySection = toKeySection(section);
+        Integer keySectionId = keySectionIds.get(keySection);
+        if (keySectionId == null) {
+            keySectionId = keySections.size();
+            keySections.add(keySection);
+            keySectionIds.put(keySection, keySectionId);
+            grids.add(null);
+        }
+
+        sectionId = sectionNames.size();
+        sectionNames.add(section);
+        sectionIds.put(section, sectionId);
+        if (sectionId == keySectionIdBySectionId.length) {
+            keySectionIdBySectionId = Arrays.copyOf(keySectionIdBySectionId, sectionId * 2);
+        }
+        keySectionIdBySectionId[sectionId] = keySectionId;
+        return sectionId;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, newCapacity);
+        sections = Arrays.copyOf(sections, newCapacity);
+        rows = Arrays.copyOf(rows, newCapacity);
+        columns = Arrays.copyOf(columns, newCapacity);
+        years = Arrays.copyOf(years, newCapacity);
+        materials = Arrays.copyOf(materials, newCapacity);
+        tracking = Arrays.copyOf(tracking, newCapacity);
+        order = Arrays.copyOf(order, newCapacity);
+    }
+
+    private static void checkRange(SolarPanel solarPanel) {
+        if (!fitsInShort(solarPanel.getRow()) || !fitsInShort(solarPanel.getColumn())
+                || !fitsInShort(solarPanel.getYearInstalled())) {
+            String message = String.format("SolarPanel %s doesn't fit in memory columns.", solarPanel.getKey());
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    private static boolean fitsInShort(int value) {
+        return value >= 0 && value <= Short.MAX_VALUE;
+    }
+
+    // Sections match case-insensitively, just like SolarPanelKey. See the
+    // class comment for how their order differs from MySQL's.
+    private static String toKeySection(String section) {
+        return section.toLowerCase();
+    }
+}
@@ -1,22 +1,52 @@
 package learn.solarfarm.data;
 
-import com.mysql.cj.jdbc.MysqlDataSource;
 import learn.solarfarm.models.Material;
 import learn.solarfarm.models.SolarPanel;
 import learn.solarfarm.models.SolarPanelKey;
 import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 
 import javax.sql.DataSource;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 @Repository
 @Profile("jdbc")
 public class SolarPanelJdbcRepository implements SolarPanelRepository {
-    private static final String SOLAR_PANEL_COLUMN_NAMES =
-            "solar_panel_id, section, `row`, `column`, year_installed, material_id, is_tracking";
+    private static final String SOLAR_PANEL_COLUMN_NAMES = SolarPanelMapper.COLUMN_NAMES;
+    private static final String SOLAR_PANEL_KEY_ORDER = "section, `row`, `column`";
+    // Keeps each `in` list well under the server's placeholder limit.
+    private static final int MAX_KEYS_PER_QUERY = 500;
+    private static final int MYSQL_DUPLICATE_ENTRY = 1062;
+    private static final String INSERT_SQL = "insert into solar_panel " +
+            "(section, `row`, `column`, year_installed, material_id, is_tracking) " +
+            "values (?, ?, ?, ?, ?, ?);";
+    private static final String UPDATE_SQL = "update solar_panel set " +
+            "section = ?, " +
+            "`row` = ?, " +
+            "`column` = ?, " +
+            "year_installed = ?, " +
+            "material_id = ?, " +
+            "is_tracking = ? " +
+            "where solar_panel_id = ?;";
+    private static final String DELETE_SQL =
+            "delete from solar_panel where section = ? and `row` = ? and `column` = ?;";
+    // Read the row a single write replaces, and lock it until the write commits.
+    private static final String LOCK_BY_ID_SQL = String.format("select %s from solar_panel " +
+            "where solar_panel_id = ? for update;", SOLAR_PANEL_COLUMN_NAMES);
+    private static final String LOCK_BY_KEY_SQL = String.format("select %s from solar_panel " +
+            "where section = ? and `row` = ? and `column` = ? for update;", SOLAR_PANEL_COLUMN_NAMES);
+
+    // With `useCursorFetch=true` on the connection URL, MySQL hands rows back
+    // in chunks of this size instead of materializing the whole result set.
+    private static final int STREAM_FETCH_SIZE = 1000;
 
     private final DataSource dataSource;
 
@@ -31,8 +61,8 @@ public class SolarPanelJdbcRepository implements SolarPanelRepository {
         final String sql = String.format("select %s from solar_panel;", SOLAR_PANEL_COLUMN_NAMES);
 
         try (Connection conn = dataSource.getConnection();
-                 Statement statement = conn.createStatement();
-                 ResultSet rs = statement.executeQuery(sql)) {
+                 PreparedStatement statement = conn.prepareStatement(sql);
+                 ResultSet rs = statement.executeQuery()) {
             while (rs.next()) {
                 SolarPanel sp = getSolarPanelFromResultSet(rs);
                 result.add(sp);
@@ -44,12 +74,69 @@ public class SolarPanelJdbcRepository implements SolarPanelRepository {
         return result;
     }
 
+    @Override
+    public List<SolarPanel> findPage(SolarPanelKey after, int limit) throws DataAccessException {
+        ArrayList<SolarPanel> result = new ArrayList<>();
+
+        final String sql;
+        if (after == null) {
+            sql = String.format("select %s from solar_panel " +
+                    "order by %s limit ?;", SOLAR_PANEL_COLUMN_NAMES, SOLAR_PANEL_KEY_ORDER);
+        } else {
+            sql = String.format("select %s from solar_panel " +
+                    "where (section, `row`, `column`) > (?, ?, ?) " +
+                    "order by %s limit ?;", SOLAR_PANEL_COLUMN_NAMES, SOLAR_PANEL_KEY_ORDER);
+        }
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement statement = conn.prepareStatement(sql)) {
+            int index = 1;
+            if (after != null) {
+                statement.setString(index++, after.getSection());
+                statement.setInt(index++, after.getRow());
+                statement.setInt(index++, after.getColumn());
+            }
+            statement.setInt(index, limit);
+
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    SolarPanel sp = getSolarPanelFromResultSet(rs);
+                    result.add(sp);
+                }
+            }
+        } catch (SQLException ex) {
+            throw new DataAccessException("Error finding a page of solar panels.", ex);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void streamAll(Consumer<SolarPanel> consumer) throws DataAccessException {
+        final String sql = String.format("select %s from solar_panel order by %s;",
+                SOLAR_PANEL_COLUMN_NAMES, SOLAR_PANEL_KEY_ORDER);
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement statement = conn.prepareStatement(sql,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(STREAM_FETCH_SIZE);
+
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(getSolarPanelFromResultSet(rs));
+                }
+            }
+        } catch (SQLException ex) {
+            throw new DataAccessException("Error streaming all solar panels.", ex);
+        }
+    }
+
     @Override
     public List<SolarPanel> findBySection(String section) throws DataAccessException {
         ArrayList<SolarPanel> result = new ArrayList<>();
 
         final String sql = String.format("select %s from solar_panel " +
-                "where section = ?;", SOLAR_PANEL_COLUMN_NAMES);
+                "where section = ? order by `row`, `column`;", SOLAR_PANEL_COLUMN_NAMES);
 
         try (Connection conn = dataSource.getConnection();
              PreparedStatement statement = conn.prepareStatement(sql)) {
@@ -68,6 +155,58 @@ public class SolarPanelJdbcRepository implements SolarPanelRepository {
         return result;
     }
 
+    @Override
+    public List<SolarPanel> findByGridRange(String section, int minRow, int maxRow,
+                                            int minColumn, int maxColumn) throws DataAccessException {
+        ArrayList<SolarPanel> result = new ArrayList<>();
+
+        final String sql = String.format("select %s from solar_panel " +
+                "where section = ? and `row` between ? and ? and `column` between ? and ? " +
+                "order by `row`, `column`;", SOLAR_PANEL_COLUMN_NAMES);
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement statement = conn.prepareStatement(sql)) {
+            statement.setString(1, section);
+            statement.setInt(2, minRow);
+            statement.setInt(3, maxRow);
+            statement.setInt(4, minColumn);
+            statement.setInt(5, maxColumn);
+
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    SolarPanel sp = getSolarPanelFromResultSet(rs);
+                    result.add(sp);
+                }
+            }
+        } catch (SQLException ex) {
+            throw new DataAccessException("Error finding solar panels by grid range.", ex);
+        }
+
+        return result;
+    }
+
+    @Override
+    public SolarPanel findById(int id) throws DataAccessException {
+        final String sql = String.format("select %s from solar_panel " +
+                "where solar_panel_id = ?;", SOLAR_PANEL_COLUMN_NAMES);
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement statement = conn.prepareStatement(sql)) {
+
+            statement.setInt(1, id);
+
+            try (ResultSet rs = statement.executeQuery()) {
+                if (rs.next()) {
+                    return getSolarPanelFromResultSet(rs);
+                }
+            }
+        } catch (SQLException ex) {
+            throw new DataAccessException("Error finding a solar panel by its id.", ex);
+        }
+
+        return null;
+    }
+
     @Override
     public SolarPanel findByKey(SolarPanelKey key) throws DataAccessException {
         final String sql = String.format("select %s from solar_panel " +
@@ -93,13 +232,65 @@ public class SolarPanelJdbcRepository implements SolarPanelRepository {
     }
 
     @Override
-    public SolarPanel create(SolarPanel solarPanel) throws DataAccessException {
-        final String sql = "insert into solar_panel " +
-                "(section, `row`, `column`, year_installed, material_id, is_tracking) " +
-                "values (?, ?, ?, ?, ?, ?);";
+    public List<SolarPanel> findByKeys(Collection<SolarPanelKey> keys) throws DataAccessException {
+        List<SolarPanelKey> remaining = new ArrayList<>(keys);
+        ArrayList<SolarPanel> result = new ArrayList<>();
 
+        try (Connection conn = dataSource.getConnection()) {
+            for (int start = 0; start < remaining.size(); start += MAX_KEYS_PER_QUERY) {
+                List<SolarPanelKey> chunk = remaining.subList(start,
+                        Math.min(start + MAX_KEYS_PER_QUERY, remaining.size()));
+
+                final String sql = String.format("select %s from solar_panel " +
+                                "where (section, `row`, `column`) in (%s);", SOLAR_PANEL_COLUMN_NAMES,
+                        String.join(", ", Collections.nCopies(chunk.size(), "(?, ?, ?)")));
+
+                try (PreparedStatement statement = conn.prepareStatement(sql)) {
+                    int index = 1;
+                    for (SolarPanelKey key : chunk) {
+                        statement.setString(index++, key.getSection());
+                        statement.setInt(index++, key.getRow());
+                        statement.setInt(index++, key.getColumn());
+                    }
+
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            result.add(getSolarPanelFromResultSet(rs));
+                        }
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            throw new DataAccessException("Error finding solar panels by their keys.", ex);
+        }
+
+        return result;
+    }
+
+    @Override
+    public Map<String, Integer> countBySection() throws DataAccessException {
+        return countBy("section", (rs, i) -> rs.getString(1));
+    }
+
+    @Override
+    public Map<Material, Integer> countByMaterial() throws DataAccessException {
+        return countBy("material_id", (rs, i) -> Material.findByValue(rs.getInt(1)));
+    }
+
+    @Override
+    public Map<Boolean, Integer> countByTracking() throws DataAccessException {
+        return countBy("is_tracking", (rs, i) -> rs.getBoolean(1));
+    }
+
+    @Override
+    public Map<Integer, Integer> countByYearInstalled() throws DataAccessException {
+        return countBy("year_installed", (rs, i) -> rs.getInt(1));
+    }
+
+    @Override
+    public SolarPanel create(SolarPanel solarPanel) throws DataAccessException {
         try (Connection conn = dataSource.getConnection();
-            PreparedStatement statement = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            PreparedStatement statement = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
 
             setPreparedStatementValues(solarPanel, statement, false);
 
@@ -116,61 +307,186 @@ public class SolarPanelJdbcRepository implements SolarPanelRepository {
                 }
             }
         } catch (SQLException ex) {
+            if (isDuplicateKey(ex)) {
+                throw new DuplicateSolarPanelKeyException(solarPanel.getKey(), ex);
+            }
             throw new DataAccessException("Error creating a solar panel.", ex);
         }
 
         return solarPanel;
     }
 
+    // The old row is read and replaced in one transaction.
     @Override
-    public boolean update(SolarPanel solarPanel) throws DataAccessException {
-        final String sql = "update solar_panel set " +
-                "section = ?, " +
-                "`row` = ?, " +
-                "`column` = ?, " +
-                "year_installed = ?, " +
-                "material_id = ?, " +
-                "is_tracking = ? " +
-                "where solar_panel_id = ?;";
+    public SolarPanel update(SolarPanel solarPanel) throws DataAccessException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement lock = conn.prepareStatement(LOCK_BY_ID_SQL);
+                 PreparedStatement statement = conn.prepareStatement(UPDATE_SQL)) {
+                lock.setInt(1, solarPanel.getId());
+                SolarPanel existing = lockOne(lock);
+                if (existing != null) {
+                    setPreparedStatementValues(solarPanel, statement, true);
+                    statement.executeUpdate();
+                }
+                conn.commit();
+                return existing;
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
+        } catch (SQLException ex) {
+            if (isDuplicateKey(ex)) {
+                throw new DuplicateSolarPanelKeyException(solarPanel.getKey(), ex);
+            }
+            throw new DataAccessException("Error updating a solar panel.", ex);
+        }
+    }
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement statement = conn.prepareStatement(sql)) {
+    // The old row is read and deleted in one transaction.
+    @Override
+    public SolarPanel deleteByKey(SolarPanelKey key) throws DataAccessException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement lock = conn.prepareStatement(LOCK_BY_KEY_SQL);
+                 PreparedStatement statement = conn.prepareStatement(DELETE_SQL)) {
+                setKeyValues(lock, key);
+                SolarPanel existing = lockOne(lock);
+                if (existing != null) {
+                    setKeyValues(statement, key);
+                    statement.executeUpdate();
+                }
+                conn.commit();
+                return existing;
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
+        } catch (SQLException ex) {
+            throw new DataAccessException("Error deleting a solar panel.", ex);
+        }
+    }
 
-            setPreparedStatementValues(solarPanel, statement, true);
+    private SolarPanel lockOne(PreparedStatement lock) throws SQLException {
+        try (ResultSet rs = lock.executeQuery()) {
+            return rs.next() ? getSolarPanelFromResultSet(rs) : null;
+        }
+    }
+
+    private static void setKeyValues(PreparedStatement statement, SolarPanelKey key) throws SQLException {
+        statement.setString(1, key.getSection());
+        statement.setInt(2, key.getRow());
+        statement.setInt(3, key.getColumn());
+    }
 
-            return statement.executeUpdate() > 0;
+    // With `rewriteBatchedStatements=true` on the connection URL, MySQL Connector/J
+    // sends each batch as a single multi-row statement. Each batch runs in one transaction.
+    @Override
+    public List<SolarPanel> createAll(List<SolarPanel> solarPanels) throws DataAccessException {
+        if (solarPanels.isEmpty()) {
+            return solarPanels;
+        }
+
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement statement = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (SolarPanel solarPanel : solarPanels) {
+                    setPreparedStatementValues(solarPanel, statement, false);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    for (SolarPanel solarPanel : solarPanels) {
+                        if (keys.next()) {
+                            solarPanel.setId(keys.getInt(1));
+                        }
+                    }
+                }
+                conn.commit();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
         } catch (SQLException ex) {
-            throw new DataAccessException("Error updating a solar panel.", ex);
+            if (isDuplicateKey(ex)) {
+                throw new DuplicateSolarPanelKeyException("A SolarPanel in the batch already exists.", ex);
+            }
+            throw new DataAccessException("Error creating solar panels.", ex);
         }
+
+        return solarPanels;
     }
 
     @Override
-    public boolean deleteByKey(SolarPanelKey key) throws DataAccessException {
-        final String sql = "delete from solar_panel where section = ? and `row` = ? and `column` = ?;";
+    public boolean[] updateAll(List<SolarPanel> solarPanels) throws DataAccessException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement statement = conn.prepareStatement(UPDATE_SQL)) {
+                for (SolarPanel solarPanel : solarPanels) {
+                    setPreparedStatementValues(solarPanel, statement, true);
+                    statement.addBatch();
+                }
+                boolean[] updated = toAffected(statement.executeBatch());
+                conn.commit();
+                return updated;
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
+        } catch (SQLException ex) {
+            if (isDuplicateKey(ex)) {
+                throw new DuplicateSolarPanelKeyException("A SolarPanel in the batch already exists.", ex);
+            }
+            throw new DataAccessException("Error updating solar panels.", ex);
+        }
+    }
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement statement = conn.prepareStatement(sql)) {
+    @Override
+    public boolean[] deleteAll(List<SolarPanelKey> keys) throws DataAccessException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement statement = conn.prepareStatement(DELETE_SQL)) {
+                for (SolarPanelKey key : keys) {
+                    statement.setString(1, key.getSection());
+                    statement.setInt(2, key.getRow());
+                    statement.setInt(3, key.getColumn());
+                    statement.addBatch();
+                }
+                boolean[] deleted = toAffected(statement.executeBatch());
+                conn.commit();
+                return deleted;
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
+        } catch (SQLException ex) {
+            throw new DataAccessException("Error deleting solar panels.", ex);
+        }
+    }
 
-            statement.setString(1, key.getSection());
-            statement.setInt(2, key.getRow());
-            statement.setInt(3, key.getColumn());
+    // Counts panels per value of one column, in column order.
+    private <K> Map<K, Integer> countBy(String column, RowMapper<K> keyMapper) throws DataAccessException {
+        Map<K, Integer> result = new LinkedHashMap<>();
+
+        final String sql = String.format("select %1$s, count(*) from solar_panel " +
+                "group by %1$s order by %1$s;", column);
 
-            return statement.executeUpdate() > 0;
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement statement = conn.prepareStatement(sql);
+             ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                result.put(keyMapper.mapRow(rs, rs.getRow()), rs.getInt(2));
+            }
         } catch (SQLException ex) {
-            throw new DataAccessException("Error deleting a solar panel.", ex);
+            throw new DataAccessException(String.format("Error counting solar panels by %s.", column), ex);
         }
+
+        return result;
     }
 
     private SolarPanel getSolarPanelFromResultSet(ResultSet rs) throws SQLException {
-        SolarPanel sp = new SolarPanel();
-        sp.setId(rs.getInt("solar_panel_id"));
-        sp.setSection(rs.getString("section"));
-        sp.setRow(rs.getInt("row"));
-        sp.setColumn(rs.getInt("column"));
-        sp.setYearInstalled(rs.getInt("year_installed"));
-        sp.setMaterial(Material.findByValue(rs.getInt("material_id")));
-        sp.setTracking(rs.getBoolean("is_tracking"));
-        return sp;
+        return SolarPanelMapper.INSTANCE.mapRow(rs, rs.getRow());
     }
 
     private void setPreparedStatementValues(
@@ -187,4 +503,16 @@ public class SolarPanelJdbcRepository implements SolarPanelRepository {
             statement.setInt(7, solarPanel.getId());
         }
     }
+
+    private boolean isDuplicateKey(SQLException ex) {
+        return ex.getErrorCode() == MYSQL_DUPLICATE_ENTRY;
+    }
+
+    private boolean[] toAffected(int[] rowCounts) {
+        boolean[] affected = new boolean[rowCounts.length];
+        for (int i = 0; i < rowCounts.length; i++) {
+            affected[i] = rowCounts[i] > 0 || rowCounts[i] == Statement.SUCCESS_NO_INFO;
+        }
+        return affected;
+    }
 }
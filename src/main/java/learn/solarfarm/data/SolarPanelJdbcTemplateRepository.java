@@ -3,85 +3,213 @@ package learn.solarfarm.data;
 import learn.solarfarm.models.Material;
 import learn.solarfarm.models.SolarPanel;
 import learn.solarfarm.models.SolarPanelKey;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 @Repository
 @Profile("jdbc-template")
 public class SolarPanelJdbcTemplateRepository implements SolarPanelRepository {
-    private static final String SOLAR_PANEL_COLUMN_NAMES =
-            "solar_panel_id, section, `row`, `column`, year_installed, material_id, is_tracking";
+    private static final String SOLAR_PANEL_COLUMN_NAMES = SolarPanelMapper.COLUMN_NAMES;
+    private static final String SOLAR_PANEL_KEY_ORDER = "section, `row`, `column`";
+    // Both are served by uq_solar_panel_section_row_column, which also gives the row order.
+    // SolarPanelIndexTest checks the index can serve them, so keep them in step with the schema.
+    static final String FIND_BY_SECTION_SQL = String.format("select %s from solar_panel " +
+            "where section = ? order by `row`, `column`;", SOLAR_PANEL_COLUMN_NAMES);
+    static final String FIND_BY_GRID_RANGE_SQL = String.format("select %s from solar_panel " +
+            "where section = ? and `row` between ? and ? and `column` between ? and ? " +
+            "order by `row`, `column`;", SOLAR_PANEL_COLUMN_NAMES);
+    static final String FIND_BY_ID_SQL = String.format("select %s from solar_panel " +
+            "where solar_panel_id = ?;", SOLAR_PANEL_COLUMN_NAMES);
+
+    static final String FIND_BY_KEY_SQL = String.format("select %s from solar_panel " +
+            "where section = ? and `row` = ? and `column` = ?;", SOLAR_PANEL_COLUMN_NAMES);
+
+    // Keeps each `in` list well under the server's placeholder limit.
+    private static final int MAX_KEYS_PER_QUERY = 500;
+    private static final String INSERT_SQL = "insert into solar_panel " +
+            "(section, `row`, `column`, year_installed, material_id, is_tracking) " +
+            "values (?, ?, ?, ?, ?, ?);";
+    private static final String UPDATE_SQL = "update solar_panel set " +
+            "section = ?, " +
+            "`row` = ?, " +
+            "`column` = ?, " +
+            "year_installed = ?, " +
+            "material_id = ?, " +
+            "is_tracking = ? " +
+            "where solar_panel_id = ?;";
+    private static final String DELETE_SQL =
+            "delete from solar_panel where section = ? and `row` = ? and `column` = ?;";
+    // Read the row a single write replaces, and lock it until the write commits.
+    private static final String LOCK_BY_ID_SQL = FIND_BY_ID_SQL.replace(";", " for update;");
+    private static final String LOCK_BY_KEY_SQL = FIND_BY_KEY_SQL.replace(";", " for update;");
+
+    // With `useCursorFetch=true` on the connection URL, MySQL hands rows back
+    // in chunks of this size instead of materializing the whole result set.
+    private static final int STREAM_FETCH_SIZE = 1000;
 
     private final JdbcTemplate jdbcTemplate;
+    // Hedges findBySection and findByKey when `solarfarm.hedging.enabled` is set.
+    private final ReadHedger hedger;
 
-    private final RowMapper<SolarPanel> mapper = (rs, i) -> {
-        SolarPanel sp = new SolarPanel();
-        sp.setId(rs.getInt("solar_panel_id"));
-        sp.setSection(rs.getString("section"));
-        sp.setRow(rs.getInt("row"));
-        sp.setColumn(rs.getInt("column"));
-        sp.setYearInstalled(rs.getInt("year_installed"));
-        sp.setMaterial(Material.findByValue(rs.getInt("material_id")));
-        sp.setTracking(rs.getBoolean("is_tracking"));
-        return sp;
-    };
+    private final RowMapper<SolarPanel> mapper = SolarPanelMapper.INSTANCE;
 
-    public SolarPanelJdbcTemplateRepository(JdbcTemplate jdbcTemplate) {
+    @Autowired
+    public SolarPanelJdbcTemplateRepository(JdbcTemplate jdbcTemplate, ReadHedger hedger) {
         this.jdbcTemplate = jdbcTemplate;
+        this.hedger = hedger;
+    }
+
+    public SolarPanelJdbcTemplateRepository(JdbcTemplate jdbcTemplate) {
+        this(jdbcTemplate, ReadHedger.disabled());
     }
 
     @Override
     public List<SolarPanel> findAll() throws DataAccessException {
         final String sql = String.format("select %s from solar_panel;", SOLAR_PANEL_COLUMN_NAMES);
-//        return jdbcTemplate.query(sql, new SolarPanelMapper());
         return jdbcTemplate.query(sql, mapper);
     }
 
     @Override
-    public List<SolarPanel> findBySection(String section) throws DataAccessException {
+    public List<SolarPanel> findPage(SolarPanelKey after, int limit) throws DataAccessException {
+        if (after == null) {
+            final String sql = String.format("select %s from solar_panel " +
+                    "order by %s limit ?;", SOLAR_PANEL_COLUMN_NAMES, SOLAR_PANEL_KEY_ORDER);
+            return jdbcTemplate.query(sql, mapper, limit);
+        }
+
         final String sql = String.format("select %s from solar_panel " +
-                "where section = ?;", SOLAR_PANEL_COLUMN_NAMES);
-        return jdbcTemplate.query(sql, mapper, section);
+                        "where (section, `row`, `column`) > (?, ?, ?) " +
+                        "order by %s limit ?;", SOLAR_PANEL_COLUMN_NAMES, SOLAR_PANEL_KEY_ORDER);
+        return jdbcTemplate.query(sql, mapper,
+                after.getSection(), after.getRow(), after.getColumn(), limit);
     }
 
     @Override
-    public SolarPanel findByKey(SolarPanelKey key) throws DataAccessException {
-        final String sql = String.format("select %s from solar_panel " +
-                "where section = ? and `row` = ? and `column` = ?;", SOLAR_PANEL_COLUMN_NAMES);
+    public void streamAll(Consumer<SolarPanel> consumer) throws DataAccessException {
+        final String sql = String.format("select %s from solar_panel order by %s;",
+                SOLAR_PANEL_COLUMN_NAMES, SOLAR_PANEL_KEY_ORDER);
+
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(STREAM_FETCH_SIZE);
+            return statement;
+        }, (RowCallbackHandler) rs -> consumer.accept(mapper.mapRow(rs, rs.getRow())));
+    }
+
+    @Override
+    public List<SolarPanel> findBySection(String section) throws DataAccessException {
+        return hedger.read("findBySection", attempt ->
+                jdbcTemplate.query(hedgeable(attempt, FIND_BY_SECTION_SQL, section), mapper));
+    }
+
+    @Override
+    public List<SolarPanel> findByGridRange(String section, int minRow, int maxRow,
+                                            int minColumn, int maxColumn) throws DataAccessException {
+        return jdbcTemplate.query(FIND_BY_GRID_RANGE_SQL, mapper,
+                section, minRow, maxRow, minColumn, maxColumn);
+    }
+
+    @Override
+    public SolarPanel findById(int id) throws DataAccessException {
         try {
-            return jdbcTemplate.queryForObject(sql, mapper,
-                    key.getSection(), key.getRow(), key.getColumn());
+            return jdbcTemplate.queryForObject(FIND_BY_ID_SQL, mapper, id);
         } catch (EmptyResultDataAccessException ex) {
             return null;
         }
     }
 
     @Override
-    public SolarPanel create(SolarPanel solarPanel) throws DataAccessException {
-        final String sql = "insert into solar_panel " +
-                "(section, `row`, `column`, year_installed, material_id, is_tracking) " +
-                "values (?, ?, ?, ?, ?, ?);";
+    public SolarPanel findByKey(SolarPanelKey key) throws DataAccessException {
+        List<SolarPanel> solarPanels = hedger.read("findByKey", attempt ->
+                jdbcTemplate.query(hedgeable(attempt, FIND_BY_KEY_SQL,
+                        key.getSection(), key.getRow(), key.getColumn()), mapper));
+        return solarPanels.isEmpty() ? null : solarPanels.get(0);
+    }
+
+    @Override
+    public List<SolarPanel> findByKeys(Collection<SolarPanelKey> keys) throws DataAccessException {
+        List<SolarPanelKey> remaining = new ArrayList<>(keys);
+        List<SolarPanel> result = new ArrayList<>();
 
+        for (int start = 0; start < remaining.size(); start += MAX_KEYS_PER_QUERY) {
+            List<SolarPanelKey> chunk = remaining.subList(start,
+                    Math.min(start + MAX_KEYS_PER_QUERY, remaining.size()));
+
+            final String sql = String.format("select %s from solar_panel " +
+                            "where (section, `row`, `column`) in (%s);", SOLAR_PANEL_COLUMN_NAMES,
+                    String.join(", ", Collections.nCopies(chunk.size(), "(?, ?, ?)")));
+
+            Object[] args = new Object[chunk.size() * 3];
+            for (int i = 0; i < chunk.size(); i++) {
+                args[i * 3] = chunk.get(i).getSection();
+                args[i * 3 + 1] = chunk.get(i).getRow();
+                args[i * 3 + 2] = chunk.get(i).getColumn();
+            }
+
+            result.addAll(jdbcTemplate.query(sql, mapper, args));
+        }
+
+        return result;
+    }
+
+    @Override
+    public Map<String, Integer> countBySection() throws DataAccessException {
+        return countBy("section", (rs, i) -> rs.getString(1));
+    }
+
+    @Override
+    public Map<Material, Integer> countByMaterial() throws DataAccessException {
+        return countBy("material_id", (rs, i) -> Material.findByValue(rs.getInt(1)));
+    }
+
+    @Override
+    public Map<Boolean, Integer> countByTracking() throws DataAccessException {
+        return countBy("is_tracking", (rs, i) -> rs.getBoolean(1));
+    }
+
+    @Override
+    public Map<Integer, Integer> countByYearInstalled() throws DataAccessException {
+        return countBy("year_installed", (rs, i) -> rs.getInt(1));
+    }
+
+    @Override
+    public SolarPanel create(SolarPanel solarPanel) throws DataAccessException {
         KeyHolder keyHolder = new GeneratedKeyHolder();
-        int rowsAffected = jdbcTemplate.update(connection -> {
-            PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-            statement.setString(1, solarPanel.getSection());
-            statement.setInt(2, solarPanel.getRow());
-            statement.setInt(3, solarPanel.getColumn());
-            statement.setInt(4, solarPanel.getYearInstalled());
-            statement.setInt(5, solarPanel.getMaterial().getValue());
-            statement.setBoolean(6, solarPanel.isTracking());
-            return statement;
-        }, keyHolder);
+        int rowsAffected;
+        try {
+            rowsAffected = jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
+                setInsertValues(statement, solarPanel);
+                return statement;
+            }, keyHolder);
+        } catch (DuplicateKeyException ex) {
+            throw new DuplicateSolarPanelKeyException(solarPanel.getKey(), ex);
+        }
 
         if (rowsAffected == 0) {
             return null;
@@ -93,27 +221,140 @@ public class SolarPanelJdbcTemplateRepository implements SolarPanelRepository {
     }
 
     @Override
-    public boolean update(SolarPanel solarPanel) throws DataAccessException {
-        final String sql = "update solar_panel set " +
-                "section = ?, " +
-                "`row` = ?, " +
-                "`column` = ?, " +
-                "year_installed = ?, " +
-                "material_id = ?, " +
-                "is_tracking = ? " +
-                "where solar_panel_id = ?;";
+    @Transactional(rollbackFor = DataAccessException.class)
+    public SolarPanel update(SolarPanel solarPanel) throws DataAccessException {
+        SolarPanel existing = lockOne(LOCK_BY_ID_SQL, solarPanel.getId());
+        if (existing == null) {
+            return null;
+        }
+        try {
+            jdbcTemplate.update(UPDATE_SQL, getUpdateValues(solarPanel));
+        } catch (DuplicateKeyException ex) {
+            throw new DuplicateSolarPanelKeyException(solarPanel.getKey(), ex);
+        }
+        return existing;
+    }
+
+    @Override
+    @Transactional(rollbackFor = DataAccessException.class)
+    public SolarPanel deleteByKey(SolarPanelKey key) throws DataAccessException {
+        SolarPanel existing = lockOne(LOCK_BY_KEY_SQL, key.getSection(), key.getRow(), key.getColumn());
+        if (existing != null) {
+            jdbcTemplate.update(DELETE_SQL, key.getSection(), key.getRow(), key.getColumn());
+        }
+        return existing;
+    }
+
+    private SolarPanel lockOne(String sql, Object... args) {
+        List<SolarPanel> solarPanels = jdbcTemplate.query(sql, mapper, args);
+        return solarPanels.isEmpty() ? null : solarPanels.get(0);
+    }
+
+    // With `rewriteBatchedStatements=true` on the connection URL, MySQL Connector/J
+    // sends each batch as a single multi-row statement.
+    @Override
+    @Transactional(rollbackFor = DataAccessException.class)
+    public List<SolarPanel> createAll(List<SolarPanel> solarPanels) throws DataAccessException {
+        if (solarPanels.isEmpty()) {
+            return solarPanels;
+        }
+
+        // JdbcTemplate.batchUpdate doesn't hand back generated keys, so drop down to the connection.
+        try {
+            return jdbcTemplate.execute((ConnectionCallback<List<SolarPanel>>) connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                    for (SolarPanel solarPanel : solarPanels) {
+                        setInsertValues(statement, solarPanel);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
 
-        int rowsUpdated = jdbcTemplate.update(sql, solarPanel.getSection(), solarPanel.getRow(),
+                    try (ResultSet keys = statement.getGeneratedKeys()) {
+                        for (SolarPanel solarPanel : solarPanels) {
+                            if (keys.next()) {
+                                solarPanel.setId(keys.getInt(1));
+                            }
+                        }
+                    }
+                }
+                return solarPanels;
+            });
+        } catch (DuplicateKeyException ex) {
+            throw new DuplicateSolarPanelKeyException("A SolarPanel in the batch already exists.", ex);
+        }
+    }
+
+    @Override
+    @Transactional(rollbackFor = DataAccessException.class)
+    public boolean[] updateAll(List<SolarPanel> solarPanels) throws DataAccessException {
+        List<Object[]> batchArgs = new ArrayList<>(solarPanels.size());
+        for (SolarPanel solarPanel : solarPanels) {
+            batchArgs.add(getUpdateValues(solarPanel));
+        }
+        try {
+            return toAffected(jdbcTemplate.batchUpdate(UPDATE_SQL, batchArgs));
+        } catch (DuplicateKeyException ex) {
+            throw new DuplicateSolarPanelKeyException("A SolarPanel in the batch already exists.", ex);
+        }
+    }
+
+    @Override
+    @Transactional(rollbackFor = DataAccessException.class)
+    public boolean[] deleteAll(List<SolarPanelKey> keys) throws DataAccessException {
+        List<Object[]> batchArgs = new ArrayList<>(keys.size());
+        for (SolarPanelKey key : keys) {
+            batchArgs.add(new Object[]{key.getSection(), key.getRow(), key.getColumn()});
+        }
+        return toAffected(jdbcTemplate.batchUpdate(DELETE_SQL, batchArgs));
+    }
+
+    // Counts panels per value of one column, in column order.
+    private <K> Map<K, Integer> countBy(String column, RowMapper<K> keyMapper) {
+        final String sql = String.format("select %1$s, count(*) from solar_panel " +
+                "group by %1$s order by %1$s;", column);
+
+        Map<K, Integer> result = new LinkedHashMap<>();
+        jdbcTemplate.query(sql, (RowCallbackHandler) rs ->
+                result.put(keyMapper.mapRow(rs, rs.getRow()), rs.getInt(2)));
+        return result;
+    }
+
+    private void setInsertValues(PreparedStatement statement, SolarPanel solarPanel) throws SQLException {
+        statement.setString(1, solarPanel.getSection());
+        statement.setInt(2, solarPanel.getRow());
+        statement.setInt(3, solarPanel.getColumn());
+        statement.setInt(4, solarPanel.getYearInstalled());
+        statement.setInt(5, solarPanel.getMaterial().getValue());
+        statement.setBoolean(6, solarPanel.isTracking());
+    }
+
+    private Object[] getUpdateValues(SolarPanel solarPanel) {
+        return new Object[]{solarPanel.getSection(), solarPanel.getRow(),
                 solarPanel.getColumn(), solarPanel.getYearInstalled(),
                 solarPanel.getMaterial().getValue(), solarPanel.isTracking(),
-                solarPanel.getId());
+                solarPanel.getId()};
+    }
 
-        return rowsUpdated > 0;
+    private boolean[] toAffected(int[] rowCounts) {
+        boolean[] affected = new boolean[rowCounts.length];
+        for (int i = 0; i < rowCounts.length; i++) {
+            affected[i] = rowCounts[i] > 0 || rowCounts[i] == Statement.SUCCESS_NO_INFO;
+        }
+        return affected;
     }
 
-    @Override
-    public boolean deleteByKey(SolarPanelKey key) throws DataAccessException {
-        final String sql = "delete from solar_panel where section = ? and `row` = ? and `column` = ?;";
-        return jdbcTemplate.update(sql, key.getSection(), key.getRow(), key.getColumn()) > 0;
+    // Lets the hedger cancel the statement if the other query answers first.
+    private static PreparedStatementCreator hedgeable(ReadHedger.Attempt attempt, String sql, Object... args) {
+        return connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            try {
+                attempt.started(statement);
+                new ArgumentPreparedStatementSetter(args).setValues(statement);
+            } catch (SQLException ex) {
+                statement.close();
+                throw ex;
+            }
+            return statement;
+        };
     }
 }
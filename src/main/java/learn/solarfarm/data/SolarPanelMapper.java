@@ -7,17 +7,27 @@ import org.springframework.jdbc.core.RowMapper;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
+/**
+ * Maps a row selected with {@link #COLUMN_NAMES} to a SolarPanel.
+ *
+ * Columns are read by position rather than by name, and the panel is built
+ * with its all-args constructor so each row allocates exactly one SolarPanelKey.
+ * The mapper is stateless; share {@link #INSTANCE}.
+ */
 public class SolarPanelMapper implements RowMapper<SolarPanel> {
+    public static final String COLUMN_NAMES =
+            "solar_panel_id, section, `row`, `column`, year_installed, material_id, is_tracking";
+    public static final SolarPanelMapper INSTANCE = new SolarPanelMapper();
+
     @Override
     public SolarPanel mapRow(ResultSet rs, int i) throws SQLException {
-        SolarPanel sp = new SolarPanel();
-        sp.setId(rs.getInt("solar_panel_id"));
-        sp.setSection(rs.getString("section"));
-        sp.setRow(rs.getInt("row"));
-        sp.setColumn(rs.getInt("column"));
-        sp.setYearInstalled(rs.getInt("year_installed"));
-        sp.setMaterial(Material.findByValue(rs.getInt("material_id")));
-        sp.setTracking(rs.getBoolean("is_tracking"));
-        return sp;
+        return new SolarPanel(
+                rs.getInt(1),
+                rs.getString(2),
+                rs.getInt(3),
+                rs.getInt(4),
+                rs.getInt(5),
+                Material.findByValue(rs.getInt(6)),
+                rs.getBoolean(7));
     }
 }
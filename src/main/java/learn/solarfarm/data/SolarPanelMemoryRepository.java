@@ -0,0 +1,339 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Serves every read from an in-memory, columnar copy of the solar_panel
+ * table. Activate the `memory` profile instead of a data profile.
+ *
+ * The copy is loaded from MySQL at startup. Writes go to MySQL first and
+ * reach memory once they commit. Writes run one at a time, from their
+ * statement until their change is in memory, so memory applies them in the
+ * order MySQL commits them. The copy stays correct as long as this app is
+ * the table's only writer. Call `reload` after changing the table some
+ * other way.
+ */
+@Repository
+@Profile("memory")
+public class SolarPanelMemoryRepository implements SolarPanelRepository {
+    // streamAll copies this many panels at a time, so a slow consumer never holds the lock.
+    private static final int STREAM_CHUNK_SIZE = 1000;
+
+    private final SolarPanelRepository database;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Held from a write's statement until its transaction completes.
+    private final ReentrantLock writes = new ReentrantLock();
+
+    private SolarPanelColumns columns = new SolarPanelColumns();
+
+    @Autowired
+    public SolarPanelMemoryRepository(JdbcTemplate jdbcTemplate) {
+        this(new SolarPanelJdbcTemplateRepository(jdbcTemplate));
+    }
+
+    SolarPanelMemoryRepository(SolarPanelRepository database) {
+        this.database = database;
+    }
+
+    @PostConstruct
+    public void reload() throws DataAccessException {
+        lock.writeLock().lock();
+        try {
+            SolarPanelColumns loaded = new SolarPanelColumns();
+            database.streamAll(loaded::put);
+            columns = loaded;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return columns.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<SolarPanel> findAll() throws DataAccessException {
+        lock.readLock().lock();
+        try {
+            ArrayList<SolarPanel> result = new ArrayList<>(columns.size());
+            columns.forEach(result::add);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<SolarPanel> findPage(SolarPanelKey after, int limit) throws DataAccessException {
+        lock.readLock().lock();
+        try {
+            return columns.findPage(after, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void streamAll(Consumer<SolarPanel> consumer) throws DataAccessException {
+        List<SolarPanel> chunk;
+        SolarPanelKey after = null;
+        do {
+            chunk = findPage(after, STREAM_CHUNK_SIZE);
+            chunk.forEach(consumer);
+            if (!chunk.isEmpty()) {
+                after = chunk.get(chunk.size() - 1).getKey();
+            }
+        } while (chunk.size() == STREAM_CHUNK_SIZE);
+    }
+
+    @Override
+    public List<SolarPanel> findBySection(String section) throws DataAccessException {
+        lock.readLock().lock();
+        try {
+            return columns.findBySection(section);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<SolarPanel> findByGridRange(String section, int minRow, int maxRow,
+                                            int minColumn, int maxColumn) throws DataAccessException {
+        lock.readLock().lock();
+        try {
+            return columns.findByGridRange(section, minRow, maxRow, minColumn, maxColumn);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public SolarPanel findById(int id) throws DataAccessException {
+        lock.readLock().lock();
+        try {
+            return columns.findById(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public SolarPanel findByKey(SolarPanelKey key) throws DataAccessException {
+        lock.readLock().lock();
+        try {
+            return columns.findByKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<SolarPanel> findByKeys(Collection<SolarPanelKey> keys) throws DataAccessException {
+        lock.readLock().lock();
+        try {
+            ArrayList<SolarPanel> result = new ArrayList<>();
+            for (SolarPanelKey key : keys) {
+                SolarPanel solarPanel = columns.findByKey(key);
+                if (solarPanel != null) {
+                    result.add(solarPanel);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, Integer> countBySection() throws DataAccessException {
+        lock.readLock().lock();
+        try {
+            return columns.countBySection();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<Material, Integer> countByMaterial() throws DataAccessException {
+        lock.readLock().lock();
+        try {
+            return columns.countByMaterial();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<Boolean, Integer> countByTracking() throws DataAccessException {
+        lock.readLock().lock();
+        try {
+            return columns.countByTracking();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<Integer, Integer> countByYearInstalled() throws DataAccessException {
+        lock.readLock().lock();
+        try {
+            return columns.countByYearInstalled();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public SolarPanel create(SolarPanel solarPanel) throws DataAccessException {
+        return write(() -> database.create(solarPanel), created -> {
+            if (created == null) {
+                return null;
+            }
+            SolarPanel copy = copyOf(created);
+            return () -> columns.put(copy);
+        });
+    }
+
+    @Override
+    public SolarPanel update(SolarPanel solarPanel) throws DataAccessException {
+        return write(() -> database.update(solarPanel), existing -> {
+            if (existing == null) {
+                return null;
+            }
+            SolarPanel copy = copyOf(solarPanel);
+            return () -> putById(copy);
+        });
+    }
+
+    @Override
+    public SolarPanel deleteByKey(SolarPanelKey key) throws DataAccessException {
+        return write(() -> database.deleteByKey(key), deleted -> () -> columns.remove(key));
+    }
+
+    @Override
+    @Transactional(rollbackFor = DataAccessException.class)
+    public List<SolarPanel> createAll(List<SolarPanel> solarPanels) throws DataAccessException {
+        return write(() -> database.createAll(solarPanels), created -> {
+            List<SolarPanel> copies = copyOf(created);
+            return () -> copies.forEach(columns::put);
+        });
+    }
+
+    @Override
+    @Transactional(rollbackFor = DataAccessException.class)
+    public boolean[] updateAll(List<SolarPanel> solarPanels) throws DataAccessException {
+        return write(() -> database.updateAll(solarPanels), updated -> {
+            List<SolarPanel> copies = new ArrayList<>();
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i]) {
+                    copies.add(copyOf(solarPanels.get(i)));
+                }
+            }
+            return () -> copies.forEach(this::putById);
+        });
+    }
+
+    @Override
+    @Transactional(rollbackFor = DataAccessException.class)
+    public boolean[] deleteAll(List<SolarPanelKey> keys) throws DataAccessException {
+        List<SolarPanelKey> removed = new ArrayList<>(keys);
+        return write(() -> database.deleteAll(keys), deleted -> () -> removed.forEach(columns::remove));
+    }
+
+    // Only called with the write lock held.
+    private void putById(SolarPanel solarPanel) {
+        if (!columns.replaceById(solarPanel)) {
+            columns.put(solarPanel);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Write<T> {
+        T write() throws DataAccessException;
+    }
+
+    // Runs a write to MySQL, then applies its change to memory once the
+    // surrounding transaction commits, or right away when there isn't one.
+    // `writes` stays held until then, so no other write can commit in between.
+    private <T> T write(Write<T> write, Function<T, Runnable> toChange) throws DataAccessException {
+        writes.lock();
+        boolean unlockOnCompletion = false;
+        try {
+            T result = write.write();
+            Runnable change = toChange.apply(result);
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        apply(change);
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        writes.unlock();
+                    }
+                });
+                unlockOnCompletion = true;
+            } else {
+                apply(change);
+            }
+            return result;
+        } finally {
+            if (!unlockOnCompletion) {
+                writes.unlock();
+            }
+        }
+    }
+
+    private void apply(Runnable change) {
+        if (change == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            change.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Callers are free to mutate what they passed in, so memory copies it first.
+    private static SolarPanel copyOf(SolarPanel sp) {
+        return new SolarPanel(sp.getId(), sp.getSection(), sp.getRow(), sp.getColumn(),
+                sp.getYearInstalled(), sp.getMaterial(), sp.isTracking());
+    }
+
+    private static List<SolarPanel> copyOf(List<SolarPanel> solarPanels) {
+        ArrayList<SolarPanel> result = new ArrayList<>(solarPanels.size());
+        for (SolarPanel sp : solarPanels) {
+            result.add(copyOf(sp));
+        }
+        return result;
+    }
+}
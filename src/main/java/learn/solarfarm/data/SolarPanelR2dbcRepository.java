@@ -0,0 +1,101 @@
+package learn.solarfarm.data;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.Statement;
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.util.function.Function;
+
+/**
+ * Reads through R2DBC's non-blocking driver, on its few event loop threads.
+ * Add `r2dbc` to the active profiles alongside the data profile, e.g.
+ * `jdbc-template,r2dbc`; writes and the other reads stay on JDBC.
+ *
+ * The repository owns its connection pool rather than sharing a
+ * ConnectionFactory bean: Spring Boot drops the JDBC DataSource whenever one
+ * exists, so App excludes R2dbcAutoConfiguration too.
+ */
+@Repository
+@Profile("r2dbc")
+public class SolarPanelR2dbcRepository implements SolarPanelReactiveRepository {
+    private static final String SOLAR_PANEL_COLUMN_NAMES = SolarPanelMapper.COLUMN_NAMES;
+    static final String FIND_ALL_SQL = String.format("select %s from solar_panel " +
+            "order by section, `row`, `column`;", SOLAR_PANEL_COLUMN_NAMES);
+    static final String FIND_BY_SECTION_SQL = String.format("select %s from solar_panel " +
+            "where section = ? order by `row`, `column`;", SOLAR_PANEL_COLUMN_NAMES);
+
+    private final ConnectionFactory connectionFactory;
+
+    @Autowired
+    public SolarPanelR2dbcRepository(@Value("${solarfarm.r2dbc.url}") String url,
+                                     @Value("${solarfarm.r2dbc.username}") String username,
+                                     @Value("${solarfarm.r2dbc.password}") String password,
+                                     @Value("${solarfarm.r2dbc.pool-size:10}") int poolSize) {
+        this(new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(
+                ConnectionFactoryOptions.parse(url).mutate()
+                        .option(ConnectionFactoryOptions.USER, username)
+                        .option(ConnectionFactoryOptions.PASSWORD, password)
+                        .build()))
+                .initialSize(0)
+                .maxSize(poolSize)
+                .build()));
+    }
+
+    SolarPanelR2dbcRepository(ConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+    }
+
+    @Override
+    public Flux<SolarPanel> findAll() {
+        return query(connection -> connection.createStatement(FIND_ALL_SQL))
+                .onErrorMap(ex -> new DataAccessException("Error finding all solar panels.", ex));
+    }
+
+    @Override
+    public Flux<SolarPanel> findBySection(String section) {
+        return query(connection -> connection.createStatement(FIND_BY_SECTION_SQL).bind(0, section))
+                .onErrorMap(ex -> new DataAccessException("Error finding solar panels by section.", ex));
+    }
+
+    @PreDestroy
+    public void close() {
+        if (connectionFactory instanceof ConnectionPool) {
+            ((ConnectionPool) connectionFactory).dispose();
+        }
+    }
+
+    // Borrows a connection for as long as the subscription lasts, and returns it
+    // when the rows run out, the query fails, or the subscriber cancels.
+    private Flux<SolarPanel> query(Function<Connection, Statement> statement) {
+        return Flux.usingWhen(Mono.from(connectionFactory.create()),
+                connection -> Flux.from(statement.apply(connection).execute())
+                        .concatMap(result -> result.map((row, metadata) -> mapRow(row))),
+                Connection::close);
+    }
+
+    // Same column order as SolarPanelMapper.
+    private static SolarPanel mapRow(Row row) {
+        return new SolarPanel(
+                row.get(0, Integer.class),
+                row.get(1, String.class),
+                row.get(2, Integer.class),
+                row.get(3, Integer.class),
+                row.get(4, Integer.class),
+                Material.findByValue(row.get(5, Integer.class)),
+                row.get(6, Boolean.class));
+    }
+}
@@ -0,0 +1,16 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.SolarPanel;
+import reactor.core.publisher.Flux;
+
+/**
+ * The reactive counterpart of SolarPanelRepository's large reads. Rows are
+ * read as the subscriber asks for them, so a slow client slows the query
+ * instead of piling rows up in memory. Failures arrive as a
+ * DataAccessException error signal.
+ */
+public interface SolarPanelReactiveRepository {
+    Flux<SolarPanel> findAll();
+
+    Flux<SolarPanel> findBySection(String section);
+}
@@ -1,20 +1,56 @@
 package learn.solarfarm.data;
 
+import learn.solarfarm.models.Material;
 import learn.solarfarm.models.SolarPanel;
 import learn.solarfarm.models.SolarPanelKey;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface SolarPanelRepository {
     List<SolarPanel> findAll() throws DataAccessException;
 
+    List<SolarPanel> findPage(SolarPanelKey after, int limit) throws DataAccessException;
+
+    void streamAll(Consumer<SolarPanel> consumer) throws DataAccessException;
+
     List<SolarPanel> findBySection(String section) throws DataAccessException;
 
+    List<SolarPanel> findByGridRange(String section, int minRow, int maxRow,
+                                     int minColumn, int maxColumn) throws DataAccessException;
+
+    SolarPanel findById(int id) throws DataAccessException;
+
     SolarPanel findByKey(SolarPanelKey key) throws DataAccessException;
 
+    List<SolarPanel> findByKeys(Collection<SolarPanelKey> keys) throws DataAccessException;
+
+    Map<String, Integer> countBySection() throws DataAccessException;
+
+    Map<Material, Integer> countByMaterial() throws DataAccessException;
+
+    Map<Boolean, Integer> countByTracking() throws DataAccessException;
+
+    Map<Integer, Integer> countByYearInstalled() throws DataAccessException;
+
     SolarPanel create(SolarPanel solarPanel) throws DataAccessException;
 
-    boolean update(SolarPanel solarPanel) throws DataAccessException;
+    /**
+     * Replaces the panel with the same id.
+     * @return The panel as it was before the update, or null if there's none with its id.
+     */
+    SolarPanel update(SolarPanel solarPanel) throws DataAccessException;
+
+    /**
+     * @return The deleted panel, or null if there's none with the key.
+     */
+    SolarPanel deleteByKey(SolarPanelKey key) throws DataAccessException;
+
+    List<SolarPanel> createAll(List<SolarPanel> solarPanels) throws DataAccessException;
+
+    boolean[] updateAll(List<SolarPanel> solarPanels) throws DataAccessException;
 
-    boolean deleteByKey(SolarPanelKey key) throws DataAccessException;
+    boolean[] deleteAll(List<SolarPanelKey> keys) throws DataAccessException;
 }
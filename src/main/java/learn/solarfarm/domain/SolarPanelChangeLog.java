@@ -0,0 +1,86 @@
+package learn.solarfarm.domain;
+
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelChange;
+import learn.solarfarm.models.SolarPanelKey;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The most recent solar panel changes, in a fixed-size ring. Readers keep
+ * their own position, so memory doesn't grow with the number of readers or
+ * how far behind they are. A reader that falls more than `capacity` changes
+ * behind can't catch up and has to reload.
+ *
+ * Sequences start at the startup time in microseconds, so a position from
+ * before a restart always reads as expired rather than as a later change.
+ */
+@Component
+public class SolarPanelChangeLog {
+    private final SolarPanelChange[] ring;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    // The sequence of the latest change. Changes up to `ring.length` before it are kept.
+    private long latest = System.currentTimeMillis() * 1000;
+    private int size;
+
+    public SolarPanelChangeLog(@Value("${solarfarm.changes.capacity:10000}") int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Change log capacity must be at least 1.");
+        }
+        ring = new SolarPanelChange[capacity];
+    }
+
+    public synchronized long getLatestSequence() {
+        return latest;
+    }
+
+    /**
+     * Reads the changes after a sequence, oldest first.
+     * @param after The sequence of the last change the reader has seen.
+     * @param limit The most changes to return.
+     * @return Up to `limit` changes, or null if changes after `after` have
+     * already been dropped from the ring, or `after` was never a sequence here.
+     */
+    public synchronized List<SolarPanelChange> readAfter(long after, int limit) {
+        long oldest = latest - size + 1;
+        if (after < oldest - 1 || after > latest) {
+            return null;
+        }
+
+        List<SolarPanelChange> result = new ArrayList<>();
+        for (long sequence = after + 1; sequence <= latest && result.size() < limit; sequence++) {
+            result.add(ring[slot(sequence)]);
+        }
+        return result;
+    }
+
+    /**
+     * Runs after every publish, on the writing thread, so it should only
+     * hand off work.
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    void publish(SolarPanelChange.Type type, SolarPanelKey key, SolarPanel solarPanel) {
+        synchronized (this) {
+            latest++;
+            ring[slot(latest)] = new SolarPanelChange(latest, type, key, solarPanel);
+            size = Math.min(size + 1, ring.length);
+        }
+        listeners.forEach(Runnable::run);
+    }
+
+    private int slot(long sequence) {
+        return (int) Math.floorMod(sequence, (long) ring.length);
+    }
+}
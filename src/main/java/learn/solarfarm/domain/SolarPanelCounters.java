@@ -0,0 +1,72 @@
+package learn.solarfarm.domain;
+
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelStats;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Solar panel counts that are adjusted one panel at a time, so reading them
+ * never touches the database. Sections are counted case-insensitively, as
+ * MySQL groups them. Not thread-safe.
+ */
+class SolarPanelCounters {
+    private final Map<String, Integer> bySection = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final Map<Material, Integer> byMaterial = new EnumMap<>(Material.class);
+    private final Map<Boolean, Integer> byTracking = new TreeMap<>();
+    private final Map<Integer, Integer> byYearInstalled = new TreeMap<>();
+
+    // Built on the first read after a change.
+    private SolarPanelStats stats;
+
+    SolarPanelCounters(SolarPanelStats counted) {
+        counted.getBySection().forEach((section, count) -> adjust(bySection, section, count));
+        byMaterial.putAll(counted.getByMaterial());
+        byTracking.putAll(counted.getByTracking());
+        byYearInstalled.putAll(counted.getByYearInstalled());
+    }
+
+    void add(SolarPanel solarPanel) {
+        adjust(solarPanel, 1);
+    }
+
+    void remove(SolarPanel solarPanel) {
+        adjust(solarPanel, -1);
+    }
+
+    SolarPanelStats getStats() {
+        if (stats == null) {
+            stats = new SolarPanelStats(bySection, byMaterial, byTracking, byYearInstalled);
+        }
+        return stats;
+    }
+
+    /**
+     * Returns true if these counters agree with stats counted by the repository.
+     */
+    boolean matches(SolarPanelStats counted) {
+        Map<String, Integer> countedBySection = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        counted.getBySection().forEach((section, count) -> adjust(countedBySection, section, count));
+
+        return bySection.equals(countedBySection)
+                && byMaterial.equals(counted.getByMaterial())
+                && byTracking.equals(counted.getByTracking())
+                && byYearInstalled.equals(counted.getByYearInstalled());
+    }
+
+    private void adjust(SolarPanel solarPanel, int delta) {
+        adjust(bySection, solarPanel.getSection(), delta);
+        adjust(byMaterial, solarPanel.getMaterial(), delta);
+        adjust(byTracking, solarPanel.isTracking(), delta);
+        adjust(byYearInstalled, solarPanel.getYearInstalled(), delta);
+        stats = null;
+    }
+
+    // Drops a key once its count reaches zero, so the maps look like a GROUP BY.
+    private static <K> void adjust(Map<K, Integer> counts, K key, int delta) {
+        counts.merge(key, delta, (count, change) -> count + change == 0 ? null : count + change);
+    }
+}
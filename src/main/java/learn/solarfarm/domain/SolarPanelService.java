@@ -1,21 +1,32 @@
 package learn.solarfarm.domain;
 
 import learn.solarfarm.data.DataAccessException;
+import learn.solarfarm.data.DuplicateSolarPanelKeyException;
 import learn.solarfarm.data.SolarPanelRepository;
 import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelChange;
 import learn.solarfarm.models.SolarPanelKey;
+import learn.solarfarm.models.SolarPanelStats;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
 import java.time.Year;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 @Service
 public class SolarPanelService {
     public final static int MAX_ROW_COLUMN = 250;
+    public final static int MAX_PAGE_SIZE = 1000;
+
+    private final static String DUPLICATE_KEY_MESSAGE = "SolarPanel `section`, `row`, and `column` must be unique";
 
     private enum ValidationMode {
         CREATE, UPDATE;
@@ -25,33 +36,168 @@ public class SolarPanelService {
     private Validator validator;
 
     private final SolarPanelRepository repository;
+    private final SolarPanelChangeLog changeLog;
+
+    // Stats are counted by the repository once, then kept current by every
+    // write. Null until they're first counted, and again after a batch update.
+    // Every write bumps the generation, so a count that overlapped one is
+    // known to be unreliable.
+    private final Object statsLock = new Object();
+    private SolarPanelCounters counters;
+    private long writeGeneration;
 
-    public SolarPanelService(SolarPanelRepository repository) {
+    // Bumped once a write has reached the repository, so data read after
+    // looking up a version is never older than that version.
+    private final SolarPanelVersions versions = new SolarPanelVersions();
+
+    public SolarPanelService(SolarPanelRepository repository, SolarPanelChangeLog changeLog) {
         this.repository = repository;
+        this.changeLog = changeLog;
     }
 
     public static int getMaxInstallationYear() {
         return Year.now().getValue();
     }
 
+    public static int getPageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    /**
+     * The version of the whole table. It goes up after every write, so an
+     * unchanged version means unchanged data.
+     */
+    public long getVersion() {
+        return versions.getVersion();
+    }
+
+    /**
+     * The version of one section. It goes up after every write to that section.
+     */
+    public long getSectionVersion(String section) {
+        return versions.getSectionVersion(section);
+    }
+
     public List<SolarPanel> findAll() throws DataAccessException {
         return repository.findAll();
     }
 
+    /**
+     * Finds the next page of solar panels in section, row, column order.
+     * @param after The key of the last solar panel on the previous page, or null for the first page.
+     * @param limit The page size. Clamped to the range 1 to MAX_PAGE_SIZE.
+     * @return A List of at most `limit` solar panels.
+     */
+    public List<SolarPanel> findPage(SolarPanelKey after, int limit) throws DataAccessException {
+        return repository.findPage(after, getPageSize(limit));
+    }
+
+    public void streamAll(Consumer<SolarPanel> consumer) throws DataAccessException {
+        repository.streamAll(consumer);
+    }
+
     public List<SolarPanel> findBySection(String section) throws DataAccessException {
         return repository.findBySection(section);
     }
 
+    /**
+     * Finds the solar panels in a rectangle of one section, in row, column order.
+     * @param section The section.
+     * @param minRow The first row, from 1 to MAX_ROW_COLUMN.
+     * @param maxRow The last row, inclusive.
+     * @param minColumn The first column, from 1 to MAX_ROW_COLUMN.
+     * @param maxColumn The last column, inclusive.
+     * @return A Result with the solar panels, or INVALID if the rectangle is out of bounds.
+     */
+    public Result<List<SolarPanel>> findByGridRange(String section, int minRow, int maxRow,
+                                                    int minColumn, int maxColumn) throws DataAccessException {
+        Result<List<SolarPanel>> result = new Result<>();
+
+        if (section == null || section.isBlank()) {
+            result.addMessage("SolarPanel `section` is required.", ResultType.INVALID);
+        }
+        validateGridSpan(result, "row", minRow, maxRow);
+        validateGridSpan(result, "column", minColumn, maxColumn);
+
+        if (result.isSuccess()) {
+            result.setPayload(repository.findByGridRange(section, minRow, maxRow, minColumn, maxColumn));
+        }
+
+        return result;
+    }
+
     public SolarPanel findByKey(SolarPanelKey key) throws DataAccessException {
         return repository.findByKey(key);
     }
 
+    /**
+     * Counts the solar panels by section, material, tracking, and install year.
+     * The counts come from the repository the first time, then are adjusted
+     * in memory by every write.
+     */
+    public SolarPanelStats getStats() throws DataAccessException {
+        synchronized (statsLock) {
+            if (counters != null) {
+                return counters.getStats();
+            }
+        }
+
+        reconcileStats();
+
+        synchronized (statsLock) {
+            if (counters != null) {
+                return counters.getStats();
+            }
+        }
+        // A write overlapped the count. It's still a correct answer for this read.
+        return countStats();
+    }
+
+    /**
+     * Counts the solar panels in the repository and compares them with the
+     * in-memory stats. Replaces the stats if they've drifted, or if they
+     * haven't been counted yet. Skipped if a write overlaps the count.
+     * @return true if the in-memory stats had drifted from the repository.
+     */
+    public boolean reconcileStats() throws DataAccessException {
+        long generation;
+        synchronized (statsLock) {
+            generation = writeGeneration;
+        }
+
+        SolarPanelStats counted = countStats();
+
+        synchronized (statsLock) {
+            if (generation != writeGeneration) {
+                return false;
+            }
+            boolean drifted = counters != null && !counters.matches(counted);
+            if (counters == null || drifted) {
+                counters = new SolarPanelCounters(counted);
+            }
+            return drifted;
+        }
+    }
+
     public Result<SolarPanel> create(SolarPanel solarPanel) throws DataAccessException {
         Result<SolarPanel> result = validate(solarPanel, ValidationMode.CREATE);
 
+        // The unique index on section, row, and column catches duplicates,
+        // so there's no read before the write.
         if (result.isSuccess()) {
-            solarPanel = repository.create(solarPanel);
-            result.setPayload(solarPanel);
+            SolarPanel created = null;
+            try {
+                created = repository.create(solarPanel);
+                result.setPayload(created);
+                if (created != null) {
+                    changeLog.publish(SolarPanelChange.Type.CREATED, created.getKey(), created);
+                }
+            } catch (DuplicateSolarPanelKeyException ex) {
+                result.addMessage(DUPLICATE_KEY_MESSAGE, ResultType.INVALID);
+            } finally {
+                statsChanged(null, created);
+                versions.changed(List.of(solarPanel.getSection()));
+            }
         }
 
         return result;
@@ -61,11 +207,27 @@ public class SolarPanelService {
         Result<SolarPanel> result = validate(solarPanel, ValidationMode.UPDATE);
 
         if (result.isSuccess()) {
-            if (repository.update(solarPanel)) {
-                result.setPayload(solarPanel);
-            } else {
-                result.addMessage("SolarPanel id %s was not found.",
-                        ResultType.NOT_FOUND, solarPanel.getId());
+            // The repository hands back the old row, which the stats and versions
+            // need to move the panel out of its old section.
+            SolarPanel existing = null;
+            try {
+                existing = repository.update(solarPanel);
+                if (existing != null) {
+                    result.setPayload(solarPanel);
+                    changeLog.publish(SolarPanelChange.Type.UPDATED, solarPanel.getKey(), solarPanel);
+                } else {
+                    result.addMessage("SolarPanel id %s was not found.",
+                            ResultType.NOT_FOUND, solarPanel.getId());
+                }
+            } catch (DuplicateSolarPanelKeyException ex) {
+                result.addMessage(DUPLICATE_KEY_MESSAGE, ResultType.INVALID);
+            } finally {
+                statsChanged(existing, existing != null ? solarPanel : null);
+                if (existing != null) {
+                    versions.changed(List.of(existing.getSection(), solarPanel.getSection()));
+                } else {
+                    versions.changed(List.of(solarPanel.getSection()));
+                }
             }
         }
 
@@ -74,12 +236,245 @@ public class SolarPanelService {
 
     public Result<SolarPanel> deleteByKey(SolarPanelKey key) throws DataAccessException {
         Result<SolarPanel> result = new Result<>();
-        if (!repository.deleteByKey(key)) {
-            result.addMessage("SolarPanel %s was not found.", ResultType.NOT_FOUND, key);
+        SolarPanel deleted = null;
+        try {
+            deleted = repository.deleteByKey(key);
+            if (deleted != null) {
+                changeLog.publish(SolarPanelChange.Type.DELETED, key, null);
+            } else {
+                result.addMessage("SolarPanel %s was not found.", ResultType.NOT_FOUND, key);
+            }
+        } finally {
+            statsChanged(deleted, null);
+            versions.changed(List.of(key.getSection()));
         }
         return result;
     }
 
+    /**
+     * Validates every solar panel and creates the valid ones in a single batch.
+     * @param solarPanels The solar panels to create.
+     * @return One Result per solar panel, in the same order.
+     */
+    public List<Result<SolarPanel>> createAll(List<SolarPanel> solarPanels) throws DataAccessException {
+        List<Result<SolarPanel>> results = validateAll(solarPanels, ValidationMode.CREATE);
+        List<SolarPanel> valid = new ArrayList<>();
+
+        for (int i = 0; i < solarPanels.size(); i++) {
+            if (results.get(i).isSuccess()) {
+                valid.add(solarPanels.get(i));
+                results.get(i).setPayload(solarPanels.get(i));
+            }
+        }
+
+        List<SolarPanel> created = List.of();
+        try {
+            created = repository.createAll(valid);
+            for (SolarPanel solarPanel : created) {
+                changeLog.publish(SolarPanelChange.Type.CREATED, solarPanel.getKey(), solarPanel);
+            }
+        } catch (DuplicateSolarPanelKeyException ex) {
+            rejectBatch(results);
+        } finally {
+            statsChanged(List.of(), created);
+            versions.changed(sectionsOf(valid));
+        }
+
+        return results;
+    }
+
+    /**
+     * Validates every solar panel and updates the valid ones in a single batch.
+     * @param solarPanels The solar panels to update.
+     * @return One Result per solar panel, in the same order.
+     */
+    public List<Result<SolarPanel>> updateAll(List<SolarPanel> solarPanels) throws DataAccessException {
+        List<Result<SolarPanel>> results = validateAll(solarPanels, ValidationMode.UPDATE);
+        List<SolarPanel> valid = new ArrayList<>();
+        List<Result<SolarPanel>> validResults = new ArrayList<>();
+
+        for (int i = 0; i < solarPanels.size(); i++) {
+            if (results.get(i).isSuccess()) {
+                valid.add(solarPanels.get(i));
+                validResults.add(results.get(i));
+            }
+        }
+
+        // Reading every old panel by id would cost a query per panel, so a
+        // batch update has the stats counted again on the next read instead.
+        boolean[] updated;
+        try {
+            updated = repository.updateAll(valid);
+        } catch (DuplicateSolarPanelKeyException ex) {
+            rejectBatch(results);
+            return results;
+        } finally {
+            statsInvalidated();
+            versions.changedEverySection();
+        }
+
+        for (int i = 0; i < valid.size(); i++) {
+            if (updated[i]) {
+                validResults.get(i).setPayload(valid.get(i));
+                changeLog.publish(SolarPanelChange.Type.UPDATED, valid.get(i).getKey(), valid.get(i));
+            } else {
+                validResults.get(i).addMessage("SolarPanel id %s was not found.",
+                        ResultType.NOT_FOUND, valid.get(i).getId());
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Deletes the solar panels with the given keys in a single batch.
+     * @param keys The keys of the solar panels to delete.
+     * @return One Result per key, in the same order.
+     */
+    public List<Result<SolarPanel>> deleteAll(List<SolarPanelKey> keys) throws DataAccessException {
+        List<Result<SolarPanel>> results = new ArrayList<>(keys.size());
+
+        Map<SolarPanelKey, SolarPanel> existing = new HashMap<>();
+        if (isStatsCounted()) {
+            for (SolarPanel solarPanel : repository.findByKeys(keys)) {
+                existing.put(solarPanel.getKey(), solarPanel);
+            }
+        }
+
+        boolean[] deleted = null;
+        try {
+            deleted = repository.deleteAll(keys);
+        } finally {
+            List<SolarPanel> removed = new ArrayList<>();
+            for (int i = 0; deleted != null && i < keys.size(); i++) {
+                SolarPanel solarPanel = existing.get(keys.get(i));
+                if (deleted[i] && solarPanel != null) {
+                    removed.add(solarPanel);
+                }
+            }
+            statsChanged(removed, List.of());
+            Set<String> sections = new HashSet<>();
+            for (SolarPanelKey key : keys) {
+                if (key != null) {
+                    sections.add(key.getSection());
+                }
+            }
+            versions.changed(sections);
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            Result<SolarPanel> result = new Result<>();
+            if (deleted[i]) {
+                changeLog.publish(SolarPanelChange.Type.DELETED, keys.get(i), null);
+            } else {
+                result.addMessage("SolarPanel %s was not found.", ResultType.NOT_FOUND, keys.get(i));
+            }
+            results.add(result);
+        }
+
+        return results;
+    }
+
+    /**
+     * Validates a batch without a query per solar panel. Keys repeated within the
+     * batch are caught in memory and keys already in use are found with one
+     * set-based repository query.
+     */
+    private List<Result<SolarPanel>> validateAll(List<SolarPanel> solarPanels, ValidationMode validationMode)
+            throws DataAccessException {
+        List<Result<SolarPanel>> results = new ArrayList<>(solarPanels.size());
+        Set<SolarPanelKey> batchKeys = new HashSet<>();
+
+        for (SolarPanel solarPanel : solarPanels) {
+            Result<SolarPanel> result = validate(solarPanel, validationMode);
+            if (result.isSuccess() && !batchKeys.add(solarPanel.getKey())) {
+                result.addMessage("SolarPanel %s appears more than once in the batch.",
+                        ResultType.INVALID, solarPanel.getKey());
+            }
+            results.add(result);
+        }
+
+        Map<SolarPanelKey, SolarPanel> existing = new HashMap<>();
+        for (SolarPanel solarPanel : repository.findByKeys(batchKeys)) {
+            existing.put(solarPanel.getKey(), solarPanel);
+        }
+
+        for (int i = 0; i < solarPanels.size(); i++) {
+            SolarPanel solarPanel = solarPanels.get(i);
+            if (results.get(i).isSuccess()) {
+                SolarPanel existingSolarPanel = existing.get(solarPanel.getKey());
+                if (existingSolarPanel != null && existingSolarPanel.getId() != solarPanel.getId()) {
+                    results.get(i).addMessage(DUPLICATE_KEY_MESSAGE, ResultType.INVALID);
+                }
+            }
+        }
+
+        return results;
+    }
+
+    // A key was taken by a concurrent write after validation, so the whole batch was rolled back.
+    private void rejectBatch(List<Result<SolarPanel>> results) {
+        for (Result<SolarPanel> result : results) {
+            if (result.isSuccess()) {
+                result.setPayload(null);
+                result.addMessage("SolarPanel batch was rolled back: " +
+                        "another write took one of its `section`, `row`, and `column` combinations.", ResultType.INVALID);
+            }
+        }
+    }
+
+    private static Set<String> sectionsOf(List<SolarPanel> solarPanels) {
+        Set<String> sections = new HashSet<>();
+        for (SolarPanel solarPanel : solarPanels) {
+            sections.add(solarPanel.getSection());
+        }
+        return sections;
+    }
+
+    private SolarPanelStats countStats() throws DataAccessException {
+        return new SolarPanelStats(
+                repository.countBySection(),
+                repository.countByMaterial(),
+                repository.countByTracking(),
+                repository.countByYearInstalled());
+    }
+
+    private boolean isStatsCounted() {
+        synchronized (statsLock) {
+            return counters != null;
+        }
+    }
+
+    // Called after every write, whether or not it succeeded. Writes that race
+    // on the same panel can leave the stats off by one; reconcileStats finds that.
+    private void statsChanged(SolarPanel removed, SolarPanel added) {
+        statsChanged(removed == null ? List.of() : List.of(removed),
+                added == null ? List.of() : List.of(added));
+    }
+
+    private void statsChanged(List<SolarPanel> removed, List<SolarPanel> added) {
+        synchronized (statsLock) {
+            writeGeneration++;
+            if (counters != null) {
+                removed.forEach(counters::remove);
+                added.forEach(counters::add);
+            }
+        }
+    }
+
+    private void statsInvalidated() {
+        synchronized (statsLock) {
+            writeGeneration++;
+            counters = null;
+        }
+    }
+
+    private void validateGridSpan(Result<?> result, String name, int min, int max) {
+        if (min < 1 || max > MAX_ROW_COLUMN || min > max) {
+            result.addMessage("Grid `%s` range must be within 1 to %s, with the first %s no greater than the last.",
+                    ResultType.INVALID, name, MAX_ROW_COLUMN, name);
+        }
+    }
+
     private Result<SolarPanel> validate(SolarPanel solarPanel, ValidationMode validationMode)
             throws DataAccessException {
         Result<SolarPanel> result = new Result<>();
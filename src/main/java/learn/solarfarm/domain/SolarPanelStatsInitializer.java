@@ -0,0 +1,36 @@
+package learn.solarfarm.domain;
+
+import learn.solarfarm.data.DataAccessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts the stats once the application is ready, so the first GET of
+ * /solarpanels/stats doesn't pay for it. Runs whether or not the stats are
+ * reconciled; set `solarfarm.stats.count-at-startup=false` to count them on
+ * first use instead.
+ */
+@Component
+@ConditionalOnProperty(name = "solarfarm.stats.count-at-startup", matchIfMissing = true)
+public class SolarPanelStatsInitializer {
+    private static final Logger logger = LoggerFactory.getLogger(SolarPanelStatsInitializer.class);
+
+    private final SolarPanelService service;
+
+    public SolarPanelStatsInitializer(SolarPanelService service) {
+        this.service = service;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void count() {
+        try {
+            service.reconcileStats();
+        } catch (DataAccessException | RuntimeException ex) {
+            logger.warn("Could not count solar panel stats at startup. They'll be counted on first use.", ex);
+        }
+    }
+}
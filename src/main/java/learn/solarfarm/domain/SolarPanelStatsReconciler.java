@@ -0,0 +1,46 @@
+package learn.solarfarm.domain;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import learn.solarfarm.data.DataAccessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodically checks the in-memory stats against the database, starting one
+ * interval after SolarPanelStatsInitializer has counted them at startup. Drift
+ * is logged, counted as `solarfarm.stats.drift`, and corrected. Set `solarfarm.stats.reconcile.enabled=false` to turn it off.
+ */
+@Component
+@EnableScheduling
+@ConditionalOnProperty(name = "solarfarm.stats.reconcile.enabled", matchIfMissing = true)
+public class SolarPanelStatsReconciler {
+    private static final Logger logger = LoggerFactory.getLogger(SolarPanelStatsReconciler.class);
+
+    private final SolarPanelService service;
+    private final Counter drift;
+
+    public SolarPanelStatsReconciler(SolarPanelService service, MeterRegistry registry) {
+        this.service = service;
+        this.drift = Counter.builder("solarfarm.stats.drift")
+                .description("Times the in-memory solar panel stats disagreed with the database")
+                .register(registry);
+    }
+
+    @Scheduled(initialDelayString = "${solarfarm.stats.reconcile.interval-ms:300000}",
+            fixedDelayString = "${solarfarm.stats.reconcile.interval-ms:300000}")
+    public void reconcile() {
+        try {
+            if (service.reconcileStats()) {
+                drift.increment();
+                logger.warn("Solar panel stats had drifted from the database and were recounted.");
+            }
+        } catch (DataAccessException | RuntimeException ex) {
+            logger.warn("Could not reconcile solar panel stats.", ex);
+        }
+    }
+}
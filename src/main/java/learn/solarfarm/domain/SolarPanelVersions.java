@@ -0,0 +1,57 @@
+package learn.solarfarm.domain;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Version numbers for the whole table and for each section, bumped after
+ * every write. A section's version is the table version of its last write.
+ *
+ * Versions start at the startup time in microseconds, so they keep
+ * increasing across restarts. They only see this app's writes, like the
+ * caches in front of the repository.
+ */
+class SolarPanelVersions {
+    // Sections past this many are forgotten and fall back to `floor`.
+    private static final int MAX_SECTIONS = 10_000;
+
+    private long version = System.currentTimeMillis() * 1000;
+    // The version of every section that isn't in `sections`.
+    private long floor = version;
+    // Keyed by lower-case section, since sections match case-insensitively.
+    private final Map<String, Long> sections = new HashMap<>();
+
+    synchronized long getVersion() {
+        return version;
+    }
+
+    synchronized long getSectionVersion(String section) {
+        return sections.getOrDefault(normalize(section), floor);
+    }
+
+    synchronized void changed(Collection<String> changedSections) {
+        version++;
+        if (sections.size() + changedSections.size() > MAX_SECTIONS) {
+            changedEverySection();
+            return;
+        }
+        for (String section : changedSections) {
+            sections.put(normalize(section), version);
+        }
+    }
+
+    /**
+     * For writes that can't say which sections they touched.
+     */
+    synchronized void changedEverySection() {
+        version++;
+        floor = version;
+        sections.clear();
+    }
+
+    private static String normalize(String section) {
+        return section == null ? "" : section.toLowerCase(Locale.ROOT);
+    }
+}
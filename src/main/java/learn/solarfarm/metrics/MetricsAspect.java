@@ -0,0 +1,92 @@
+package learn.solarfarm.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import learn.solarfarm.domain.Result;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Times every SolarPanelRepository and SolarPanelService method and counts
+ * errors and service outcomes. Controller endpoints are already timed by
+ * Spring Boot Actuator as `http.server.requests`.
+ *
+ * Meters:
+ * - solarfarm.repository (timer) and solarfarm.repository.errors (counter),
+ *   tagged with the repository class and method
+ * - solarfarm.service (timer) and solarfarm.service.errors (counter), tagged with the method
+ * - solarfarm.service.results (counter), tagged with the method and ResultType
+ */
+@Aspect
+@Component
+public class MetricsAspect {
+    private final MeterRegistry registry;
+
+    public MetricsAspect(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Around("execution(public * learn.solarfarm.data.SolarPanelRepository.*(..))")
+    public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time("solarfarm.repository", joinPoint);
+    }
+
+    @Around("execution(public * learn.solarfarm.domain.SolarPanelService.*(..))")
+    public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+        Object result = time("solarfarm.service", joinPoint);
+        countResults(joinPoint.getSignature().getName(), result);
+        return result;
+    }
+
+    private Object time(String name, ProceedingJoinPoint joinPoint) throws Throwable {
+        String className = joinPoint.getTarget().getClass().getSimpleName();
+        String method = joinPoint.getSignature().getName();
+        String exception = "none";
+
+        Timer.Sample sample = Timer.start(registry);
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable ex) {
+            exception = ex.getClass().getSimpleName();
+            Counter.builder(name + ".errors")
+                    .tag("class", className)
+                    .tag("method", method)
+                    .tag("exception", exception)
+                    .register(registry)
+                    .increment();
+            throw ex;
+        } finally {
+            sample.stop(Timer.builder(name)
+                    .tag("class", className)
+                    .tag("method", method)
+                    .tag("exception", exception)
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+    }
+
+    private void countResults(String method, Object returned) {
+        if (returned instanceof Result) {
+            countResult(method, (Result<?>) returned);
+        } else if (returned instanceof List) {
+            for (Object item : (List<?>) returned) {
+                if (item instanceof Result) {
+                    countResult(method, (Result<?>) item);
+                }
+            }
+        }
+    }
+
+    private void countResult(String method, Result<?> result) {
+        Counter.builder("solarfarm.service.results")
+                .tag("method", method)
+                .tag("type", result.getType().name())
+                .register(registry)
+                .increment();
+    }
+}
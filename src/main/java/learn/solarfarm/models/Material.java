@@ -10,6 +10,21 @@ public enum Material {
     CD_TE(4, "Cadmium Telluride", "CdTe"),
     CIGS(5, "Copper Indium Gallium Selenide", "CIGS");
 
+    // Indexed by value; values are small, dense, and start at 1.
+    private static final Material[] BY_VALUE;
+
+    static {
+        Material[] materials = values();
+        int max = 0;
+        for (Material material : materials) {
+            max = Math.max(max, material.value);
+        }
+        BY_VALUE = new Material[max + 1];
+        for (Material material : materials) {
+            BY_VALUE[material.value] = material;
+        }
+    }
+
     private final int value;
     private final String name;
     private final String abbreviation;
@@ -50,10 +65,8 @@ public enum Material {
      * @return A Material enum value.
      */
     public static Material findByValue(int value) {
-        for (Material material : Material.values()) {
-            if (material.getValue() == value) {
-                return material;
-            }
+        if (value >= 0 && value < BY_VALUE.length && BY_VALUE[value] != null) {
+            return BY_VALUE[value];
         }
         String message = String.format("No Material with value: %s.", value);
         throw new RuntimeException(message);
@@ -1,13 +1,15 @@
 package learn.solarfarm.models;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import learn.solarfarm.domain.SolarPanelService;
-import learn.solarfarm.validation.NoDuplicateSolarPanelKey;
 import learn.solarfarm.validation.NoFutureYear;
 
 import javax.validation.constraints.*;
 import java.util.Objects;
 
-@NoDuplicateSolarPanelKey(message = "SolarPanel `section`, `row`, and `column` must be unique")
+@JsonSerialize(using = SolarPanelSerializer.class)
+@JsonDeserialize(using = SolarPanelDeserializer.class)
 public class SolarPanel {
     private int id;
     @NotBlank(message = "SolarPanel `section` is required.")
@@ -0,0 +1,47 @@
+package learn.solarfarm.models;
+
+/**
+ * One write to a solar panel, numbered in the order it happened. Holds its
+ * own copy of the solar panel, so one instance can be sent to every subscriber.
+ */
+public class SolarPanelChange {
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final SolarPanelKey key;
+    private final SolarPanel solarPanel;
+
+    /**
+     * @param sequence The change's position in the feed.
+     * @param type What happened to the solar panel.
+     * @param key The solar panel's key after the change, or the deleted key.
+     * @param solarPanel The solar panel after the change, or null if it was deleted.
+     */
+    public SolarPanelChange(long sequence, Type type, SolarPanelKey key, SolarPanel solarPanel) {
+        this.sequence = sequence;
+        this.type = type;
+        this.key = key;
+        this.solarPanel = solarPanel == null ? null : new SolarPanel(solarPanel.getId(),
+                solarPanel.getSection(), solarPanel.getRow(), solarPanel.getColumn(),
+                solarPanel.getYearInstalled(), solarPanel.getMaterial(), solarPanel.isTracking());
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public SolarPanelKey getKey() {
+        return key;
+    }
+
+    public SolarPanel getSolarPanel() {
+        return solarPanel;
+    }
+}
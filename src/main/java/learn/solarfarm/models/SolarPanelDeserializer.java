@@ -0,0 +1,77 @@
+package learn.solarfarm.models;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+
+/**
+ * Reads a SolarPanel field by field into its all-args constructor. Values are
+ * coerced the way Jackson's bean deserializer does (e.g. `"5"` for a number),
+ * missing fields keep their defaults, and the `key` that older responses
+ * carried is skipped, so those can be posted back unchanged.
+ */
+public class SolarPanelDeserializer extends StdDeserializer<SolarPanel> {
+
+    public SolarPanelDeserializer() {
+        super(SolarPanel.class);
+    }
+
+    @Override
+    public SolarPanel deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        String name;
+        if (parser.isExpectedStartObjectToken()) {
+            name = parser.nextFieldName();
+        } else if (parser.hasToken(JsonToken.FIELD_NAME)) {
+            name = parser.getCurrentName();
+        } else if (parser.hasToken(JsonToken.END_OBJECT)) {
+            name = null;
+        } else {
+            return (SolarPanel) context.handleUnexpectedToken(SolarPanel.class, parser);
+        }
+
+        int id = 0;
+        String section = null;
+        int row = 0;
+        int column = 0;
+        int yearInstalled = 0;
+        Material material = null;
+        boolean tracking = false;
+
+        for (; name != null; name = parser.nextFieldName()) {
+            parser.nextToken();
+            switch (name) {
+                case "id":
+                    id = _parseIntPrimitive(parser, context);
+                    break;
+                case "section":
+                    section = parser.hasToken(JsonToken.VALUE_NULL) ? null : _parseString(parser, context);
+                    break;
+                case "row":
+                    row = _parseIntPrimitive(parser, context);
+                    break;
+                case "column":
+                    column = _parseIntPrimitive(parser, context);
+                    break;
+                case "yearInstalled":
+                    yearInstalled = _parseIntPrimitive(parser, context);
+                    break;
+                case "material":
+                    material = parser.hasToken(JsonToken.VALUE_NULL) ? null : context.readValue(parser, Material.class);
+                    break;
+                case "tracking":
+                    tracking = _parseBooleanPrimitive(context, parser, Boolean.TYPE);
+                    break;
+                case "key":
+                    parser.skipChildren();
+                    break;
+                default:
+                    handleUnknownProperty(parser, context, SolarPanel.class, name);
+            }
+        }
+
+        return new SolarPanel(id, section, row, column, yearInstalled, material, tracking);
+    }
+}
@@ -1,5 +1,8 @@
 package learn.solarfarm.models;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import java.util.Objects;
 
 /**
@@ -15,7 +18,10 @@ public class SolarPanelKey {
     private int row;
     private int column;
 
-    public SolarPanelKey(String section, int row, int column) {
+    @JsonCreator
+    public SolarPanelKey(@JsonProperty("section") String section,
+                         @JsonProperty("row") int row,
+                         @JsonProperty("column") int column) {
         this.section = section;
         this.row = row;
         this.column = column;
@@ -45,7 +51,8 @@ public class SolarPanelKey {
 
     @Override
     public int hashCode() {
-        return Objects.hash(section, row, column);
+        // Sections compare case-insensitively, so they have to hash that way too.
+        return Objects.hash(section == null ? null : section.toLowerCase(), row, column);
     }
 
     @Override
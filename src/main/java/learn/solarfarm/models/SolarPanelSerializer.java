@@ -0,0 +1,59 @@
+package learn.solarfarm.models;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Writes a SolarPanel field by field, without bean introspection and without
+ * the derived `key`, which only repeats `section`, `row`, and `column`.
+ * Field names are pre-encoded once.
+ */
+public class SolarPanelSerializer extends StdSerializer<SolarPanel> {
+    static final SerializedString ID = new SerializedString("id");
+    static final SerializedString SECTION = new SerializedString("section");
+    static final SerializedString ROW = new SerializedString("row");
+    static final SerializedString COLUMN = new SerializedString("column");
+    static final SerializedString YEAR_INSTALLED = new SerializedString("yearInstalled");
+    static final SerializedString MATERIAL = new SerializedString("material");
+    static final SerializedString TRACKING = new SerializedString("tracking");
+
+    public SolarPanelSerializer() {
+        super(SolarPanel.class);
+    }
+
+    @Override
+    public void serialize(SolarPanel solarPanel, JsonGenerator generator, SerializerProvider provider)
+            throws IOException {
+        generator.writeStartObject(solarPanel);
+        generator.writeFieldName(ID);
+        generator.writeNumber(solarPanel.getId());
+        generator.writeFieldName(SECTION);
+        generator.writeString(solarPanel.getSection());
+        generator.writeFieldName(ROW);
+        generator.writeNumber(solarPanel.getRow());
+        generator.writeFieldName(COLUMN);
+        generator.writeNumber(solarPanel.getColumn());
+        generator.writeFieldName(YEAR_INSTALLED);
+        generator.writeNumber(solarPanel.getYearInstalled());
+        generator.writeFieldName(MATERIAL);
+        writeMaterial(solarPanel.getMaterial(), generator);
+        generator.writeFieldName(TRACKING);
+        generator.writeBoolean(solarPanel.isTracking());
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes a material by its constant name, as Jackson's default enum handling does.
+     */
+    public static void writeMaterial(Material material, JsonGenerator generator) throws IOException {
+        if (material == null) {
+            generator.writeNull();
+        } else {
+            generator.writeString(material.name());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package learn.solarfarm.models;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Solar panel counts for the whole farm, by section, material, tracking, and
+ * install year. Immutable, so one instance can be shared between requests.
+ */
+public class SolarPanelStats {
+    private final int total;
+    private final Map<String, Integer> bySection;
+    private final Map<Material, Integer> byMaterial;
+    private final Map<Boolean, Integer> byTracking;
+    private final Map<Integer, Integer> byYearInstalled;
+
+    public SolarPanelStats(Map<String, Integer> bySection,
+                           Map<Material, Integer> byMaterial,
+                           Map<Boolean, Integer> byTracking,
+                           Map<Integer, Integer> byYearInstalled) {
+        this.bySection = Collections.unmodifiableMap(new LinkedHashMap<>(bySection));
+        this.byMaterial = Collections.unmodifiableMap(new LinkedHashMap<>(byMaterial));
+        this.byTracking = Collections.unmodifiableMap(new LinkedHashMap<>(byTracking));
+        this.byYearInstalled = Collections.unmodifiableMap(new LinkedHashMap<>(byYearInstalled));
+        this.total = bySection.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public Map<String, Integer> getBySection() {
+        return bySection;
+    }
+
+    public Map<Material, Integer> getByMaterial() {
+        return byMaterial;
+    }
+
+    public Map<Boolean, Integer> getByTracking() {
+        return byTracking;
+    }
+
+    public Map<Integer, Integer> getByYearInstalled() {
+        return byYearInstalled;
+    }
+}
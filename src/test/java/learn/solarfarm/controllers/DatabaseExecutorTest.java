@@ -0,0 +1,147 @@
+package learn.solarfarm.controllers;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import learn.solarfarm.data.DataAccessException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class DatabaseExecutorTest {
+    @Test
+    void shouldRejectRightAwayWhenQueueIsFull() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        DatabaseExecutor executor = new DatabaseExecutor(registry, 1, 1, 3, false);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try {
+            CompletableFuture<String> running = executor.submit(() -> {
+                await(release);
+                return "first";
+            });
+            CompletableFuture<String> queued = executor.submit(() -> "second");
+
+            DatabaseBusyException ex = assertThrows(DatabaseBusyException.class,
+                    () -> executor.submit(() -> "third"));
+            assertEquals(3, ex.getRetryAfterSeconds());
+            assertEquals(1.0, registry.get("solarfarm.db.rejected").counter().count());
+
+            release.countDown();
+            assertEquals("first", running.get(5, TimeUnit.SECONDS));
+            assertEquals("second", queued.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.close();
+        }
+    }
+
+    @Test
+    void shouldLeaveAConnectionForEachHedge() throws Exception {
+        // Three connections, two kept for hedges: one thread, then one queued call.
+        DatabaseExecutor executor = new DatabaseExecutor(new SimpleMeterRegistry(), 3, 1, 1, false, true, 2);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try {
+            CompletableFuture<String> running = executor.submit(() -> {
+                await(release);
+                return "first";
+            });
+            executor.submit(() -> "second");
+
+            assertThrows(DatabaseBusyException.class, () -> executor.submit(() -> "third"));
+            release.countDown();
+            assertEquals("first", running.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.close();
+        }
+    }
+
+    @Test
+    void shouldCompleteWithTheCallsException() {
+        DatabaseExecutor executor = new DatabaseExecutor(new SimpleMeterRegistry(), 1, 1, 1, false);
+        try {
+            CompletableFuture<String> future = executor.submit(() -> {
+                throw new DataAccessException("Boom.");
+            });
+
+            ExecutionException ex = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertTrue(ex.getCause() instanceof DataAccessException);
+        } finally {
+            executor.close();
+        }
+    }
+
+    @Test
+    void shouldBoundVirtualThreadCallsLikeThePool() throws Exception {
+        if (Runtime.version().feature() < 21) {
+            // The mode needs virtual threads, and says so at startup.
+            assertThrows(IllegalStateException.class,
+                    () -> new DatabaseExecutor(new SimpleMeterRegistry(), 1, 1, 1, true));
+            return;
+        }
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        DatabaseExecutor executor = new DatabaseExecutor(registry, 1, 1, 3, true);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+
+        try {
+            CompletableFuture<String> running = executor.submit(() -> {
+                maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                await(release);
+                concurrent.decrementAndGet();
+                return "first";
+            });
+            CompletableFuture<String> waiting = executor.submit(() -> {
+                maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                concurrent.decrementAndGet();
+                return "second";
+            });
+
+            DatabaseBusyException ex = assertThrows(DatabaseBusyException.class,
+                    () -> executor.submit(() -> "third"));
+            assertEquals(3, ex.getRetryAfterSeconds());
+            assertEquals(1.0, registry.get("solarfarm.db.rejected").counter().count());
+
+            release.countDown();
+            assertEquals("first", running.get(5, TimeUnit.SECONDS));
+            assertEquals("second", waiting.get(5, TimeUnit.SECONDS));
+            assertEquals(1, maxConcurrent.get());
+            assertEquals(0.0, registry.get("solarfarm.db.admitted").gauge().value());
+        } finally {
+            release.countDown();
+            executor.close();
+        }
+    }
+
+    @Test
+    void shouldNotHoldAPlaceForACallThatNeverRan() {
+        assumeTrue(Runtime.version().feature() >= 21, "Virtual threads need Java 21.");
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        DatabaseExecutor executor = new DatabaseExecutor(registry, 1, 1, 3, true);
+        executor.close();
+
+        // Shut down, so every call is turned away, but not for lack of room.
+        for (int i = 0; i < 3; i++) {
+            assertThrows(DatabaseBusyException.class, () -> executor.submit(() -> "late"));
+        }
+        assertEquals(0.0, registry.get("solarfarm.db.admitted").gauge().value());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package learn.solarfarm.controllers;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import learn.solarfarm.domain.SolarPanelChangeLog;
+import learn.solarfarm.models.SolarPanelChange;
+import learn.solarfarm.models.SolarPanelKey;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class SolarPanelChangeStreamsTest {
+    SolarPanelChangeLog changeLog;
+    List<SolarPanelChange> published;
+    Runnable listener;
+    SimpleMeterRegistry registry;
+    // Handed out by subscribe, in order.
+    Deque<SseEmitter> emitters;
+    SolarPanelChangeStreams streams;
+
+    @BeforeEach
+    void setup() {
+        published = new CopyOnWriteArrayList<>();
+        changeLog = mock(SolarPanelChangeLog.class);
+        when(changeLog.getLatestSequence()).thenAnswer(invocation -> (long) published.size());
+        when(changeLog.readAfter(anyLong(), anyInt())).thenAnswer(invocation -> {
+            int after = (int) (long) invocation.getArgument(0);
+            int limit = invocation.getArgument(1);
+            return List.copyOf(published.subList(after, Math.min(published.size(), after + limit)));
+        });
+        registry = new SimpleMeterRegistry();
+        emitters = new ArrayDeque<>();
+    }
+
+    @AfterEach
+    void shutdown() {
+        streams.close();
+    }
+
+    @Test
+    void shouldKeepSendingWhileAClientStalls() throws Exception {
+        start(2, 100);
+        CountDownLatch unstall = new CountDownLatch(1);
+        StandInEmitter stalled = new StandInEmitter(unstall, null);
+        StandInEmitter reading = new StandInEmitter(null, null);
+        emitters.add(stalled);
+        emitters.add(reading);
+        streams.subscribe(0L);
+        streams.subscribe(0L);
+
+        publish();
+        assertNotNull(reading.sent.poll(5, TimeUnit.SECONDS));
+        publish();
+        assertNotNull(reading.sent.poll(5, TimeUnit.SECONDS));
+
+        // Dropped at the deadline, which frees its slot.
+        for (int i = 0; i < 500 && stalledCount() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1.0, stalledCount());
+        assertEquals(1.0, registry.get("solarfarm.changes.subscribers").gauge().value());
+        emitters.add(new StandInEmitter(null, null));
+        assertNotNull(streams.subscribe(0L));
+
+        // Its write finishes at last; it's ended rather than sent more.
+        unstall.countDown();
+        assertTrue(stalled.completed.await(5, TimeUnit.SECONDS));
+        assertEquals(1, stalled.sent.size());
+    }
+
+    @Test
+    void shouldCompleteWithErrorWhenTheClientIsGone() throws Exception {
+        start(1, 10_000);
+        IOException gone = new IOException("Broken pipe");
+        StandInEmitter emitter = new StandInEmitter(null, gone);
+        emitters.add(emitter);
+        streams.subscribe(0L);
+
+        publish();
+        assertTrue(emitter.completed.await(5, TimeUnit.SECONDS));
+        assertSame(gone, emitter.error);
+
+        emitters.add(new StandInEmitter(null, null));
+        assertNotNull(streams.subscribe(0L));
+    }
+
+    @Test
+    void shouldTurnAwaySubscribersOverTheLimit() {
+        start(1, 10_000);
+        emitters.add(new StandInEmitter(null, null));
+        emitters.add(new StandInEmitter(null, null));
+
+        assertNotNull(streams.subscribe(null));
+        assertNull(streams.subscribe(null));
+    }
+
+    private void start(int maxSubscribers, long sendTimeoutMillis) {
+        streams = new SolarPanelChangeStreams(changeLog, registry, maxSubscribers, sendTimeoutMillis, 60_000) {
+            @Override
+            SseEmitter newEmitter(long timeoutMillis) {
+                return emitters.remove();
+            }
+        };
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(changeLog).addListener(captor.capture());
+        listener = captor.getValue();
+    }
+
+    private void publish() {
+        published.add(new SolarPanelChange(published.size() + 1, SolarPanelChange.Type.DELETED,
+                new SolarPanelKey("The Ridge", 1, published.size() + 1), null));
+        listener.run();
+    }
+
+    private double stalledCount() {
+        return registry.get("solarfarm.changes.stalled").counter().count();
+    }
+
+    // Stands in for a client: records what's sent, and can stall or fail the first send.
+    private static class StandInEmitter extends SseEmitter {
+        final BlockingQueue<SseEventBuilder> sent = new LinkedBlockingQueue<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+        private CountDownLatch stall;
+        private IOException failure;
+        volatile Throwable error;
+
+        StandInEmitter(CountDownLatch stall, IOException failure) {
+            this.stall = stall;
+            this.failure = failure;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+            sent.add(builder);
+            if (stall != null) {
+                try {
+                    stall.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+                stall = null;
+            }
+        }
+
+        @Override
+        public void complete() {
+            completed.countDown();
+        }
+
+        @Override
+        public void completeWithError(Throwable ex) {
+            error = ex;
+            completed.countDown();
+        }
+    }
+}
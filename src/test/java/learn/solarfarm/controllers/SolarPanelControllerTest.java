@@ -1,9 +1,16 @@
 package learn.solarfarm.controllers;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import learn.solarfarm.data.DataAccessException;
 import learn.solarfarm.data.SolarPanelRepository;
+import learn.solarfarm.domain.SolarPanelChangeLog;
 import learn.solarfarm.models.Material;
 import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -11,14 +18,35 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 
 // If you mock the service class you can tell Spring Boot to just start the web layer
 // instead of the whole application context. You can go a step further and just
@@ -36,6 +64,18 @@ class SolarPanelControllerTest {
     @Autowired
     MockMvc mvc;
 
+    @Autowired
+    SolarPanelChangeLog changeLog;
+
+    @Autowired
+    SolarPanelResponseCache responseCache;
+
+    // The mocked repository answers differently in each test, but versions don't reset.
+    @BeforeEach
+    void setup() {
+        responseCache.clear();
+    }
+
     @Test
     void shouldGetAll() throws Exception {
         List<SolarPanel> solarPanels = List.of(
@@ -49,12 +89,315 @@ class SolarPanelControllerTest {
 
         when(repository.findAll()).thenReturn(solarPanels);
 
-        mvc.perform(get("/solarpanels"))
+        perform(get("/solarpanels"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(content().json(expectedJson));
     }
 
+    @Test
+    void shouldServeRepeatedGetsFromResponseCache() throws Exception {
+        when(repository.findBySection(any())).thenReturn(List.of(
+                new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true)));
+        when(repository.deleteByKey(any())).thenAnswer(invocation -> panelAt(invocation.getArgument(0)));
+
+        String first = perform(get("/solarpanels/Section One"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        perform(get("/solarpanels/section one"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().string(first));
+        verify(repository, times(1)).findBySection(any());
+
+        perform(delete("/solarpanels/Section One/1/1"));
+        perform(get("/solarpanels/Section One"))
+                .andExpect(status().isOk());
+        verify(repository, times(2)).findBySection(any());
+    }
+
+    @Test
+    void shouldGzipWhenAccepted() throws Exception {
+        List<SolarPanel> solarPanels = List.of(
+                new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true));
+        when(repository.findAll()).thenReturn(solarPanels);
+        String expectedJson = new ObjectMapper().writeValueAsString(solarPanels);
+
+        String identityTag = perform(get("/solarpanels")).andReturn().getResponse().getHeader("ETag");
+
+        // From the cache both times, as it was filled above.
+        String gzipTag = null;
+        for (int i = 0; i < 2; i++) {
+            MvcResult result = perform(get("/solarpanels").header("Accept-Encoding", "gzip, deflate"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string("Content-Encoding", "gzip"))
+                    .andExpect(header().string("ETag", not(identityTag)))
+                    .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                    .andReturn();
+            gzipTag = result.getResponse().getHeader("ETag");
+            assertTrue(result.getResponse().getHeaders("Vary").contains("Accept-Encoding"));
+            try (GZIPInputStream in = new GZIPInputStream(
+                    new ByteArrayInputStream(result.getResponse().getContentAsByteArray()))) {
+                assertEquals(expectedJson, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        verify(repository, times(1)).findAll();
+
+        perform(get("/solarpanels").header("Accept-Encoding", "gzip").header("If-None-Match", gzipTag))
+                .andExpect(status().isNotModified());
+        perform(get("/solarpanels").header("If-None-Match", gzipTag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void shouldGetAllCompact() throws Exception {
+        when(repository.findAll()).thenReturn(List.of(
+                new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true),
+                new SolarPanel(2, "Section Two", 10, 11, 2000, Material.A_SI, false)));
+
+        MvcResult json = perform(get("/solarpanels")).andReturn();
+        perform(get("/solarpanels?format=compact"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"columns\":[\"id\",\"section\",\"row\",\"column\"," +
+                        "\"yearInstalled\",\"material\",\"tracking\"]," +
+                        "\"rows\":[[1,\"Section One\",1,1,2020,\"POLY_SI\",true]," +
+                        "[2,\"Section Two\",10,11,2000,\"A_SI\",false]]}", true))
+                .andExpect(header().string("ETag", not(json.getResponse().getHeader("ETag"))));
+    }
+
+    @Test
+    void shouldGetAllAsCbor() throws Exception {
+        List<SolarPanel> solarPanels = List.of(
+                new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true),
+                new SolarPanel(3, "Section Two", 10, 11, 2000, Material.A_SI, false)
+        );
+        when(repository.findAll()).thenReturn(solarPanels);
+
+        MvcResult json = perform(get("/solarpanels")).andReturn();
+        MvcResult cbor = perform(get("/solarpanels").accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andExpect(header().string("ETag", not(json.getResponse().getHeader("ETag"))))
+                .andReturn();
+
+        SolarPanel[] actual = new CBORMapper().readValue(cbor.getResponse().getContentAsByteArray(), SolarPanel[].class);
+        assertEquals(solarPanels, List.of(actual));
+        assertTrue(cbor.getResponse().getHeaders("Vary").contains("Accept"));
+        assertTrue(cbor.getResponse().getContentAsByteArray().length < json.getResponse().getContentAsByteArray().length);
+    }
+
+    @Test
+    void shouldGetByKeyAsSmile() throws Exception {
+        SolarPanel solarPanel = new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true);
+        when(repository.findByKey(any())).thenReturn(solarPanel);
+
+        MediaType smile = MediaType.parseMediaType(SolarPanelController.APPLICATION_SMILE_VALUE);
+        MvcResult result = perform(get("/solarpanels/Section One/1/1").accept(smile))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(smile))
+                .andReturn();
+
+        assertEquals(solarPanel, new SmileMapper().readValue(result.getResponse().getContentAsByteArray(), SolarPanel.class));
+    }
+
+    @Test
+    void shouldPreferJsonByQuality() throws Exception {
+        when(repository.findAll()).thenReturn(List.of());
+
+        MvcResult json = perform(get("/solarpanels")).andReturn();
+        perform(get("/solarpanels").header("Accept", "application/cbor;q=0.5, application/json"))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string("ETag", json.getResponse().getHeader("ETag")));
+    }
+
+    @Test
+    void shouldGetPage() throws Exception {
+        List<SolarPanel> solarPanels = List.of(
+                new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true),
+                new SolarPanel(2, "Section One", 1, 2, 2020, Material.POLY_SI, true)
+        );
+
+        when(repository.findPage(any(), eq(2))).thenReturn(solarPanels);
+
+        perform(get("/solarpanels?limit=2&afterSection=Section One&afterRow=0&afterColumn=0"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.solarPanels.length()").value(2))
+                .andExpect(jsonPath("$.next.section").value("Section One"))
+                .andExpect(jsonPath("$.next.column").value(2));
+    }
+
+    @Test
+    void shouldStreamAll() throws Exception {
+        List<SolarPanel> solarPanels = List.of(
+                new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true),
+                new SolarPanel(3, "Section Two", 10, 11, 2000, Material.A_SI, false)
+        );
+
+        doAnswer(invocation -> {
+            Consumer<SolarPanel> consumer = invocation.getArgument(0);
+            solarPanels.forEach(consumer);
+            return null;
+        }).when(repository).streamAll(any());
+
+        ObjectMapper jsonMapper = new ObjectMapper();
+        String expectedJson = jsonMapper.writeValueAsString(solarPanels);
+
+        MvcResult result = mvc.perform(get("/solarpanels?stream=true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().json(expectedJson));
+    }
+
+    @Test
+    void shouldAbortStreamThatFailsPartWay() throws Exception {
+        // Well past the writer's and the response's buffers, so some of it has been sent.
+        streamRowsThenFail(2_000);
+
+        MvcResult result = mvc.perform(get("/solarpanels?stream=true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        assertThrows(Exception.class, () -> mvc.perform(asyncDispatch(result)));
+        String sent = result.getResponse().getContentAsString();
+        assertTrue(result.getResponse().isCommitted());
+        assertTrue(sent.startsWith("[{"));
+        assertFalse(sent.trim().endsWith("]"));
+    }
+
+    @Test
+    void shouldAnswerErrorWhenStreamFailsBeforeSending() throws Exception {
+        streamRowsThenFail(2);
+
+        MvcResult result = mvc.perform(get("/solarpanels?stream=true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isInternalServerError())
+                .andExpect(jsonPath("$.message").exists());
+    }
+
+    private void streamRowsThenFail(int rows) throws DataAccessException {
+        doAnswer(invocation -> {
+            Consumer<SolarPanel> consumer = invocation.getArgument(0);
+            for (int i = 1; i <= rows; i++) {
+                consumer.accept(new SolarPanel(i, "Section One", 1, i, 2020, Material.POLY_SI, true));
+            }
+            throw new DataAccessException("Connection lost.");
+        }).when(repository).streamAll(any());
+    }
+
+    @Test
+    void shouldGetStats() throws Exception {
+        when(repository.countBySection()).thenReturn(Map.of("Section One", 2));
+        when(repository.countByMaterial()).thenReturn(Map.of(Material.POLY_SI, 2));
+        when(repository.countByTracking()).thenReturn(Map.of(true, 2));
+        when(repository.countByYearInstalled()).thenReturn(Map.of(2020, 2));
+
+        perform(get("/solarpanels/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total").value(2))
+                .andExpect(jsonPath("$.bySection['Section One']").value(2))
+                .andExpect(jsonPath("$.byMaterial.POLY_SI").value(2))
+                .andExpect(jsonPath("$.byTracking.true").value(2))
+                .andExpect(jsonPath("$.byYearInstalled.2020").value(2));
+    }
+
+    @Test
+    void shouldAnswerNotModifiedUntilTableChanges() throws Exception {
+        when(repository.findAll()).thenReturn(List.of(
+                new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true)));
+        when(repository.deleteByKey(any())).thenAnswer(invocation -> panelAt(invocation.getArgument(0)));
+
+        String eTag = perform(get("/solarpanels"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+        assertNotNull(eTag);
+
+        perform(get("/solarpanels").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", eTag));
+        verify(repository, times(1)).findAll();
+
+        perform(delete("/solarpanels/Section Two/1/1"));
+
+        perform(get("/solarpanels").header("If-None-Match", eTag))
+                .andExpect(status().isOk());
+        verify(repository, times(2)).findAll();
+    }
+
+    @Test
+    void shouldAnswerNotModifiedUntilSectionChanges() throws Exception {
+        when(repository.findBySection(any())).thenReturn(List.of(
+                new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true)));
+        when(repository.deleteByKey(any())).thenAnswer(invocation -> panelAt(invocation.getArgument(0)));
+
+        String eTag = perform(get("/solarpanels/Section One"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        // Another section's write leaves this one's version alone.
+        perform(delete("/solarpanels/Section Two/1/1"));
+        perform(get("/solarpanels/section one").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified());
+        verify(repository, times(1)).findBySection(any());
+
+        perform(delete("/solarpanels/Section One/1/1"));
+        perform(get("/solarpanels/Section One").header("If-None-Match", eTag))
+                .andExpect(status().isOk());
+        verify(repository, times(2)).findBySection(any());
+    }
+
+    @Test
+    void shouldStreamChangesAfterSequence() throws Exception {
+        when(repository.deleteByKey(any())).thenAnswer(invocation -> panelAt(invocation.getArgument(0)));
+        long after = changeLog.getLatestSequence();
+        perform(delete("/solarpanels/Section One/1/1"));
+
+        MvcResult result = mvc.perform(get("/solarpanels/changes").param("after", Long.toString(after)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String content = awaitContent(result, "\"type\":\"DELETED\"");
+        assertTrue(content.contains("id:" + (after + 1) + "\nevent:change\n"));
+    }
+
+    @Test
+    void shouldResetSubscribersThatFellBehind() throws Exception {
+        MvcResult result = mvc.perform(get("/solarpanels/changes").param("after", "0"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String expected = "event:reset\ndata:" + changeLog.getLatestSequence();
+        assertTrue(awaitContent(result, expected).contains(expected));
+    }
+
+    @Test
+    void shouldGetGridRange() throws Exception {
+        List<SolarPanel> solarPanels = List.of(
+                new SolarPanel(1, "Section One", 10, 1, 2020, Material.POLY_SI, true),
+                new SolarPanel(2, "Section One", 12, 40, 2020, Material.POLY_SI, true)
+        );
+
+        when(repository.findByGridRange("Section One", 10, 40, 1, 100)).thenReturn(solarPanels);
+
+        perform(get("/solarpanels/Section One/grid?rows=10-40&cols=1-100"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2));
+    }
+
+    @Test
+    void gridShouldReturn400ForBadRange() throws Exception {
+        perform(get("/solarpanels/Section One/grid?rows=ten&cols=1-100"))
+                .andExpect(status().isBadRequest());
+        perform(get("/solarpanels/Section One/grid?rows=40-10"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.messages.length()").value(1));
+    }
+
     @Test
     void shouldCreate() throws Exception {
         SolarPanel solarPanelIn = new SolarPanel(0, "Section One", 1, 3, 2000, Material.POLY_SI, false);
@@ -80,7 +423,7 @@ class SolarPanelControllerTest {
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(jsonIn);
 
-        mvc.perform(request)
+        perform(request)
                 .andExpect(status().isCreated())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(content().json(expectedJson));
@@ -95,7 +438,7 @@ class SolarPanelControllerTest {
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(jsonIn);
 
-        mvc.perform(request)
+        perform(request)
                 .andExpect(status().isBadRequest());
     }
 
@@ -110,7 +453,7 @@ class SolarPanelControllerTest {
                 .contentType(MediaType.MULTIPART_FORM_DATA)
                 .content(jsonIn);
 
-        mvc.perform(request)
+        perform(request)
                 .andExpect(status().isUnsupportedMediaType());
     }
 
@@ -125,7 +468,7 @@ class SolarPanelControllerTest {
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(jsonIn);
 
-        mvc.perform(request)
+        perform(request)
                 .andExpect(status().isBadRequest());
     }
 
@@ -133,7 +476,8 @@ class SolarPanelControllerTest {
     void shouldUpdate() throws Exception {
         SolarPanel solarPanelIn = new SolarPanel(1, "Section One", 1, 3, 2000, Material.POLY_SI, false);
 
-        when(repository.update(any())).thenReturn(true);
+        when(repository.update(any())).thenReturn(
+                new SolarPanel(1, "Section One", 1, 3, 2000, Material.MONO_SI, false));
 
         ObjectMapper jsonMapper = new ObjectMapper();
         String jsonIn = jsonMapper.writeValueAsString(solarPanelIn);
@@ -142,7 +486,140 @@ class SolarPanelControllerTest {
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(jsonIn);
 
-        mvc.perform(request)
+        perform(request)
                 .andExpect(status().isNoContent());
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldCreateBatch() throws Exception {
+        List<SolarPanel> solarPanelsIn = List.of(
+                new SolarPanel(0, "Section One", 1, 3, 2000, Material.POLY_SI, false),
+                new SolarPanel(0, "", 1, 4, 2000, Material.POLY_SI, false)
+        );
+
+        ObjectMapper jsonMapper = new ObjectMapper();
+        String jsonIn = jsonMapper.writeValueAsString(solarPanelsIn);
+
+        var request = post("/solarpanels/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(jsonIn);
+
+        perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].success").value(true))
+                .andExpect(jsonPath("$[1].type").value("INVALID"));
+    }
+
+    @Test
+    void shouldCreateBatchFromCbor() throws Exception {
+        List<SolarPanel> solarPanelsIn = List.of(
+                new SolarPanel(0, "Section One", 1, 3, 2000, Material.POLY_SI, false),
+                new SolarPanel(0, "", 1, 4, 2000, Material.POLY_SI, false)
+        );
+        when(repository.createAll(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        CBORMapper cborMapper = new CBORMapper();
+        var request = post("/solarpanels/batch")
+                .contentType(MediaType.APPLICATION_CBOR)
+                .accept(MediaType.APPLICATION_CBOR)
+                .content(cborMapper.writeValueAsBytes(solarPanelsIn));
+
+        MvcResult result = perform(request)
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn();
+
+        JsonNode results = cborMapper.readTree(result.getResponse().getContentAsByteArray());
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).get("success").asBoolean());
+        assertEquals("Section One", results.get(0).get("payload").get("section").asText());
+        assertEquals("INVALID", results.get(1).get("type").asText());
+    }
+
+    @Test
+    void shouldDeleteBatch() throws Exception {
+        when(repository.deleteAll(any())).thenReturn(new boolean[]{true});
+
+        var request = delete("/solarpanels/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"section\": \"Section One\", \"row\": 1, \"column\": 1}]");
+
+        perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].success").value(true));
+    }
+
+    @Test
+    void shouldImportCsvAndReportRejectedRows() throws Exception {
+        String csv = "section,row,column,yearInstalled,material,tracking\n" +
+                "\"Section, One\",1,1,2000,poly-Si,true\n" +
+                "Section One,1,2,soon,POLY_SI,false\n" +
+                "\n" +
+                ",1,3,2000,CdTe,false\n";
+
+        var request = post("/solarpanels/import")
+                .contentType("text/csv")
+                .content(csv);
+
+        mvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rows").value(3))
+                .andExpect(jsonPath("$.imported").value(1))
+                .andExpect(jsonPath("$.rejected").value(2))
+                .andExpect(jsonPath("$.errors[0].line").value(3))
+                .andExpect(jsonPath("$.errors[0].messages[0]").value("SolarPanel `yearInstalled` must be a whole number."))
+                .andExpect(jsonPath("$.errors[1].line").value(5))
+                .andExpect(jsonPath("$.errors[1].messages[0]").value("SolarPanel `section` is required."));
+
+        verify(repository).createAll(List.of(
+                new SolarPanel(0, "Section, One", 1, 1, 2000, Material.POLY_SI, true)));
+    }
+
+    @Test
+    void shouldImportNdjson() throws Exception {
+        var request = post("/solarpanels/import")
+                .contentType("application/x-ndjson")
+                .content("{\"section\":\"Section One\",\"row\":1,\"column\":1,\"yearInstalled\":2000,\"material\":\"POLY_SI\",\"tracking\":true}\n" +
+                        "{\"section\":\n");
+
+        mvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(1))
+                .andExpect(jsonPath("$.errors[0].line").value(2));
+    }
+
+    @Test
+    void shouldNotImportCsvWithoutEveryColumn() throws Exception {
+        var request = post("/solarpanels/import")
+                .contentType("text/csv")
+                .content("section,row,column,material,tracking\nSection One,1,1,CdTe,true\n");
+
+        mvc.perform(request)
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.messages[0]").value("CSV header is missing `yearInstalled`."));
+    }
+
+    // Handlers that reach the database answer asynchronously; this waits for the answer.
+    private ResultActions perform(RequestBuilder request) throws Exception {
+        ResultActions actions = mvc.perform(request);
+        MvcResult result = actions.andReturn();
+        return result.getRequest().isAsyncStarted() ? mvc.perform(asyncDispatch(result)) : actions;
+    }
+
+    // Change events are sent from the change feed's own threads, a piece at a time.
+    private static SolarPanel panelAt(SolarPanelKey key) {
+        return new SolarPanel(1, key.getSection(), key.getRow(), key.getColumn(), 2020, Material.POLY_SI, true);
+    }
+
+    private static String awaitContent(MvcResult result, String expected) throws Exception {
+        for (int i = 0; i < 100; i++) {
+            String content = result.getResponse().getContentAsString();
+            if (content.contains(expected)) {
+                return content;
+            }
+            Thread.sleep(20);
+        }
+        return result.getResponse().getContentAsString();
+    }
+}
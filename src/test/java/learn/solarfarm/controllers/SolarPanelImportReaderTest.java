@@ -0,0 +1,76 @@
+package learn.solarfarm.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SolarPanelImportReaderTest {
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+
+    @Test
+    void shouldReadQuotedCsvFieldsInHeaderOrder() throws IOException {
+        String csv = "tracking,material,yearInstalled,column,row,section\r\n" +
+                "false,Cadmium Telluride,2015,2,3,\"The \"\"Big\"\"\r\nField\"\r\n" +
+                "TRUE,cigs,2016,1,1,Flats\r\n";
+
+        try (SolarPanelImportReader reader = reader(SolarPanelImportReader.Format.CSV, csv)) {
+            SolarPanelImportReader.Row first = reader.read();
+            assertEquals(2, first.getLine());
+            assertEquals(new SolarPanel(0, "The \"Big\"\r\nField", 3, 2, 2015, Material.CD_TE, false),
+                    first.getSolarPanel());
+
+            SolarPanelImportReader.Row second = reader.read();
+            assertEquals(4, second.getLine());
+            assertEquals(new SolarPanel(0, "Flats", 1, 1, 2016, Material.CIGS, true), second.getSolarPanel());
+
+            assertNull(reader.read());
+        }
+    }
+
+    @Test
+    void shouldReportEveryBadFieldAndCarryOn() throws IOException {
+        String csv = "section,row,column,yearInstalled,material,tracking\n" +
+                "Flats,one,1,2016,wood,maybe\n" +
+                "Flats,1\n" +
+                "Flats,1,1,2016,CdTe,false";
+
+        try (SolarPanelImportReader reader = reader(SolarPanelImportReader.Format.CSV, csv)) {
+            SolarPanelImportReader.Row bad = reader.read();
+            assertNull(bad.getSolarPanel());
+            assertEquals(3, bad.getErrors().size());
+
+            SolarPanelImportReader.Row tooShort = reader.read();
+            assertEquals(3, tooShort.getLine());
+            assertEquals("Row has 2 fields; the header has 6.", tooShort.getErrors().get(0));
+
+            assertNotNull(reader.read().getSolarPanel());
+            assertNull(reader.read());
+        }
+    }
+
+    @Test
+    void shouldReadNdjsonLines() throws IOException {
+        SolarPanel solarPanel = new SolarPanel(0, "Flats", 1, 1, 2016, Material.CIGS, true);
+        String ndjson = jsonMapper.writeValueAsString(solarPanel) + "\n\nnot json\n";
+
+        try (SolarPanelImportReader reader = reader(SolarPanelImportReader.Format.NDJSON, ndjson)) {
+            assertEquals(solarPanel, reader.read().getSolarPanel());
+
+            SolarPanelImportReader.Row bad = reader.read();
+            assertEquals(3, bad.getLine());
+            assertNull(bad.getSolarPanel());
+
+            assertNull(reader.read());
+        }
+    }
+
+    private SolarPanelImportReader reader(SolarPanelImportReader.Format format, String body) throws IOException {
+        return new SolarPanelImportReader(format, new StringReader(body), jsonMapper.reader());
+    }
+}
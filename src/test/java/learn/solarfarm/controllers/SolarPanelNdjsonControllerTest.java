@@ -0,0 +1,129 @@
+package learn.solarfarm.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import learn.solarfarm.data.DataAccessException;
+import learn.solarfarm.data.SolarPanelReactiveRepository;
+import learn.solarfarm.data.SolarPanelRepository;
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.profiles.active=jdbc-template,r2dbc")
+@AutoConfigureMockMvc
+class SolarPanelNdjsonControllerTest {
+    private static final MediaType NDJSON = MediaType.parseMediaType(SolarPanelNdjsonController.APPLICATION_NDJSON_VALUE);
+
+    @MockBean
+    SolarPanelRepository repository;
+
+    @MockBean
+    SolarPanelReactiveRepository reactiveRepository;
+
+    @Autowired
+    MockMvc mvc;
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+
+    @Test
+    void shouldStreamAllAsNdjson() throws Exception {
+        SolarPanel first = new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true);
+        SolarPanel second = new SolarPanel(2, "Section Two", 10, 11, 2000, Material.A_SI, false);
+        when(reactiveRepository.findAll()).thenReturn(Flux.just(first, second));
+
+        MvcResult result = mvc.perform(get("/solarpanels").accept(NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(NDJSON))
+                .andExpect(content().string(jsonMapper.writeValueAsString(first) + "\n"
+                        + jsonMapper.writeValueAsString(second) + "\n"));
+    }
+
+    @Test
+    void shouldStreamSectionAsNdjson() throws Exception {
+        SolarPanel solarPanel = new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true);
+        when(reactiveRepository.findBySection("Section One")).thenReturn(Flux.just(solarPanel));
+
+        MvcResult result = mvc.perform(get("/solarpanels/Section One").accept(NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(jsonMapper.writeValueAsString(solarPanel) + "\n"));
+    }
+
+    @Test
+    void shouldAbortStreamThatFailsPartWay() throws Exception {
+        // Well past the generator's and the response's buffers, so some of it has been sent.
+        when(reactiveRepository.findAll()).thenReturn(Flux.range(1, 2_000)
+                .map(i -> new SolarPanel(i, "Section One", 1, i, 2020, Material.POLY_SI, true))
+                .concatWith(Flux.error(new DataAccessException("Connection lost."))));
+
+        MvcResult result = mvc.perform(get("/solarpanels").accept(NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        assertThrows(Exception.class, () -> mvc.perform(asyncDispatch(result)));
+        assertTrue(result.getResponse().isCommitted());
+        assertTrue(result.getResponse().getContentAsString().startsWith("{"));
+    }
+
+    @Test
+    void shouldStillAnswerJsonByDefault() throws Exception {
+        List<SolarPanel> solarPanels = List.of(
+                new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true));
+        when(repository.findAll()).thenReturn(solarPanels);
+
+        MvcResult result = mvc.perform(get("/solarpanels"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().json(jsonMapper.writeValueAsString(solarPanels)));
+    }
+
+    @Test
+    void shouldTagNdjsonApartFromJson() throws Exception {
+        when(repository.findBySection("Section Two")).thenReturn(List.of());
+        when(reactiveRepository.findBySection("Section Two")).thenReturn(Flux.empty());
+
+        // A section of its own, so the JSON body it caches isn't served to the other tests.
+        String jsonTag = mvc.perform(get("/solarpanels/Section Two"))
+                .andReturn().getResponse().getHeader("ETag");
+        MvcResult ndjson = mvc.perform(get("/solarpanels/Section Two").accept(NDJSON).header("If-None-Match", jsonTag))
+                .andExpect(request().asyncStarted())
+                .andExpect(header().string("ETag", not(jsonTag)))
+                .andReturn();
+
+        assertTrue(ndjson.getResponse().getHeaders("Vary").contains("Accept"));
+        mvc.perform(get("/solarpanels/Section Two").accept(NDJSON)
+                        .header("If-None-Match", ndjson.getResponse().getHeader("ETag")))
+                .andExpect(status().isNotModified());
+    }
+}
@@ -0,0 +1,95 @@
+package learn.solarfarm.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import learn.solarfarm.domain.SolarPanelService;
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SolarPanelResponseCacheTest {
+    private static final List<SolarPanel> SECTION_ONE = List.of(
+            new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true));
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final SolarPanelService service = mock(SolarPanelService.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SolarPanelResponseCache cache = new SolarPanelResponseCache(service, jsonMapper, registry, 2);
+
+    @Test
+    void shouldOnlyServeTheVersionItRead() {
+        cache.putSection("Section One", 5, SECTION_ONE);
+
+        assertNotNull(cache.getSection("section one", 5));
+        assertNull(cache.getSection("Section One", 6));
+        assertNull(cache.getSection("Section Two", 5));
+        assertEquals(1.0, registry.get("solarfarm.response-cache.requests").tag("result", "hit").counter().count());
+        assertEquals(2.0, registry.get("solarfarm.response-cache.requests").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void shouldNotReplaceNewerWithOlder() {
+        cache.putAll(6, SECTION_ONE);
+        cache.putAll(5, List.of());
+
+        assertNotNull(cache.getAll(6));
+        assertNull(cache.getAll(5));
+    }
+
+    @Test
+    void shouldWriteJsonOrGzip() throws Exception {
+        SolarPanelResponseCache.Body body = cache.putAll(5, SECTION_ONE);
+        byte[] expected = jsonMapper.writeValueAsBytes(SECTION_ONE);
+
+        MockHttpServletResponse plain = new MockHttpServletResponse();
+        body.writeTo(plain, false);
+        assertArrayEquals(expected, plain.getContentAsByteArray());
+        assertEquals("application/json", plain.getContentType());
+        assertNull(plain.getHeader("Content-Encoding"));
+
+        MockHttpServletResponse gzipped = new MockHttpServletResponse();
+        body.writeTo(gzipped, true);
+        assertEquals("gzip", gzipped.getHeader("Content-Encoding"));
+        assertEquals(gzipped.getContentAsByteArray().length, gzipped.getContentLength());
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped.getContentAsByteArray()))) {
+            assertArrayEquals(expected, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void shouldDropRetiredSectionsWhenFull() {
+        when(service.getSectionVersion(anyString())).thenReturn(5L);
+        cache.putSection("Section One", 5, SECTION_ONE);
+        cache.putSection("Section Two", 5, SECTION_ONE);
+
+        // Both are current, so there's no room for a third.
+        cache.putSection("Section Three", 5, SECTION_ONE);
+        assertNull(cache.getSection("Section Three", 5));
+
+        // Section One has been written since, so it makes room.
+        when(service.getSectionVersion("section one")).thenReturn(6L);
+        cache.putSection("Section Three", 5, SECTION_ONE);
+        assertNotNull(cache.getSection("Section Three", 5));
+        assertNull(cache.getSection("Section One", 5));
+    }
+
+    @Test
+    void shouldReadAcceptEncoding() {
+        assertTrue(SolarPanelResponseCache.acceptsGzip("gzip"));
+        assertTrue(SolarPanelResponseCache.acceptsGzip("deflate, GZIP;q=0.5, br"));
+        assertFalse(SolarPanelResponseCache.acceptsGzip("gzip;q=0"));
+        assertFalse(SolarPanelResponseCache.acceptsGzip("gzip; q=0.000"));
+        assertFalse(SolarPanelResponseCache.acceptsGzip("br, deflate"));
+        assertFalse(SolarPanelResponseCache.acceptsGzip(null));
+    }
+}
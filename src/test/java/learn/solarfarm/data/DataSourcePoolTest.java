@@ -0,0 +1,91 @@
+package learn.solarfarm.data;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class DataSourcePoolTest {
+    @Autowired
+    DataSource dataSource;
+
+    @Autowired
+    SolarPanelRepository repository;
+
+    @Test
+    void shouldReuseConnectionsAcrossRepositoryCalls() throws Exception {
+        assertTrue(dataSource instanceof HikariDataSource);
+        HikariDataSource pool = (HikariDataSource) dataSource;
+        assertEquals("solar-farm", pool.getPoolName());
+
+        repository.findAll();
+        HikariPoolMXBean connections = pool.getHikariPoolMXBean();
+        // The pool fills to minimum-idle in the background.
+        for (int i = 0; i < 500 && connections.getTotalConnections() < pool.getMinimumIdle(); i++) {
+            Thread.sleep(10);
+        }
+        int opened = connections.getTotalConnections();
+        assertEquals(pool.getMinimumIdle(), opened);
+
+        Set<Long> sessions = new HashSet<>();
+        for (int i = 0; i < 50; i++) {
+            repository.findAll();
+            repository.countBySection();
+            sessions.add(sessionId());
+        }
+
+        // Every call borrowed one of the pooled connections and gave it back.
+        assertEquals(opened, connections.getTotalConnections());
+        assertEquals(0, connections.getActiveConnections());
+        assertEquals(opened, connections.getIdleConnections());
+        assertTrue(sessions.size() <= pool.getMaximumPoolSize());
+    }
+
+    @Test
+    void shouldCachePreparedStatements() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            long before = preparedCount(connection);
+            for (int i = 0; i < 5; i++) {
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "select count(*) from solar_panel where section = ?;")) {
+                    statement.setString(1, "Section One");
+                    statement.executeQuery().close();
+                }
+            }
+
+            // Prepared on the server once, then taken from the statement cache.
+            // preparedCount's own statement isn't server-side, so it's not counted.
+            assertEquals(before + 1, preparedCount(connection));
+        }
+    }
+
+    private long sessionId() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("select connection_id();");
+             ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private static long preparedCount(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("show session status like 'Com_stmt_prepare';")) {
+            resultSet.next();
+            return resultSet.getLong(2);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package learn.solarfarm.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongIntHashMapTest {
+    @Test
+    void shouldPutGetAndRemove() {
+        LongIntHashMap map = new LongIntHashMap(4);
+
+        map.put(42L, 1);
+        map.put(-7L, 2);
+        map.put(42L, 3);
+
+        assertEquals(3, map.get(42L));
+        assertEquals(2, map.get(-7L));
+        assertEquals(LongIntHashMap.MISSING, map.get(0L));
+        assertEquals(2, map.size());
+
+        assertEquals(3, map.remove(42L));
+        assertEquals(LongIntHashMap.MISSING, map.get(42L));
+        assertEquals(LongIntHashMap.MISSING, map.remove(42L));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void shouldMatchHashMapUnderRandomOperations() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(11);
+
+        for (int i = 0; i < 100_000; i++) {
+            // A small key space forces collisions, resizes, and removals from long probe runs.
+            long key = random.nextInt(2_000) * 65_536L;
+            if (random.nextInt(3) == 0) {
+                Integer removed = expected.remove(key);
+                assertEquals(removed == null ? LongIntHashMap.MISSING : removed, map.remove(key));
+            } else {
+                expected.put(key, i);
+                map.put(key, i);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (long key = 0; key < 2_000 * 65_536L; key += 65_536L) {
+            assertEquals(expected.getOrDefault(key, LongIntHashMap.MISSING), map.get(key));
+        }
+    }
+
+    @Test
+    void shouldRejectNegativeValues() {
+        assertThrows(IllegalArgumentException.class, () -> new LongIntHashMap(4).put(1L, -1));
+    }
+}
@@ -0,0 +1,158 @@
+package learn.solarfarm.data;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ReadHedgerTest {
+    private static final String OPERATION = "findByKey";
+
+    SimpleMeterRegistry registry;
+    ReadHedger hedger;
+    AtomicInteger cancelled;
+    // The read's own query runs here; its hedge runs on another thread.
+    Thread caller;
+
+    @BeforeEach
+    void setup() {
+        registry = new SimpleMeterRegistry();
+        hedger = new ReadHedger(registry, true, 95, 5, 2);
+        cancelled = new AtomicInteger();
+        caller = Thread.currentThread();
+    }
+
+    @AfterEach
+    void shutdown() {
+        hedger.close();
+    }
+
+    @Test
+    void shouldRunReadsAsTheyAreWhenDisabled() throws DataAccessException {
+        assertEquals("first", ReadHedger.disabled().read(OPERATION, attempt -> isCaller() ? "first" : "other"));
+    }
+
+    @Test
+    void shouldNotHedgeUntilItHasSamples() throws DataAccessException {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals("first", hedger.read(OPERATION, attempt -> {
+            calls.incrementAndGet();
+            return slowQuery(attempt, "first", 50, null);
+        }));
+        assertEquals(1, calls.get());
+        assertEquals(0.0, hedges("won") + hedges("lost"));
+    }
+
+    @Test
+    void shouldAnswerFromTheHedgeAndCancelTheSlowRead() throws DataAccessException {
+        warmUp();
+
+        assertEquals("hedge", hedger.read(OPERATION, attempt ->
+                isCaller() ? slowQuery(attempt, "first", 5000, null) : "hedge"));
+        assertEquals(1.0, hedges("won"));
+        assertEquals(1, cancelled.get());
+    }
+
+    @Test
+    void shouldKeepTheFirstAnswerAndCancelTheHedge() throws Exception {
+        warmUp();
+        CountDownLatch hedgeStarted = new CountDownLatch(1);
+
+        assertEquals("first", hedger.read(OPERATION, attempt -> {
+            if (!isCaller()) {
+                return slowQuery(attempt, "hedge", 5000, hedgeStarted);
+            }
+            await(hedgeStarted);
+            return "first";
+        }));
+        assertEquals(1.0, hedges("lost"));
+
+        // The hedge is cancelled in the background.
+        for (int i = 0; i < 500 && cancelled.get() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, cancelled.get());
+    }
+
+    @Test
+    void shouldStayWithinTheBudget() throws DataAccessException {
+        warmUp();
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals("hedge", hedger.read(OPERATION, attempt ->
+                    isCaller() ? slowQuery(attempt, "hedge", 100, null) : "hedge"));
+        }
+
+        // The budget starts with ten hedges, and 20 reads at 5% add one more,
+        // but only once it's spent down to the last half.
+        assertEquals(10.0, hedges("won") + hedges("lost"));
+        assertEquals(10.0, registry.get("solarfarm.hedging.skipped").tag("operation", OPERATION).counter().count());
+    }
+
+    // Enough quick reads for a threshold.
+    private void warmUp() throws DataAccessException {
+        for (int i = 0; i < ReadHedger.MIN_SAMPLES; i++) {
+            hedger.read(OPERATION, attempt -> "fast");
+        }
+    }
+
+    private boolean isCaller() {
+        return Thread.currentThread() == caller;
+    }
+
+    // Stands in for a query that runs until it's cancelled, or for `millis`.
+    private String slowQuery(ReadHedger.Attempt attempt, String answer, long millis,
+                             CountDownLatch started) throws DataAccessException {
+        CountDownLatch cancel = new CountDownLatch(1);
+        try {
+            Statement statement = mock(Statement.class);
+            doAnswer(invocation -> {
+                cancel.countDown();
+                return null;
+            }).when(statement).cancel();
+            try {
+                attempt.started(statement);
+            } catch (SQLException ex) {
+                // Cancelled before it got this far.
+                cancelled.incrementAndGet();
+                throw ex;
+            }
+            if (started != null) {
+                started.countDown();
+            }
+            if (cancel.await(millis, TimeUnit.MILLISECONDS)) {
+                cancelled.incrementAndGet();
+                throw new DataAccessException("Query execution was interrupted");
+            }
+        } catch (SQLException | InterruptedException ex) {
+            throw new DataAccessException(ex.getMessage(), ex);
+        }
+        return answer;
+    }
+
+    private static void await(CountDownLatch latch) throws DataAccessException {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            throw new DataAccessException(ex.getMessage(), ex);
+        }
+    }
+
+    private double hedges(String outcome) {
+        return registry.find("solarfarm.hedging.hedges")
+                .tags("operation", OPERATION, "outcome", outcome)
+                .counters().stream()
+                .mapToDouble(counter -> counter.count())
+                .sum();
+    }
+}
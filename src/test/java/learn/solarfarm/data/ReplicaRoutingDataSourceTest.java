@@ -0,0 +1,265 @@
+package learn.solarfarm.data;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// In-process H2 databases stand in for the primary and two replicas.
+// "Replication" is copying the heartbeat rows across by hand.
+class ReplicaRoutingDataSourceTest {
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private JdbcDataSource primary;
+    private JdbcDataSource fast;
+    private JdbcDataSource slow;
+    private ReplicaRoutingDataSource dataSource;
+
+    @BeforeEach
+    void setup() throws SQLException {
+        primary = database("primary");
+        fast = database("fast");
+        slow = database("slow");
+        Map<String, JdbcDataSource> replicas = new LinkedHashMap<>();
+        replicas.put("slow", slow);
+        replicas.put("fast", fast);
+        dataSource = new ReplicaRoutingDataSource(primary, replicas, 1000, 0, registry, now::get);
+    }
+
+    @AfterEach
+    void shutdown() throws Exception {
+        dataSource.close();
+        for (JdbcDataSource database : new JdbcDataSource[]{primary, fast, slow}) {
+            execute(database, "shutdown;");
+        }
+    }
+
+    @Test
+    void shouldUseThePrimaryOutsideReplicaReads() throws Exception {
+        catchUp(fast, slow);
+
+        try (Connection connection = dataSource.getConnection()) {
+            assertEquals(url(primary), connection.getMetaData().getURL());
+        }
+    }
+
+    @Test
+    void shouldReadFromTheFastestCaughtUpReplica() throws Exception {
+        catchUp(fast, slow);
+        // Enough round trips to outweigh the probes' own.
+        for (int i = 0; i < 50; i++) {
+            replica("fast").observe(now.get(), 5, 200);
+            replica("slow").observe(now.get(), 5, 900);
+        }
+
+        assertEquals(url(fast), readFrom(0));
+        assertEquals(1.0, registry.get("solarfarm.replicas.reads").tag("pool", "fast").counter().count());
+    }
+
+    @Test
+    void shouldUseThePrimaryBeforeTheFirstHeartbeatArrives() throws Exception {
+        now.addAndGet(10);
+        dataSource.probe();
+
+        assertEquals(url(primary), readFrom(0));
+        assertEquals(1.0, registry.get("solarfarm.replicas.reads").tag("pool", "primary").counter().count());
+    }
+
+    @Test
+    void shouldWaitForAHeartbeatAfterAWrite() throws Exception {
+        catchUp(fast, slow);
+        assertNotEquals(url(primary), readFrom(0));
+
+        now.addAndGet(10);
+        try (Connection connection = dataSource.getConnection()) {
+            execute(connection, "update replica_heartbeat set beat = beat;");
+        }
+        assertEquals(url(primary), readFrom(0));
+
+        catchUp(slow);
+        assertEquals(url(slow), readFrom(0));
+    }
+
+    @Test
+    void shouldKeepRoutingWhilePrimaryConnectionsOnlyRead() throws Exception {
+        catchUp(fast, slow);
+
+        for (int i = 0; i < 3; i++) {
+            now.addAndGet(10);
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(ReplicaRoutingDataSource.READ_HEARTBEAT_SQL)) {
+                statement.setString(1, dataSource.getInstanceId());
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    assertTrue(resultSet.next());
+                }
+            }
+            try (Connection connection = dataSource.getConnection()) {
+                execute(connection, "select beat from replica_heartbeat;");
+            }
+            assertNotEquals(url(primary), readFrom(0));
+        }
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("update replica_heartbeat set beat = beat;")) {
+            statement.executeUpdate();
+        }
+        assertEquals(url(primary), readFrom(0));
+    }
+
+    @Test
+    void shouldWaitForItsOwnHeartbeatWhenAPeersClockRunsAhead() throws Exception {
+        catchUp(fast, slow);
+        AtomicLong peerClock = new AtomicLong(now.get() + 60_000);
+        try (ReplicaRoutingDataSource peer = new ReplicaRoutingDataSource(
+                primary, Map.of("fast", fast, "slow", slow), 1000, 0, new SimpleMeterRegistry(), peerClock::get)) {
+            peer.probe();
+            copyHeartbeat(fast);
+            copyHeartbeat(slow);
+
+            // The peer's heartbeat is a minute ahead on both replicas; this write isn't.
+            now.addAndGet(10);
+            try (Connection connection = dataSource.getConnection()) {
+                execute(connection, "update replica_heartbeat set beat = beat;");
+            }
+            dataSource.probe();
+            assertEquals(url(primary), readFrom(0));
+            assertEquals(0.0, registry.get("solarfarm.replicas.lag").tag("pool", "fast").gauge().value(), 20.0);
+
+            catchUp(fast);
+            assertEquals(url(fast), readFrom(0));
+        }
+    }
+
+    @Test
+    void shouldSkipReplicasBehindTheClientsWrite() throws Exception {
+        catchUp(fast, slow);
+        long caughtUpTo = now.get() - 1;
+
+        assertEquals(url(primary), readFrom(caughtUpTo + 1));
+        assertNotEquals(url(primary), readFrom(caughtUpTo - 1));
+    }
+
+    @Test
+    void shouldSkipLaggingReplicas() throws Exception {
+        catchUp(fast, slow);
+
+        // Fast stops replicating; two seconds later only slow has kept up.
+        now.addAndGet(2000);
+        dataSource.probe();
+        copyHeartbeat(slow);
+        now.addAndGet(1);
+        dataSource.probe();
+
+        assertEquals(url(slow), readFrom(0));
+        assertEquals(2002.0, registry.get("solarfarm.replicas.lag").tag("pool", "fast").gauge().value());
+    }
+
+    @Test
+    void shouldSkipReplicasThatFailTheirProbe() throws Exception {
+        catchUp(fast, slow);
+        execute(fast, "drop table replica_heartbeat;");
+        execute(slow, "drop table replica_heartbeat;");
+        dataSource.probe();
+
+        assertEquals(url(primary), readFrom(0));
+        assertTrue(Double.isNaN(registry.get("solarfarm.replicas.lag").tag("pool", "fast").gauge().value()));
+    }
+
+    @Test
+    void shouldHedgeOnTheNextFastestReplica() throws Exception {
+        catchUp(fast, slow);
+        for (int i = 0; i < 50; i++) {
+            replica("fast").observe(now.get(), 5, 200);
+            replica("slow").observe(now.get(), 5, 900);
+        }
+        assertEquals(url(slow), hedgeFrom(0));
+
+        // With only fast left, the hedge goes to the primary.
+        execute(slow, "drop table replica_heartbeat;");
+        dataSource.probe();
+        assertEquals(url(fast), readFrom(0));
+        assertEquals(url(primary), hedgeFrom(0));
+    }
+
+    // Writes a heartbeat, replicates it to the replicas, then probes again so they're seen to have it.
+    private void catchUp(JdbcDataSource... replicas) throws SQLException {
+        now.addAndGet(10);
+        dataSource.probe();
+        for (JdbcDataSource replica : replicas) {
+            copyHeartbeat(replica);
+        }
+        now.addAndGet(1);
+        dataSource.probe();
+    }
+
+    private void copyHeartbeat(JdbcDataSource replica) throws SQLException {
+        try (Connection connection = primary.getConnection();
+             Statement statement = connection.createStatement();
+             var resultSet = statement.executeQuery("select instance_id, beat from replica_heartbeat;")) {
+            execute(replica, "delete from replica_heartbeat;");
+            while (resultSet.next()) {
+                execute(replica, String.format("insert into replica_heartbeat (instance_id, beat) values ('%s', %s);",
+                        resultSet.getString(1), resultSet.getLong(2)));
+            }
+        }
+    }
+
+    private String readFrom(long writtenAt) throws DataAccessException {
+        return ReadRouting.fromReplica(writtenAt, () -> {
+            try (Connection connection = dataSource.getConnection()) {
+                return connection.getMetaData().getURL();
+            } catch (SQLException ex) {
+                throw new DataAccessException(ex.getMessage(), ex);
+            }
+        });
+    }
+
+    private String hedgeFrom(long writtenAt) throws DataAccessException {
+        return ReadRouting.hedge(writtenAt, () -> readFrom(writtenAt));
+    }
+
+    // The URL a connection reports, which leaves off the settings.
+    private static String url(JdbcDataSource database) {
+        return database.getURL().split(";")[0];
+    }
+
+    private ReplicaRoutingDataSource.Replica replica(String name) {
+        return dataSource.getReplicas().stream()
+                .filter(replica -> replica.getName().equals(name))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static JdbcDataSource database(String name) throws SQLException {
+        JdbcDataSource database = new JdbcDataSource();
+        database.setURL("jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        execute(database, "create table replica_heartbeat (instance_id char(36) primary key, beat bigint not null);");
+        return database;
+    }
+
+    private static void execute(JdbcDataSource database, String sql) throws SQLException {
+        try (Connection connection = database.getConnection()) {
+            execute(connection, sql);
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
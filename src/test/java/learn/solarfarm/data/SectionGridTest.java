@@ -0,0 +1,75 @@
+package learn.solarfarm.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SectionGridTest {
+    @Test
+    void shouldPutGetAndRemove() {
+        SectionGrid grid = new SectionGrid();
+
+        grid.put(1, 1, 7);
+        grid.put(SectionGrid.SIZE, SectionGrid.SIZE, 8);
+        grid.put(1, 1, 9);
+
+        assertEquals(9, grid.get(1, 1));
+        assertEquals(8, grid.get(SectionGrid.SIZE, SectionGrid.SIZE));
+        assertEquals(LongIntHashMap.MISSING, grid.get(1, 2));
+        assertEquals(2, grid.count());
+
+        grid.remove(1, 1);
+        grid.remove(1, 1);
+        assertEquals(LongIntHashMap.MISSING, grid.get(1, 1));
+        assertEquals(1, grid.count());
+    }
+
+    @Test
+    void shouldScanRangesInRowColumnOrder() {
+        SectionGrid grid = new SectionGrid();
+        boolean[][] expected = new boolean[SectionGrid.SIZE + 1][SectionGrid.SIZE + 1];
+        Random random = new Random(12);
+        for (int i = 0; i < 5_000; i++) {
+            int row = random.nextInt(SectionGrid.SIZE) + 1;
+            int column = random.nextInt(SectionGrid.SIZE) + 1;
+            grid.put(row, column, row * 1000 + column);
+            expected[row][column] = true;
+        }
+
+        for (int i = 0; i < 200; i++) {
+            int minRow = random.nextInt(SectionGrid.SIZE) + 1;
+            int maxRow = minRow + random.nextInt(SectionGrid.SIZE - minRow + 1);
+            int minColumn = random.nextInt(SectionGrid.SIZE) + 1;
+            int maxColumn = minColumn + random.nextInt(SectionGrid.SIZE - minColumn + 1);
+
+            List<Integer> wanted = new ArrayList<>();
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int column = minColumn; column <= maxColumn; column++) {
+                    if (expected[row][column]) {
+                        wanted.add(row * 1000 + column);
+                    }
+                }
+            }
+
+            List<Integer> actual = new ArrayList<>();
+            grid.forEachInRange(minRow, maxRow, minColumn, maxColumn, actual::add);
+            assertEquals(wanted, actual);
+        }
+    }
+
+    @Test
+    void shouldClampRangesToTheGrid() {
+        SectionGrid grid = new SectionGrid();
+        grid.put(1, 1, 1);
+        grid.put(SectionGrid.SIZE, SectionGrid.SIZE, 2);
+
+        List<Integer> actual = new ArrayList<>();
+        grid.forEachInRange(-5, 1_000, 0, 1_000, actual::add);
+
+        assertEquals(List.of(1, 2), actual);
+    }
+}
@@ -0,0 +1,151 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SolarPanelCachingRepositoryTest {
+    SolarPanelRepository delegate;
+    AtomicLong now;
+    SolarPanelCachingRepository repository;
+
+    @BeforeEach
+    void setup() {
+        delegate = mock(SolarPanelRepository.class);
+        now = new AtomicLong();
+        repository = new SolarPanelCachingRepository(delegate,
+                new LruCache<>(2, 60, TimeUnit.SECONDS, now::get),
+                new LruCache<>(2, 60, TimeUnit.SECONDS, now::get));
+    }
+
+    @Test
+    void shouldReadThroughOnceByKey() throws DataAccessException {
+        SolarPanelKey key = new SolarPanelKey("The Ridge", 1, 1);
+        when(delegate.findByKey(any())).thenReturn(
+                new SolarPanel(1, "The Ridge", 1, 1, 2020, Material.POLY_SI, true));
+
+        assertNotNull(repository.findByKey(key));
+        assertNotNull(repository.findByKey(new SolarPanelKey("the ridge", 1, 1)));
+
+        verify(delegate, times(1)).findByKey(any());
+        assertEquals(1, repository.getHitCount());
+        assertEquals(1, repository.getMissCount());
+    }
+
+    @Test
+    void shouldNotShareCachedInstances() throws DataAccessException {
+        SolarPanelKey key = new SolarPanelKey("The Ridge", 1, 1);
+        when(delegate.findByKey(any())).thenReturn(
+                new SolarPanel(1, "The Ridge", 1, 1, 2020, Material.POLY_SI, true));
+
+        repository.findByKey(key).setMaterial(Material.A_SI);
+
+        assertEquals(Material.POLY_SI, repository.findByKey(key).getMaterial());
+    }
+
+    @Test
+    void shouldExpireAfterTtl() throws DataAccessException {
+        SolarPanelKey key = new SolarPanelKey("The Ridge", 1, 1);
+        when(delegate.findByKey(any())).thenReturn(
+                new SolarPanel(1, "The Ridge", 1, 1, 2020, Material.POLY_SI, true));
+
+        repository.findByKey(key);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        repository.findByKey(key);
+
+        verify(delegate, times(2)).findByKey(any());
+        assertEquals(1, repository.getEvictionCount());
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsed() throws DataAccessException {
+        when(delegate.findByKey(any())).thenAnswer(invocation -> {
+            SolarPanelKey key = invocation.getArgument(0);
+            return new SolarPanel(1, key.getSection(), key.getRow(), key.getColumn(),
+                    2020, Material.POLY_SI, true);
+        });
+
+        repository.findByKey(new SolarPanelKey("Flats", 1, 1));
+        repository.findByKey(new SolarPanelKey("Flats", 1, 2));
+        repository.findByKey(new SolarPanelKey("Flats", 1, 1));
+        repository.findByKey(new SolarPanelKey("Flats", 1, 3));
+        repository.findByKey(new SolarPanelKey("Flats", 1, 1));
+
+        verify(delegate, times(1)).findByKey(new SolarPanelKey("Flats", 1, 1));
+        assertEquals(1, repository.getEvictionCount());
+    }
+
+    @Test
+    void shouldInvalidateSectionOnCreate() throws DataAccessException {
+        when(delegate.findBySection(any())).thenReturn(List.of(
+                new SolarPanel(1, "Flats", 1, 1, 2020, Material.POLY_SI, true)));
+
+        repository.findBySection("Flats");
+        repository.create(new SolarPanel(0, "FLATS", 1, 2, 2020, Material.POLY_SI, true));
+        repository.findBySection("Flats");
+
+        verify(delegate, times(2)).findBySection(any());
+    }
+
+    @Test
+    void shouldInvalidateOldKeyOnUpdate() throws DataAccessException {
+        SolarPanelKey oldKey = new SolarPanelKey("Flats", 1, 1);
+        when(delegate.findByKey(any())).thenReturn(
+                new SolarPanel(3, "Flats", 1, 1, 2017, Material.A_SI, true));
+        when(delegate.update(any())).thenReturn(
+                new SolarPanel(3, "Flats", 1, 1, 2017, Material.A_SI, true));
+
+        repository.findByKey(oldKey);
+        repository.update(new SolarPanel(3, "New Flats", 20, 21, 2000, Material.A_SI, false));
+        repository.findByKey(oldKey);
+
+        verify(delegate, times(2)).findByKey(oldKey);
+    }
+
+    @Test
+    void shouldInvalidateOldKeysOnUpdateAll() throws DataAccessException {
+        SolarPanelKey first = new SolarPanelKey("Flats", 1, 1);
+        SolarPanelKey second = new SolarPanelKey("Flats", 1, 2);
+        when(delegate.findByKey(first)).thenReturn(
+                new SolarPanel(3, "Flats", 1, 1, 2017, Material.A_SI, true));
+        when(delegate.findByKey(second)).thenReturn(
+                new SolarPanel(4, "Flats", 1, 2, 2017, Material.A_SI, true));
+        when(delegate.updateAll(any())).thenReturn(new boolean[]{true, true});
+
+        repository.findByKey(first);
+        repository.findByKey(second);
+        repository.updateAll(List.of(
+                new SolarPanel(3, "New Flats", 1, 1, 2000, Material.A_SI, false),
+                new SolarPanel(4, "New Flats", 1, 2, 2000, Material.A_SI, false)));
+        repository.findByKey(first);
+        repository.findByKey(second);
+
+        verify(delegate, times(2)).findByKey(first);
+        verify(delegate, times(2)).findByKey(second);
+    }
+
+    @Test
+    void shouldInvalidateOnDelete() throws DataAccessException {
+        SolarPanelKey key = new SolarPanelKey("Flats", 3, 7);
+        when(delegate.findByKey(any())).thenReturn(
+                new SolarPanel(5, "Flats", 3, 7, 2000, Material.CIGS, false));
+        when(delegate.deleteByKey(any())).thenReturn(
+                new SolarPanel(5, "Flats", 3, 7, 2000, Material.CIGS, false));
+
+        repository.findByKey(key);
+        assertNotNull(repository.deleteByKey(key));
+        when(delegate.findByKey(any())).thenReturn(null);
+
+        assertNull(repository.findByKey(key));
+    }
+}
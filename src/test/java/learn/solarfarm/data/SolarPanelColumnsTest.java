@@ -0,0 +1,40 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SolarPanelColumnsTest {
+
+    @Test
+    void shouldOrderPlainSectionsLikeMySql() {
+        // What `order by section` returns under utf8mb4_0900_ai_ci.
+        List<String> mySqlOrder = List.of("A", "A 2", "a b", "a10", "a2", "B", "b 1");
+
+        assertEquals(mySqlOrder, sections(List.of("b 1", "a2", "A 2", "B", "a10", "A", "a b")));
+    }
+
+    @Test
+    void shouldOrderPunctuationAndAccentsByCodeUnit() {
+        // MySQL puts "a_b" before "a1" and "é" before "f"; memory doesn't.
+        assertEquals(List.of("a1", "a_b"), sections(List.of("a_b", "a1")));
+        assertEquals(List.of("f", "é"), sections(List.of("é", "f")));
+    }
+
+    private static List<String> sections(List<String> sections) {
+        SolarPanelColumns columns = new SolarPanelColumns();
+        int id = 1;
+        for (String section : sections) {
+            columns.put(new SolarPanel(id++, section, 1, 1, 2020, Material.POLY_SI, true));
+        }
+
+        List<String> result = new ArrayList<>();
+        columns.forEach(solarPanel -> result.add(solarPanel.getSection()));
+        return result;
+    }
+}
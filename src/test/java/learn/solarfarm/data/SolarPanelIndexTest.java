@@ -0,0 +1,70 @@
+package learn.solarfarm.data;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.EnabledIf;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Checks the key index is in the schema and that the repository's hot queries
+// can use it. The test table is too small for the plan MySQL picks to mean
+// anything, so this asks which indexes it considered, not which one it chose.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@EnabledIf(value = "#{'${spring.profiles.active}' == 'jdbc-template'}", loadContext = true)
+class SolarPanelIndexTest {
+    private static final String KEY_INDEX = "uq_solar_panel_section_row_column";
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    // findByKey's plan is only shown when the key exists.
+    @BeforeEach
+    void setup() {
+        jdbcTemplate.update("call set_known_good_state();");
+    }
+
+    @Test
+    void shouldHaveUniqueKeyIndex() {
+        List<Map<String, Object>> columns = jdbcTemplate.queryForList(
+                "select column_name, non_unique from information_schema.statistics " +
+                        "where table_schema = database() and table_name = 'solar_panel' and index_name = ? " +
+                        "order by seq_in_index;", KEY_INDEX);
+
+        assertEquals(List.of("section", "row", "column"),
+                columns.stream().map(column -> column.get("column_name")).collect(Collectors.toList()));
+        assertEquals(0L, ((Number) columns.get(0).get("non_unique")).longValue());
+    }
+
+    @Test
+    void findBySectionShouldBeAbleToUseKeyIndex() {
+        assertCanUseKeyIndex(SolarPanelJdbcTemplateRepository.FIND_BY_SECTION_SQL, "The Ridge");
+    }
+
+    @Test
+    void findByGridRangeShouldBeAbleToUseKeyIndex() {
+        assertCanUseKeyIndex(SolarPanelJdbcTemplateRepository.FIND_BY_GRID_RANGE_SQL,
+                "The Ridge", 10, 40, 1, 100);
+    }
+
+    @Test
+    void findByKeyShouldBeAbleToUseKeyIndex() {
+        assertCanUseKeyIndex(SolarPanelJdbcTemplateRepository.FIND_BY_KEY_SQL, "The Ridge", 1, 1);
+    }
+
+    private void assertCanUseKeyIndex(String sql, Object... args) {
+        Map<String, Object> plan = explain(sql, args);
+        assertTrue(String.valueOf(plan.get("possible_keys")).contains(KEY_INDEX),
+                () -> "Can't use " + KEY_INDEX + ": " + plan);
+    }
+
+    private Map<String, Object> explain(String sql, Object... args) {
+        return jdbcTemplate.queryForMap("explain " + sql.replace(";", ""), args);
+    }
+}
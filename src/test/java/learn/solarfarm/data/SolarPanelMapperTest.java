@@ -0,0 +1,47 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+import org.junit.jupiter.api.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SolarPanelMapperTest {
+    @Test
+    void shouldMapColumnsByPosition() throws SQLException {
+        ResultSet rs = mockRow(Material.CD_TE.getValue());
+
+        SolarPanel sp = SolarPanelMapper.INSTANCE.mapRow(rs, 0);
+
+        assertEquals(7, sp.getId());
+        assertEquals(new SolarPanelKey("Flats", 3, 12), sp.getKey());
+        assertEquals(2019, sp.getYearInstalled());
+        assertEquals(Material.CD_TE, sp.getMaterial());
+        assertTrue(sp.isTracking());
+        verify(rs, never()).getInt(anyString());
+    }
+
+    @Test
+    void shouldRejectUnknownMaterial() throws SQLException {
+        ResultSet rs = mockRow(99);
+
+        assertThrows(RuntimeException.class, () -> SolarPanelMapper.INSTANCE.mapRow(rs, 0));
+    }
+
+    private static ResultSet mockRow(int materialId) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getInt(1)).thenReturn(7);
+        when(rs.getString(2)).thenReturn("Flats");
+        when(rs.getInt(3)).thenReturn(3);
+        when(rs.getInt(4)).thenReturn(12);
+        when(rs.getInt(5)).thenReturn(2019);
+        when(rs.getInt(6)).thenReturn(materialId);
+        when(rs.getBoolean(7)).thenReturn(true);
+        return rs;
+    }
+}
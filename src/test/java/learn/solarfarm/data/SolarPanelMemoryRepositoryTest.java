@@ -0,0 +1,229 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SolarPanelMemoryRepositoryTest {
+    SolarPanelRepository database;
+    SolarPanelMemoryRepository repository;
+
+    @BeforeEach
+    void setup() throws DataAccessException {
+        database = mock(SolarPanelRepository.class);
+        doAnswer(invocation -> {
+            Consumer<SolarPanel> consumer = invocation.getArgument(0);
+            consumer.accept(new SolarPanel(1, "The Ridge", 1, 1, 2020, Material.POLY_SI, true));
+            consumer.accept(new SolarPanel(2, "The Ridge", 1, 2, 2019, Material.POLY_SI, true));
+            consumer.accept(new SolarPanel(3, "Flats", 1, 1, 2017, Material.A_SI, true));
+            consumer.accept(new SolarPanel(4, "Flats", 1, 2, 2017, Material.A_SI, true));
+            return null;
+        }).when(database).streamAll(any());
+
+        repository = new SolarPanelMemoryRepository(database);
+        repository.reload();
+    }
+
+    @Test
+    void shouldLoadEverything() throws DataAccessException {
+        assertEquals(4, repository.size());
+        assertEquals(4, repository.findAll().size());
+    }
+
+    @Test
+    void shouldFindByKeyIgnoringSectionCase() throws DataAccessException {
+        SolarPanel actual = repository.findByKey(new SolarPanelKey("the ridge", 1, 2));
+
+        assertNotNull(actual);
+        assertEquals(2, actual.getId());
+        assertEquals("The Ridge", actual.getSection());
+        assertNull(repository.findByKey(new SolarPanelKey("The Ridge", 9, 9)));
+        assertNull(repository.findByKey(new SolarPanelKey("Nowhere", 1, 1)));
+    }
+
+    @Test
+    void shouldFindById() throws DataAccessException {
+        assertEquals("Flats", repository.findById(4).getSection());
+        assertNull(repository.findById(99));
+    }
+
+    @Test
+    void shouldFindBySectionInRowColumnOrder() throws DataAccessException {
+        List<SolarPanel> actual = repository.findBySection("FLATS");
+
+        assertEquals(2, actual.size());
+        assertEquals(3, actual.get(0).getId());
+        assertEquals(4, actual.get(1).getId());
+        assertEquals(0, repository.findBySection("Nowhere").size());
+    }
+
+    @Test
+    void shouldFindByGridRange() throws DataAccessException {
+        assertEquals(List.of(2), ids(repository.findByGridRange("the ridge", 1, 1, 2, 250)));
+        assertEquals(List.of(3, 4), ids(repository.findByGridRange("Flats", 1, 250, 1, 250)));
+        assertEquals(0, repository.findByGridRange("Flats", 2, 250, 1, 250).size());
+        assertEquals(0, repository.findByGridRange("Nowhere", 1, 250, 1, 250).size());
+    }
+
+    @Test
+    void shouldCount() throws DataAccessException {
+        assertEquals(List.of("Flats", "The Ridge"), List.copyOf(repository.countBySection().keySet()));
+        assertEquals(Map.of("Flats", 2, "The Ridge", 2), repository.countBySection());
+        assertEquals(Map.of(Material.POLY_SI, 2, Material.A_SI, 2), repository.countByMaterial());
+        assertEquals(Map.of(true, 4), repository.countByTracking());
+        assertEquals(Map.of(2017, 2, 2019, 1, 2020, 1), repository.countByYearInstalled());
+    }
+
+    @Test
+    void shouldPageInKeyOrder() throws DataAccessException {
+        List<SolarPanel> first = repository.findPage(null, 3);
+        List<SolarPanel> second = repository.findPage(first.get(2).getKey(), 3);
+
+        assertEquals(List.of(3, 4, 1), ids(first));
+        assertEquals(List.of(2), ids(second));
+    }
+
+    @Test
+    void shouldStreamInKeyOrder() throws DataAccessException {
+        List<SolarPanel> streamed = new ArrayList<>();
+        repository.streamAll(streamed::add);
+
+        assertEquals(List.of(3, 4, 1, 2), ids(streamed));
+    }
+
+    @Test
+    void shouldWriteThroughOnCreate() throws DataAccessException {
+        SolarPanel solarPanel = new SolarPanel(0, "Flats", 2, 1, 2020, Material.CD_TE, false);
+        when(database.create(any())).thenAnswer(invocation -> {
+            SolarPanel sp = invocation.getArgument(0);
+            sp.setId(5);
+            return sp;
+        });
+
+        repository.create(solarPanel);
+        // Changing the caller's instance must not change memory.
+        solarPanel.setMaterial(Material.CIGS);
+
+        SolarPanel actual = repository.findByKey(new SolarPanelKey("Flats", 2, 1));
+        assertEquals(5, actual.getId());
+        assertEquals(Material.CD_TE, actual.getMaterial());
+        assertEquals(List.of(3, 4, 5), ids(repository.findBySection("Flats")));
+    }
+
+    @Test
+    void shouldMoveKeyOnUpdate() throws DataAccessException {
+        when(database.update(any())).thenReturn(new SolarPanel(1, "The Ridge", 1, 1, 2000, Material.POLY_SI, true));
+
+        assertNotNull(repository.update(new SolarPanel(1, "Flats", 9, 9, 2000, Material.CIGS, false)));
+
+        assertNull(repository.findByKey(new SolarPanelKey("The Ridge", 1, 1)));
+        assertEquals(Material.CIGS, repository.findByKey(new SolarPanelKey("Flats", 9, 9)).getMaterial());
+        assertEquals(List.of(2), ids(repository.findBySection("The Ridge")));
+        assertEquals(List.of(3, 4, 1), ids(repository.findBySection("Flats")));
+        assertEquals("Flats", repository.findById(1).getSection());
+    }
+
+    @Test
+    void shouldNotChangeMemoryWhenDatabaseUpdateFails() throws DataAccessException {
+        when(database.update(any())).thenReturn(null);
+
+        assertNull(repository.update(new SolarPanel(1, "Flats", 9, 9, 2000, Material.CIGS, false)));
+
+        assertNotNull(repository.findByKey(new SolarPanelKey("The Ridge", 1, 1)));
+    }
+
+    @Test
+    void shouldNotChangeMemoryWhenDatabaseThrows() throws DataAccessException {
+        when(database.create(any())).thenThrow(new DuplicateSolarPanelKeyException(
+                new SolarPanelKey("Flats", 1, 1), null));
+
+        assertThrows(DuplicateSolarPanelKeyException.class, () ->
+                repository.create(new SolarPanel(0, "Flats", 1, 1, 2000, Material.CIGS, false)));
+
+        assertEquals(3, repository.findByKey(new SolarPanelKey("Flats", 1, 1)).getId());
+    }
+
+    @Test
+    void shouldRemoveOnDelete() throws DataAccessException {
+        when(database.deleteByKey(any())).thenReturn(new SolarPanel(1, "The Ridge", 1, 1, 2000, Material.POLY_SI, true));
+
+        assertNotNull(repository.deleteByKey(new SolarPanelKey("The Ridge", 1, 1)));
+
+        assertNull(repository.findByKey(new SolarPanelKey("The Ridge", 1, 1)));
+        assertEquals(3, repository.size());
+        // Every panel left must still be reachable after the slots were compacted.
+        for (SolarPanel sp : repository.findAll()) {
+            assertEquals(sp.getId(), repository.findByKey(sp.getKey()).getId());
+            assertEquals(sp.getKey(), repository.findById(sp.getId()).getKey());
+        }
+    }
+
+    @Test
+    void shouldApplyBatches() throws DataAccessException {
+        when(database.createAll(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(database.deleteAll(any())).thenReturn(new boolean[]{true, true});
+
+        repository.createAll(List.of(
+                new SolarPanel(6, "Hill", 1, 1, 2018, Material.MONO_SI, true),
+                new SolarPanel(7, "Hill", 1, 2, 2018, Material.MONO_SI, true)));
+        repository.deleteAll(List.of(new SolarPanelKey("Flats", 1, 1), new SolarPanelKey("Flats", 1, 2)));
+
+        assertEquals(List.of(6, 7, 1, 2), ids(repository.findAll()));
+    }
+
+    @Test
+    void shouldApplyWritesInCommitOrder() throws Exception {
+        when(database.update(any())).thenReturn(new SolarPanel(1, "The Ridge", 1, 1, 2000, Material.POLY_SI, true));
+        SolarPanel first = new SolarPanel(1, "The Ridge", 1, 1, 2001, Material.POLY_SI, true);
+        SolarPanel second = new SolarPanel(1, "The Ridge", 1, 1, 2002, Material.POLY_SI, true);
+
+        // The first update's transaction stays open until it's completed by hand.
+        TransactionSynchronizationManager.initSynchronization();
+        Thread secondWriter;
+        try {
+            repository.update(first);
+            secondWriter = new Thread(() -> {
+                try {
+                    repository.update(second);
+                } catch (DataAccessException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            });
+            secondWriter.start();
+            secondWriter.join(200);
+            assertTrue(secondWriter.isAlive(), "The second write must wait for the first to commit.");
+
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        secondWriter.join(5000);
+
+        assertFalse(secondWriter.isAlive());
+        assertEquals(2002, repository.findById(1).getYearInstalled());
+    }
+
+    private static List<Integer> ids(List<SolarPanel> solarPanels) {
+        List<Integer> result = new ArrayList<>();
+        for (SolarPanel sp : solarPanels) {
+            result.add(sp.getId());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,65 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.EnabledIf;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@EnabledIf(value = "#{'${spring.profiles.active}'.contains('r2dbc')}", loadContext = true)
+class SolarPanelR2dbcRepositoryTest {
+    @Autowired
+    SolarPanelR2dbcRepository repository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    static boolean hasSetUp = false;
+
+    @BeforeEach
+    void setup() {
+        if (!hasSetUp) {
+            hasSetUp = true;
+            jdbcTemplate.update("call set_known_good_state();");
+        }
+    }
+
+    @Test
+    void shouldFindAll() {
+        List<SolarPanel> all = repository.findAll().collectList().block();
+
+        assertNotNull(all);
+        assertTrue(all.size() >= 4);
+        assertTrue(all.contains(new SolarPanel(1, "The Ridge", 1, 1,
+                2020, Material.POLY_SI, true)));
+    }
+
+    @Test
+    void shouldFindBySection() {
+        List<SolarPanel> all = repository.findBySection("The Ridge").collectList().block();
+
+        assertNotNull(all);
+        assertTrue(all.size() >= 2);
+        assertTrue(all.stream().allMatch(i -> i.getSection().equals("The Ridge")));
+    }
+
+    @Test
+    void shouldNotFindBySectionMissing() {
+        assertEquals(0, repository.findBySection("Nowhere").count().block());
+    }
+
+    @Test
+    void shouldStopReadingWhenCancelled() {
+        // Only as many rows as asked for; the connection goes back to the pool.
+        assertEquals(1, repository.findAll().take(1).count().block());
+        assertEquals(1, repository.findAll().take(1).count().block());
+    }
+}
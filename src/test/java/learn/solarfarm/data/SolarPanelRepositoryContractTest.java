@@ -0,0 +1,234 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The cases every database-backed SolarPanelRepository must pass, run against
+// the test database. Subclasses supply the repository and the profile it runs under.
+abstract class SolarPanelRepositoryContractTest {
+    // Resets the database once per subclass.
+    private static final Set<Class<?>> setUpClasses = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    abstract SolarPanelRepository repository();
+
+    @BeforeEach
+    void setup() {
+        if (setUpClasses.add(getClass())) {
+            jdbcTemplate.update("call set_known_good_state();");
+        }
+    }
+
+    @Test
+    void shouldFindAll() throws DataAccessException {
+        List<SolarPanel> all = repository().findAll();
+
+        assertNotNull(all);
+        assertTrue(all.size() >= 4);
+
+        SolarPanel expected = new SolarPanel(1, "The Ridge", 1, 1,
+                2020, Material.POLY_SI, true);
+
+        // Ensure the solar_panel_id `1` is present (`1` is always left alone).
+        // Then confirm solal_panel_id `2` exists, though its fields may have changed.
+        assertTrue(all.contains(expected)
+                && all.stream().anyMatch(i -> i.getId() == 2));
+    }
+
+    @Test
+    void shouldFindFirstPage() throws DataAccessException {
+        List<SolarPanel> page = repository().findPage(null, 2);
+
+        assertEquals(2, page.size());
+        assertTrue(page.get(0).getSection().compareToIgnoreCase(page.get(1).getSection()) <= 0);
+    }
+
+    @Test
+    void shouldFindPageAfterKey() throws DataAccessException {
+        List<SolarPanel> page = repository().findPage(new SolarPanelKey("The Ridge", 1, 1), 10);
+
+        assertNotNull(page);
+        assertTrue(page.stream().noneMatch(i -> i.getSection().equals("Flats")));
+        assertFalse(page.contains(new SolarPanel(1, "The Ridge", 1, 1,
+                2020, Material.POLY_SI, true)));
+    }
+
+    @Test
+    void shouldStreamAll() throws DataAccessException {
+        List<SolarPanel> streamed = new ArrayList<>();
+        repository().streamAll(streamed::add);
+
+        assertEquals(repository().findAll().size(), streamed.size());
+    }
+
+    @Test
+    void shouldCountByEveryColumn() throws DataAccessException {
+        int total = repository().findAll().size();
+
+        assertTrue(repository().countBySection().get("The Ridge") >= 2);
+        assertEquals(total, repository().countBySection().values().stream().mapToInt(i -> i).sum());
+        assertEquals(total, repository().countByMaterial().values().stream().mapToInt(i -> i).sum());
+        assertEquals(total, repository().countByTracking().values().stream().mapToInt(i -> i).sum());
+        assertEquals(total, repository().countByYearInstalled().values().stream().mapToInt(i -> i).sum());
+    }
+
+    @Test
+    void shouldFindByGridRange() throws DataAccessException {
+        List<SolarPanel> actual = repository().findByGridRange("The Ridge", 1, 1, 1, 1);
+
+        assertEquals(1, actual.size());
+        assertEquals(1, actual.get(0).getId());
+        assertEquals(0, repository().findByGridRange("The Ridge", 200, 250, 200, 250).size());
+    }
+
+    @Test
+    void shouldFindBySection() throws DataAccessException {
+        List<SolarPanel> all = repository().findBySection("The Ridge");
+
+        assertNotNull(all);
+        assertTrue(all.size() >= 2);
+
+        SolarPanel expected = new SolarPanel(1, "The Ridge", 1, 1,
+                2020, Material.POLY_SI, true);
+
+        // Ensure the solar_panel_id `1` is present (`1` is always left alone).
+        // Then confirm solal_panel_id `2` exists, though its fields may have changed.
+        assertTrue(all.contains(expected)
+                && all.stream().anyMatch(i -> i.getId() == 2));
+    }
+
+    @Test
+    void shouldFindById() throws DataAccessException {
+        SolarPanel expected = new SolarPanel(1, "The Ridge", 1, 1,
+                2020, Material.POLY_SI, true);
+
+        assertEquals(expected, repository().findById(1));
+        assertNull(repository().findById(100_000));
+    }
+
+    @Test
+    void shouldFindByKey() throws DataAccessException {
+        SolarPanel expected = new SolarPanel(1, "The Ridge", 1, 1,
+                2020, Material.POLY_SI, true);
+
+        SolarPanel actual = repository().findByKey(new SolarPanelKey("The Ridge", 1, 1));
+
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void shouldNotFindByKeyMissing() throws DataAccessException {
+        SolarPanel actual = repository().findByKey(new SolarPanelKey("Missing", 1, 1));
+        assertNull(actual);
+    }
+
+    @Test
+    void shouldFindByKeys() throws DataAccessException {
+        List<SolarPanel> actual = repository().findByKeys(List.of(
+                new SolarPanelKey("The Ridge", 1, 1),
+                new SolarPanelKey("Missing", 1, 1)));
+
+        assertEquals(1, actual.size());
+        assertEquals(1, actual.get(0).getId());
+    }
+
+    @Test
+    void shouldCreate() throws DataAccessException {
+        SolarPanel solarPanel = new SolarPanel(0, "The Ridge", 10, 10,
+                2020, Material.POLY_SI, true);
+
+        SolarPanel actual = repository().create(solarPanel);
+
+        assertNotNull(actual);
+        assertTrue(actual.getId() > 0);
+    }
+
+    @Test
+    void shouldNotCreateDuplicateKey() {
+        SolarPanel solarPanel = new SolarPanel(0, "The Ridge", 1, 1,
+                2020, Material.POLY_SI, true);
+
+        assertThrows(DuplicateSolarPanelKeyException.class, () -> repository().create(solarPanel));
+    }
+
+    @Test
+    void shouldUpdateExisting() throws DataAccessException {
+        SolarPanel solarPanel = new SolarPanel(3, "New Flats", 20, 21,
+                2000, Material.A_SI, false);
+
+        SolarPanel old = repository().update(solarPanel);
+        assertEquals(new SolarPanelKey("Flats", 1, 1), old.getKey());
+        assertEquals(solarPanel, repository().findByKey(solarPanel.getKey()));
+    }
+
+    @Test
+    void shouldNotUpdateMissing() throws DataAccessException {
+        SolarPanel solarPanel = new SolarPanel(-1, "New Ridge", 20, 21,
+                2000, Material.A_SI, false);
+
+        assertNull(repository().update(solarPanel));
+    }
+
+    @Test
+    void shouldDeleteExisting() throws DataAccessException {
+        SolarPanel deleted = repository().deleteByKey(new SolarPanelKey("Flats", 3, 7));
+        assertEquals(2000, deleted.getYearInstalled());
+        assertNull(repository().findByKey(deleted.getKey()));
+    }
+
+    @Test
+    void shouldNotDeleteMissing() throws DataAccessException {
+        assertNull(repository().deleteByKey(new SolarPanelKey("Missing", 1, 1)));
+    }
+
+    @Test
+    void shouldCreateAll() throws DataAccessException {
+        List<SolarPanel> solarPanels = List.of(
+                new SolarPanel(0, "Batch", 1, 1, 2020, Material.POLY_SI, true),
+                new SolarPanel(0, "Batch", 1, 2, 2020, Material.CIGS, false));
+
+        List<SolarPanel> actual = repository().createAll(solarPanels);
+
+        assertEquals(2, actual.size());
+        assertTrue(actual.stream().allMatch(i -> i.getId() > 0));
+        assertEquals(2, repository().findBySection("Batch").size());
+    }
+
+    @Test
+    void shouldUpdateAll() throws DataAccessException {
+        SolarPanel existing = repository().findByKey(new SolarPanelKey("The Ridge", 1, 1));
+        SolarPanel missing = new SolarPanel(-1, "New Ridge", 30, 31,
+                2000, Material.A_SI, false);
+
+        boolean[] updated = repository().updateAll(List.of(existing, missing));
+
+        assertTrue(updated[0]);
+        assertFalse(updated[1]);
+    }
+
+    @Test
+    void shouldDeleteAll() throws DataAccessException {
+        repository().create(new SolarPanel(0, "Doomed", 1, 1, 2020, Material.POLY_SI, true));
+
+        boolean[] deleted = repository().deleteAll(List.of(
+                new SolarPanelKey("Doomed", 1, 1),
+                new SolarPanelKey("Missing", 1, 1)));
+
+        assertTrue(deleted[0]);
+        assertFalse(deleted[1]);
+    }
+}
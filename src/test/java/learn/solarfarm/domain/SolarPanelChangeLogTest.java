@@ -0,0 +1,65 @@
+package learn.solarfarm.domain;
+
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelChange;
+import learn.solarfarm.models.SolarPanelKey;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SolarPanelChangeLogTest {
+    @Test
+    void shouldReadChangesAfterSequence() {
+        SolarPanelChangeLog changeLog = new SolarPanelChangeLog(4);
+        long start = changeLog.getLatestSequence();
+        SolarPanel solarPanel = new SolarPanel(1, "The Ridge", 1, 1, 2020, Material.POLY_SI, true);
+
+        changeLog.publish(SolarPanelChange.Type.CREATED, solarPanel.getKey(), solarPanel);
+        changeLog.publish(SolarPanelChange.Type.DELETED, solarPanel.getKey(), null);
+        solarPanel.setSection("Changed");
+
+        List<SolarPanelChange> changes = changeLog.readAfter(start, 10);
+        assertEquals(2, changes.size());
+        assertEquals(start + 1, changes.get(0).getSequence());
+        assertEquals("The Ridge", changes.get(0).getSolarPanel().getSection());
+        assertEquals(SolarPanelChange.Type.DELETED, changes.get(1).getType());
+        assertNull(changes.get(1).getSolarPanel());
+
+        assertEquals(1, changeLog.readAfter(start, 1).size());
+        assertTrue(changeLog.readAfter(start + 2, 10).isEmpty());
+    }
+
+    @Test
+    void shouldExpireChangesThatFallOutOfTheRing() {
+        SolarPanelChangeLog changeLog = new SolarPanelChangeLog(4);
+        long start = changeLog.getLatestSequence();
+        SolarPanelKey key = new SolarPanelKey("The Ridge", 1, 1);
+
+        for (int i = 0; i < 6; i++) {
+            changeLog.publish(SolarPanelChange.Type.DELETED, key, null);
+        }
+
+        assertNull(changeLog.readAfter(start, 10));
+        assertNull(changeLog.readAfter(start + 1, 10));
+        assertEquals(4, changeLog.readAfter(start + 2, 10).size());
+        assertNull(changeLog.readAfter(start + 7, 10));
+    }
+
+    @Test
+    void shouldNotifyListeners() {
+        SolarPanelChangeLog changeLog = new SolarPanelChangeLog(4);
+        AtomicInteger calls = new AtomicInteger();
+        Runnable listener = calls::incrementAndGet;
+        changeLog.addListener(listener);
+
+        changeLog.publish(SolarPanelChange.Type.DELETED, new SolarPanelKey("The Ridge", 1, 1), null);
+        changeLog.removeListener(listener);
+        changeLog.publish(SolarPanelChange.Type.DELETED, new SolarPanelKey("The Ridge", 1, 1), null);
+
+        assertEquals(1, calls.get());
+    }
+}
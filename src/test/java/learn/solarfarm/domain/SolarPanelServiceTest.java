@@ -1,10 +1,13 @@
 package learn.solarfarm.domain;
 
 import learn.solarfarm.data.DataAccessException;
+import learn.solarfarm.data.DuplicateSolarPanelKeyException;
 import learn.solarfarm.data.SolarPanelRepository;
 import learn.solarfarm.models.Material;
 import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelChange;
 import learn.solarfarm.models.SolarPanelKey;
+import learn.solarfarm.models.SolarPanelStats;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -12,10 +15,17 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 
 import java.time.Year;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
 class SolarPanelServiceTest {
@@ -25,6 +35,9 @@ class SolarPanelServiceTest {
     @Autowired
     SolarPanelService service;
 
+    @Autowired
+    SolarPanelChangeLog changeLog;
+
     @Test
     void shouldFindAll() throws DataAccessException {
         when(repository.findAll()).thenReturn(List.of(
@@ -37,6 +50,17 @@ class SolarPanelServiceTest {
         assertEquals(3, solarPanels.size());
     }
 
+    @Test
+    void shouldClampPageSize() throws DataAccessException {
+        when(repository.findPage(any(), eq(SolarPanelService.MAX_PAGE_SIZE))).thenReturn(List.of(
+                new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true)
+        ));
+
+        List<SolarPanel> solarPanels = service.findPage(null, SolarPanelService.MAX_PAGE_SIZE + 1);
+        assertEquals(1, solarPanels.size());
+        assertEquals(1, SolarPanelService.getPageSize(0));
+    }
+
     @Test
     void shouldFindTwoSolarPanelsForSectionOne() throws DataAccessException {
         when(repository.findBySection(any())).thenReturn(List.of(
@@ -48,6 +72,106 @@ class SolarPanelServiceTest {
         assertEquals(2, solarPanels.size());
     }
 
+    @Test
+    void shouldKeepStatsCurrentWithoutRecounting() throws DataAccessException {
+        stubCounts();
+        SolarPanel existing = new SolarPanel(2, "Section One", 1, 2, 2020, Material.POLY_SI, true);
+        when(repository.create(any())).thenAnswer(invocation -> {
+            SolarPanel created = invocation.getArgument(0);
+            created.setId(4);
+            return created;
+        });
+        when(repository.update(any())).thenReturn(existing);
+
+        SolarPanelStats stats = service.getStats();
+        assertEquals(3, stats.getTotal());
+        assertSame(stats, service.getStats());
+
+        service.create(new SolarPanel(0, "section one", 3, 3, 2021, Material.CD_TE, false));
+        stats = service.getStats();
+        assertEquals(4, stats.getTotal());
+        assertEquals(3, stats.getBySection().get("Section One"));
+        assertEquals(1, stats.getByMaterial().get(Material.CD_TE));
+        assertEquals(1, stats.getByYearInstalled().get(2021));
+
+        service.update(new SolarPanel(2, "Section One", 1, 2, 2021, Material.A_SI, true));
+        stats = service.getStats();
+        assertEquals(1, stats.getByMaterial().get(Material.POLY_SI));
+        assertEquals(2, stats.getByMaterial().get(Material.A_SI));
+        assertEquals(2, stats.getByYearInstalled().get(2021));
+
+        when(repository.deleteByKey(existing.getKey()))
+                .thenReturn(new SolarPanel(2, "Section One", 1, 2, 2021, Material.A_SI, true));
+        service.deleteByKey(existing.getKey());
+        stats = service.getStats();
+        assertEquals(3, stats.getTotal());
+        assertEquals(2, stats.getBySection().get("Section One"));
+        assertEquals(1, stats.getByMaterial().get(Material.A_SI));
+        assertEquals(Map.of(true, 1, false, 2), stats.getByTracking());
+
+        verify(repository, never()).countBySection();
+    }
+
+    @Test
+    void shouldNotChangeStatsWhenWriteFails() throws DataAccessException {
+        stubCounts();
+        when(repository.deleteByKey(any())).thenReturn(null);
+        when(repository.create(any())).thenThrow(DuplicateSolarPanelKeyException.class);
+
+        service.deleteByKey(new SolarPanelKey("Section One", 1, 1));
+        service.create(new SolarPanel(0, "Section One", 1, 1, 2020, Material.POLY_SI, true));
+
+        assertEquals(3, service.getStats().getTotal());
+    }
+
+    @Test
+    void shouldRecountStatsAfterBatchUpdate() throws DataAccessException {
+        stubCounts();
+        when(repository.updateAll(any())).thenReturn(new boolean[0]);
+
+        service.updateAll(List.of());
+        service.getStats();
+
+        verify(repository, times(1)).countBySection();
+    }
+
+    @Test
+    void shouldReconcileDriftedStats() throws DataAccessException {
+        stubCounts();
+        assertFalse(service.reconcileStats());
+
+        when(repository.countBySection()).thenReturn(Map.of("Section One", 2));
+        when(repository.countByMaterial()).thenReturn(Map.of(Material.POLY_SI, 2));
+        when(repository.countByTracking()).thenReturn(Map.of(true, 2));
+        when(repository.countByYearInstalled()).thenReturn(Map.of(2020, 2));
+
+        assertTrue(service.reconcileStats());
+        assertEquals(2, service.getStats().getTotal());
+        assertFalse(service.reconcileStats());
+    }
+
+    @Test
+    void shouldFindByGridRange() throws DataAccessException {
+        when(repository.findByGridRange("Section One", 1, 10, 1, 2)).thenReturn(List.of(
+                new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true),
+                new SolarPanel(2, "Section One", 1, 2, 2020, Material.POLY_SI, true)
+        ));
+
+        Result<List<SolarPanel>> result = service.findByGridRange("Section One", 1, 10, 1, 2);
+        assertTrue(result.isSuccess());
+        assertEquals(2, result.getPayload().size());
+    }
+
+    @Test
+    void shouldNotFindByGridRangeOutOfBounds() throws DataAccessException {
+        Result<List<SolarPanel>> result = service.findByGridRange("Section One",
+                0, SolarPanelService.MAX_ROW_COLUMN + 1, 20, 10);
+
+        assertEquals(ResultType.INVALID, result.getType());
+        assertEquals(2, result.getMessages().size());
+        verify(repository, never()).findByGridRange(any(), eq(0), eq(251), eq(20), eq(10));
+    }
+
     @Test
     void shouldFindSolarPanelInSectionTwoRow10Column11() throws DataAccessException {
         when(repository.findByKey(any())).thenReturn(
@@ -218,8 +342,8 @@ class SolarPanelServiceTest {
 
     @Test
     void shouldNotCreateNonUniqueSectionRowColumn() throws DataAccessException {
-        when(repository.findByKey(any())).thenReturn(
-                new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true));
+        when(repository.create(any())).thenThrow(new DuplicateSolarPanelKeyException(
+                new SolarPanelKey("Section One", 1, 1), null));
 
         SolarPanel solarPanel = new SolarPanel();
         solarPanel.setSection("Section One");
@@ -235,6 +359,41 @@ class SolarPanelServiceTest {
         assertTrue(result.getMessages().get(0).contains("must be unique"));
     }
 
+    @Test
+    void shouldNotCheckForDuplicateKeyBeforeCreate() throws DataAccessException {
+        SolarPanel solarPanel = new SolarPanel(0, "Section One", 1, 3, 2000, Material.POLY_SI, false);
+
+        Result<SolarPanel> result = service.create(solarPanel);
+
+        assertTrue(result.isSuccess());
+        verify(repository, never()).findByKey(any());
+    }
+
+    @Test
+    void shouldNotUpdateToNonUniqueSectionRowColumn() throws DataAccessException {
+        when(repository.update(any())).thenThrow(new DuplicateSolarPanelKeyException(
+                new SolarPanelKey("Section One", 1, 1), null));
+
+        SolarPanel solarPanel = new SolarPanel(2, "Section One", 1, 1, 2020, Material.POLY_SI, true);
+
+        Result<SolarPanel> result = service.update(solarPanel);
+
+        assertEquals(ResultType.INVALID, result.getType());
+        assertTrue(result.getMessages().get(0).contains("must be unique"));
+    }
+
+    @Test
+    void shouldRejectBatchWhenKeyTakenConcurrently() throws DataAccessException {
+        when(repository.createAll(any())).thenThrow(new DuplicateSolarPanelKeyException(
+                "A SolarPanel in the batch already exists.", null));
+
+        List<Result<SolarPanel>> results = service.createAll(List.of(
+                new SolarPanel(0, "Section One", 1, 3, 2000, Material.POLY_SI, false)));
+
+        assertEquals(ResultType.INVALID, results.get(0).getType());
+        assertNull(results.get(0).getPayload());
+    }
+
     @Test
     void shouldNotCreatePositiveId() throws DataAccessException {
         SolarPanel solarPanel = new SolarPanel(1, "Section One", 1, 1, 2020,
@@ -261,6 +420,22 @@ class SolarPanelServiceTest {
         assertTrue(result.isSuccess());
     }
 
+    @Test
+    void shouldPublishOnlySuccessfulWrites() throws DataAccessException {
+        SolarPanelKey key = new SolarPanelKey("Section One", 1, 1);
+        when(repository.deleteByKey(key)).thenReturn(
+                new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true), null);
+        long start = changeLog.getLatestSequence();
+
+        service.deleteByKey(key);
+        service.deleteByKey(key);
+
+        List<SolarPanelChange> changes = changeLog.readAfter(start, 10);
+        assertEquals(1, changes.size());
+        assertEquals(SolarPanelChange.Type.DELETED, changes.get(0).getType());
+        assertEquals(key, changes.get(0).getKey());
+    }
+
     @Test
     void shouldNotUpdateEmptySection() throws DataAccessException {
         when(repository.findByKey(any())).thenReturn(
@@ -313,7 +488,8 @@ class SolarPanelServiceTest {
     void shouldUpdate() throws DataAccessException {
         when(repository.findByKey(any())).thenReturn(
                 new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true));
-        when(repository.update(any())).thenReturn(true);
+        when(repository.update(any())).thenReturn(
+                new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true));
 
         SolarPanel solarPanel = service.findByKey(new SolarPanelKey("Section One", 1, 1));
         solarPanel.setMaterial(Material.A_SI);
@@ -336,12 +512,121 @@ class SolarPanelServiceTest {
         assertTrue(result.getMessages().get(0).contains("was not found"));
     }
 
+    @Test
+    void shouldChangeOnlyTheSectionsAnUpdateTouches() throws DataAccessException {
+        when(repository.update(any())).thenReturn(
+                new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true));
+        long one = service.getSectionVersion("Section One");
+        long three = service.getSectionVersion("Section Three");
+
+        // Moves the panel from Section One to Section Two.
+        Result<SolarPanel> result = service.update(
+                new SolarPanel(1, "Section Two", 1, 1, 2020, Material.POLY_SI, true));
+
+        assertTrue(result.isSuccess());
+        assertNotEquals(one, service.getSectionVersion("Section One"));
+        assertEquals(service.getVersion(), service.getSectionVersion("Section Two"));
+        assertEquals(three, service.getSectionVersion("Section Three"));
+        verify(repository, never()).findById(anyInt());
+    }
+
     @Test
     void shouldDelete() throws DataAccessException {
-        when(repository.deleteByKey(any())).thenReturn(true);
+        when(repository.deleteByKey(any())).thenReturn(
+                new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true));
 
         Result<SolarPanel> result = service.deleteByKey(new SolarPanelKey("Section One", 1, 1));
 
         assertTrue(result.isSuccess());
     }
+
+    @Test
+    void shouldCreateAllValidInOneBatch() throws DataAccessException {
+        SolarPanel valid = new SolarPanel(0, "Section One", 1, 3, 2000, Material.POLY_SI, false);
+        SolarPanel invalid = new SolarPanel(0, "", 1, 4, 2000, Material.POLY_SI, false);
+
+        List<Result<SolarPanel>> results = service.createAll(List.of(valid, invalid));
+
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertEquals(valid, results.get(0).getPayload());
+        assertFalse(results.get(1).isSuccess());
+        assertTrue(results.get(1).getMessages().get(0).contains("`section`"));
+        verify(repository).createAll(List.of(valid));
+    }
+
+    @Test
+    void shouldUpdateAllAndReportMissing() throws DataAccessException {
+        SolarPanel existing = new SolarPanel(1, "Section One", 1, 1, 2000, Material.POLY_SI, false);
+        SolarPanel missing = new SolarPanel(1000, "Section One", 1, 2, 2000, Material.POLY_SI, false);
+        when(repository.updateAll(any())).thenReturn(new boolean[]{true, false});
+
+        List<Result<SolarPanel>> results = service.updateAll(List.of(existing, missing));
+
+        assertTrue(results.get(0).isSuccess());
+        assertEquals(ResultType.NOT_FOUND, results.get(1).getType());
+    }
+
+    @Test
+    void shouldDeleteAllAndReportMissing() throws DataAccessException {
+        when(repository.deleteAll(any())).thenReturn(new boolean[]{false, true});
+
+        List<Result<SolarPanel>> results = service.deleteAll(List.of(
+                new SolarPanelKey("Section Two", 100, 100),
+                new SolarPanelKey("Section One", 1, 1)));
+
+        assertEquals(ResultType.NOT_FOUND, results.get(0).getType());
+        assertTrue(results.get(1).isSuccess());
+    }
+
+    @Test
+    void shouldNotCreateAllDuplicatesWithinBatch() throws DataAccessException {
+        List<Result<SolarPanel>> results = service.createAll(List.of(
+                new SolarPanel(0, "Section One", 1, 3, 2000, Material.POLY_SI, false),
+                new SolarPanel(0, "section one", 1, 3, 2000, Material.CIGS, false)));
+
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertTrue(results.get(1).getMessages().get(0).contains("more than once"));
+    }
+
+    @Test
+    void shouldNotCreateAllExistingKeysWithOneQuery() throws DataAccessException {
+        when(repository.findByKeys(any())).thenReturn(List.of(
+                new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true)));
+
+        List<Result<SolarPanel>> results = service.createAll(List.of(
+                new SolarPanel(0, "Section One", 1, 1, 2000, Material.POLY_SI, false),
+                new SolarPanel(0, "Section One", 1, 2, 2000, Material.POLY_SI, false),
+                new SolarPanel(0, "Section One", 1, 3, 2000, Material.POLY_SI, false)));
+
+        assertFalse(results.get(0).isSuccess());
+        assertTrue(results.get(0).getMessages().get(0).contains("must be unique"));
+        assertTrue(results.get(1).isSuccess());
+        assertTrue(results.get(2).isSuccess());
+        verify(repository, times(1)).findByKeys(any());
+        verify(repository, never()).findByKey(any());
+    }
+
+    @Test
+    void shouldUpdateAllKeepingOwnKey() throws DataAccessException {
+        SolarPanel solarPanel = new SolarPanel(1, "Section One", 1, 1, 2000, Material.A_SI, false);
+        when(repository.findByKeys(any())).thenReturn(List.of(
+                new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true)));
+        when(repository.updateAll(any())).thenReturn(new boolean[]{true});
+
+        List<Result<SolarPanel>> results = service.updateAll(List.of(solarPanel));
+
+        assertTrue(results.get(0).isSuccess());
+    }
+
+    // Stubs the repository's counts and resets the service's stats to them.
+    private void stubCounts() throws DataAccessException {
+        when(repository.countBySection()).thenReturn(Map.of("Section One", 2, "Section Two", 1));
+        when(repository.countByMaterial()).thenReturn(Map.of(Material.POLY_SI, 2, Material.A_SI, 1));
+        when(repository.countByTracking()).thenReturn(Map.of(true, 2, false, 1));
+        when(repository.countByYearInstalled()).thenReturn(Map.of(2020, 2, 2000, 1));
+        service.reconcileStats();
+        clearInvocations(repository);
+    }
 }
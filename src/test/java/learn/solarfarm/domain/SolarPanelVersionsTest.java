@@ -0,0 +1,36 @@
+package learn.solarfarm.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SolarPanelVersionsTest {
+    @Test
+    void shouldBumpOnlyChangedSections() {
+        SolarPanelVersions versions = new SolarPanelVersions();
+        long table = versions.getVersion();
+        long ridge = versions.getSectionVersion("The Ridge");
+        long flats = versions.getSectionVersion("Flats");
+
+        versions.changed(List.of("the ridge"));
+
+        assertTrue(versions.getVersion() > table);
+        assertEquals(versions.getVersion(), versions.getSectionVersion("The Ridge"));
+        assertTrue(versions.getSectionVersion("The Ridge") > ridge);
+        assertEquals(flats, versions.getSectionVersion("Flats"));
+    }
+
+    @Test
+    void shouldBumpEverySection() {
+        SolarPanelVersions versions = new SolarPanelVersions();
+        versions.changed(List.of("The Ridge"));
+        long ridge = versions.getSectionVersion("The Ridge");
+
+        versions.changedEverySection();
+
+        assertTrue(versions.getSectionVersion("The Ridge") > ridge);
+        assertEquals(versions.getVersion(), versions.getSectionVersion("Nowhere"));
+    }
+}
@@ -0,0 +1,81 @@
+package learn.solarfarm.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import learn.solarfarm.data.DataAccessException;
+import learn.solarfarm.data.SolarPanelRepository;
+import learn.solarfarm.domain.SolarPanelService;
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class MetricsAspectTest {
+    @MockBean
+    SolarPanelRepository repository;
+
+    @Autowired
+    SolarPanelService service;
+
+    @Autowired
+    MeterRegistry registry;
+
+    @Test
+    void shouldTimeServiceMethods() throws DataAccessException {
+        service.findBySection("Section One");
+
+        assertTrue(registry.get("solarfarm.service")
+                .tag("method", "findBySection")
+                .timer().count() >= 1);
+    }
+
+    @Test
+    void shouldCountResultTypes() throws DataAccessException {
+        double before = count("deleteByKey", "NOT_FOUND");
+
+        service.deleteByKey(new SolarPanelKey("Section Two", 100, 100));
+
+        assertEquals(before + 1, count("deleteByKey", "NOT_FOUND"));
+    }
+
+    @Test
+    void shouldCountErrors() throws DataAccessException {
+        when(repository.findByKey(any())).thenThrow(new DataAccessException("boom"));
+
+        assertThrows(DataAccessException.class,
+                () -> service.findByKey(new SolarPanelKey("Section One", 1, 1)));
+
+        assertTrue(registry.get("solarfarm.service.errors")
+                .tag("method", "findByKey")
+                .tag("exception", "DataAccessException")
+                .counter().count() >= 1);
+    }
+
+    @Test
+    void shouldCountEachBatchResult() throws DataAccessException {
+        double before = count("createAll", "INVALID");
+
+        service.createAll(List.of(
+                new SolarPanel(0, "", 1, 1, 2000, Material.POLY_SI, false),
+                new SolarPanel(0, "", 1, 2, 2000, Material.POLY_SI, false)));
+
+        assertEquals(before + 2, count("createAll", "INVALID"));
+    }
+
+    private double count(String method, String type) {
+        var counter = registry.find("solarfarm.service.results")
+                .tag("method", method)
+                .tag("type", type)
+                .counter();
+        return counter == null ? 0 : counter.count();
+    }
+}
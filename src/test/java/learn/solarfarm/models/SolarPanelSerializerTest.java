@@ -0,0 +1,60 @@
+package learn.solarfarm.models;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SolarPanelSerializerTest {
+    private final ObjectMapper jsonMapper = new ObjectMapper()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    @Test
+    void shouldWriteFieldsWithoutKey() throws Exception {
+        SolarPanel solarPanel = new SolarPanel(7, "The \"Ridge\"", 1, 2, 2020, Material.CD_TE, true);
+
+        assertEquals("{\"id\":7,\"section\":\"The \\\"Ridge\\\"\",\"row\":1,\"column\":2," +
+                        "\"yearInstalled\":2020,\"material\":\"CD_TE\",\"tracking\":true}",
+                jsonMapper.writeValueAsString(solarPanel));
+    }
+
+    @Test
+    void shouldReadWhatItWrites() throws Exception {
+        SolarPanel solarPanel = new SolarPanel(7, "The Ridge", 1, 2, 2020, Material.CD_TE, true);
+
+        SolarPanel read = jsonMapper.readValue(jsonMapper.writeValueAsString(solarPanel), SolarPanel.class);
+
+        assertEquals(solarPanel.toString(), read.toString());
+    }
+
+    @Test
+    void shouldReadTheOldShapeWithKeyAndCoercedValues() throws Exception {
+        String json = "{\"id\":\"3\",\"section\":\"Flats\",\"row\":4,\"column\":5,\"yearInstalled\":2001," +
+                "\"material\":\"A_SI\",\"key\":{\"section\":\"Flats\",\"row\":4,\"column\":5}," +
+                "\"tracking\":false,\"color\":[\"blue\"]}";
+
+        SolarPanel read = jsonMapper.readValue(json, SolarPanel.class);
+
+        assertEquals(new SolarPanel(3, "Flats", 4, 5, 2001, Material.A_SI, false).toString(), read.toString());
+    }
+
+    @Test
+    void shouldLeaveMissingFieldsEmpty() throws Exception {
+        List<SolarPanel> read = List.of(jsonMapper.readValue("[{\"section\":null,\"material\":null}]",
+                SolarPanel[].class));
+
+        assertEquals(new SolarPanel(0, null, 0, 0, 0, null, false).toString(), read.get(0).toString());
+    }
+
+    @Test
+    void shouldRejectWrongTypes() {
+        assertThrows(MismatchedInputException.class,
+                () -> jsonMapper.readValue("{\"row\":[1]}", SolarPanel.class));
+        assertThrows(MismatchedInputException.class,
+                () -> jsonMapper.readValue("[]", SolarPanel.class));
+    }
+}